@@ -0,0 +1,41 @@
+package com.example.bookex.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Bounded read caches for the public pages. Entries are evicted on change (see CacheInvalidationListener);
+ * the TTL only bounds staleness for data we do not track, such as owner profile edits.
+ * Stats are recorded so hit/miss rates show up under /actuator/metrics/cache.gets.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String BROWSE = "browse";
+    public static final String LISTING_DETAIL = "listingDetail";
+    public static final String RATING_AVERAGES = "ratingAverages";
+
+    @Bean
+    CacheManager cacheManager(@Value("${app.cache.browse.max-size:500}") long browseSize,
+                              @Value("${app.cache.detail.max-size:10000}") long detailSize,
+                              @Value("${app.cache.ttl:10m}") Duration ttl) {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        manager.registerCustomCache(BROWSE, spec(browseSize, ttl).build());
+        manager.registerCustomCache(LISTING_DETAIL, spec(detailSize, ttl).build());
+        manager.registerCustomCache(RATING_AVERAGES, spec(detailSize, ttl).build());
+        manager.setAllowNullValues(false);
+        return manager;
+    }
+
+    private static Caffeine<Object, Object> spec(long maxSize, Duration ttl) {
+        return Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats();
+    }
+}
@@ -50,6 +50,10 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(PathRequest.toStaticResources().atCommonLocations()).permitAll()
                         .requestMatchers("/", "/browse", "/listings/**", "/login", "/register").permitAll()
+                        .requestMatchers("/uploads/**").permitAll() // covers on the public browse and detail pages
+                        .requestMatchers("/api/autocomplete").permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
                 .formLogin(f -> f
@@ -0,0 +1,100 @@
+package com.example.bookex.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes each stylesheet and script from {@code classpath:/static} into a work directory next to a
+ * best-compression {@code .gz} copy, once at startup. {@link WebMvcConfig} serves that directory ahead of the
+ * classpath, so the resource chain hands out the gzip file to clients that accept it instead of compressing
+ * on every request. Done here rather than in the build so the jar stays the single source of truth.
+ */
+@Slf4j
+@Component
+public class StaticAssetPrecompressor {
+
+    static final List<String> PATTERNS = List.of("classpath:/static/css/**/*.css", "classpath:/static/js/**/*.js");
+
+    private final Path directory;
+    private final ResourcePatternResolver resources;
+
+    @Autowired
+    public StaticAssetPrecompressor(@Value("${app.static.precompressed-dir:${java.io.tmpdir}/bookex-static}") String directory) {
+        this(Paths.get(directory), new PathMatchingResourcePatternResolver());
+    }
+
+    StaticAssetPrecompressor(Path directory, ResourcePatternResolver resources) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.resources = resources;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    @PostConstruct
+    public void precompress() throws IOException {
+        int written = 0;
+        for (String pattern : PATTERNS) {
+            for (Resource resource : resources.getResources(pattern)) {
+                String relative = relativePath(resource);
+                if (relative == null || !resource.isReadable()) continue;
+                byte[] bytes;
+                try (InputStream in = resource.getInputStream()) {
+                    bytes = in.readAllBytes();
+                }
+                Path target = directory.resolve(relative).normalize();
+                if (!target.startsWith(directory)) continue;
+                write(target, bytes, false);
+                write(target.resolveSibling(target.getFileName() + ".gz"), bytes, true);
+                written++;
+            }
+        }
+        log.info("Precompressed {} static assets into {}", written, directory);
+    }
+
+    // path below /static/, whether the resource comes from a directory or from inside the jar
+    private static String relativePath(Resource resource) throws IOException {
+        String url = resource.getURL().toString();
+        int at = url.lastIndexOf("/static/");
+        return at < 0 ? null : url.substring(at + "/static/".length());
+    }
+
+    // temp file + rename, so a request never sees a half-written asset while another instance rewrites it
+    private static void write(Path target, byte[] bytes, boolean gzip) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".asset-", ".part");
+        try {
+            try (OutputStream out = gzip ? new BestGzip(Files.newOutputStream(temp)) : Files.newOutputStream(temp)) {
+                out.write(bytes);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static final class BestGzip extends GZIPOutputStream {
+        BestGzip(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
@@ -1,31 +1,46 @@
 package com.example.bookex.config;
 
-import org.springframework.beans.factory.annotation.Value;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.util.StringUtils;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Stylesheets and scripts are served under content-hashed names (templates link them through {@code @{...}},
+ * which {@link ResourceUrlEncodingFilter} rewrites), so they can be cached for a year like the uploads, and
+ * from the gzip copies {@link StaticAssetPrecompressor} wrote when the client accepts them. Uploads themselves
+ * go through {@link com.example.bookex.controller.UploadController}.
+ */
 @Configuration
+@RequiredArgsConstructor
 public class WebMvcConfig implements WebMvcConfigurer {
 
-    @Value("${app.upload-dir:uploads}")
-    private String uploadDir;
+    private final StaticAssetPrecompressor precompressor;
 
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        Path uploadPath = StringUtils.hasText(uploadDir)
-                ? Paths.get(uploadDir).toAbsolutePath().normalize()
-                : Paths.get("uploads").toAbsolutePath().normalize();
+        String precompressed = precompressor.directory().toUri().toString();
+        if (!precompressed.endsWith("/")) precompressed = precompressed + "/";
 
-        String location = uploadPath.toUri().toString();
-        if (!location.endsWith("/")) location = location + "/";
+        for (String dir : new String[]{"css", "js"}) {
+            registry.addResourceHandler("/" + dir + "/**")
+                    .addResourceLocations(precompressed + dir + "/", "classpath:/static/" + dir + "/")
+                    .setCacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                    .resourceChain(true)
+                    .addResolver(new EncodedResourceResolver())
+                    .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+        }
+    }
 
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations(location)
-                .setCachePeriod(3600);
+    @Bean
+    public ResourceUrlEncodingFilter resourceUrlEncodingFilter() {
+        return new ResourceUrlEncodingFilter();
     }
 }
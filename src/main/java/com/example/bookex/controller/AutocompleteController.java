@@ -0,0 +1,25 @@
+package com.example.bookex.controller;
+
+import com.example.bookex.dto.book.BookSuggestionDto;
+import com.example.bookex.service.AutocompleteService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/autocomplete")
+public class AutocompleteController {
+
+    private final AutocompleteService autocompleteService;
+
+    @GetMapping
+    public List<BookSuggestionDto> suggest(@RequestParam("q") String q,
+                                           @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return autocompleteService.suggest(q, limit);
+    }
+}
@@ -1,40 +1,89 @@
 package com.example.bookex.controller;
 
-import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.dto.listing.BrowseSort;
 import com.example.bookex.dto.listing.ListingDetailDto;
+import com.example.bookex.dto.listing.ListingPageDto;
+import com.example.bookex.dto.listing.ListingVersionRow;
+import com.example.bookex.service.BrowseVersion;
+import com.example.bookex.service.ListingSearchService;
 import com.example.bookex.service.ListingService;
 import com.example.bookex.service.RatingService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.List;
+import java.security.Principal;
+import java.util.Optional;
 
 @Controller
 @RequiredArgsConstructor
 public class HomeController {
 
     private final ListingService listingService;
+    private final ListingSearchService listingSearchService;
     private final RatingService ratingService;
+    private final BrowseVersion browseVersion;
 
     @GetMapping("/")
     public String root() { return "redirect:/browse"; }
 
     @GetMapping("/browse")
-    public String browse(Model model, @RequestParam(value = "ok", required = false) String ok) {
-        List<ListingCardDto> listings = listingService.browsePublic();
-        model.addAttribute("listings", listings);
+    public String browse(Model model, @RequestParam(value = "ok", required = false) String ok,
+                         @RequestParam(value = "sort", required = false) String sort,
+                         @RequestParam(value = "after", required = false) String after,
+                         @RequestParam(value = "before", required = false) String before,
+                         @RequestParam(value = "q", required = false) String q,
+                         @RequestParam(value = "page", defaultValue = "0") int pageNo,
+                         WebRequest request, HttpServletResponse response, Principal principal) {
+        revalidate(response);
+        if (request.checkNotModified(weakEtag("b" + browseVersion.current(), request, principal, model))) return null;
+
+        boolean searching = q != null && !q.isBlank();
+        ListingPageDto page = searching
+                ? listingSearchService.search(q, pageNo)
+                : listingService.browsePublic(BrowseSort.from(sort), after, before);
+        model.addAttribute("listings", page.getItems());
+        model.addAttribute("page", page);
+        model.addAttribute("q", searching ? q.trim() : null);
         model.addAttribute("ok", ok);
         return "browse";
     }
 
     @GetMapping("/listings/{id}")
-    public String detail(@PathVariable Long id, Model model) {
+    public String detail(@PathVariable Long id, Model model,
+                         WebRequest request, HttpServletResponse response, Principal principal) {
+        revalidate(response);
+        Optional<ListingVersionRow> version = listingService.getListingVersion(id);
+        if (version.isPresent() && request.checkNotModified(weakEtag("l" + version.get().tag(), request, principal, model),
+                version.get().lastModified().toEpochMilli())) {
+            return null;
+        }
+
         ListingDetailDto dto = listingService.getListingDetail(id);
         model.addAttribute("listing", dto);
         model.addAttribute("bookAvg", ratingService.getAverages(dto.getBook().getId()));
         return "listing-detail";
     }
-}
 
+    // --- conditional GET helpers
+
+    // Pages show the signed-in user, so browsers may keep them privately but must revalidate every time.
+    private static void revalidate(HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+    }
+
+    // Signed-in pages carry forms with the session's CSRF token, so a tag is only good for the session that
+    // rendered it: after logout and login a fresh page (and token) is sent instead of a 304. They also show
+    // the nav badge, which NavModelAdvice has already put in the model.
+    private static String weakEtag(String version, WebRequest request, Principal principal, Model model) {
+        String viewer = principal == null ? "anon"
+                : Integer.toHexString((principal.getName() + "/" + request.getSessionId()).hashCode())
+                + "." + model.getAttribute("pendingSwaps");
+        return "W/\"" + version + "-" + viewer + "\"";
+    }
+}
@@ -15,6 +15,8 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+
 @Controller
 @RequiredArgsConstructor
 @RequestMapping("/library")
@@ -87,6 +89,14 @@ public class LibraryController {
         return "redirect:/library/" + id + "/edit?ok=Image+uploaded";
     }
 
+    @PostMapping("/{id}/images/batch")
+    public String uploadImages(@AuthenticationPrincipal User me,
+                               @PathVariable Long id,
+                               @RequestParam("files") List<MultipartFile> files) throws Exception {
+        int stored = storageService.addImages(me, id, files).size();
+        return "redirect:/library/" + id + "/edit?ok=" + stored + (stored == 1 ? "+image" : "+images") + "+uploaded";
+    }
+
     @PostMapping("/{id}/images/{no}/delete")
     public String deleteImage(@AuthenticationPrincipal User me,
                               @PathVariable Long id,
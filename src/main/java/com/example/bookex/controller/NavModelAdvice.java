@@ -0,0 +1,27 @@
+package com.example.bookex.controller;
+
+import com.example.bookex.entity.User;
+import com.example.bookex.service.PendingSwapCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ModelAttribute;
+
+/**
+ * Model attributes shared by every page through layout.html.
+ * Limited to the controllers that render pages, so JSON, SSE and file endpoints skip the lookups, as do the
+ * redirect-only swap actions ({@link SwapActionController}).
+ */
+@ControllerAdvice(assignableTypes = {HomeController.class, LibraryController.class, ProfileController.class,
+        SwapController.class, WishlistController.class, AuthController.class})
+@RequiredArgsConstructor
+public class NavModelAdvice {
+
+    private final PendingSwapCounter pendingSwapCounter;
+
+    // null for anonymous visitors; the badge is hidden at zero
+    @ModelAttribute("pendingSwaps")
+    public Integer pendingSwaps(@AuthenticationPrincipal User me) {
+        return me == null ? null : pendingSwapCounter.pendingFor(me.getId());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.bookex.controller;
+
+import com.example.bookex.entity.User;
+import com.example.bookex.service.SwapService;
+import com.example.bookex.service.SwapStream;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * The /swaps endpoints that render no page: the form actions, which redirect back to it, and its live update
+ * stream. Kept out of {@link SwapController} so {@link NavModelAdvice} does not run for them.
+ */
+@Controller
+@RequiredArgsConstructor
+@RequestMapping("/swaps")
+public class SwapActionController {
+
+    private final SwapService swapService;
+    private final SwapStream swapStream;
+
+    // live status updates for the swaps page (static/js/swaps.js)
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@AuthenticationPrincipal User me) {
+        return swapStream.subscribe(me.getId());
+    }
+
+    @PostMapping("/create")
+    public String create(@AuthenticationPrincipal User me, @ModelAttribute CreateSwapForm f) {
+        swapService.createRequest(me, f.getListingId(), f.getMessage());
+        return "redirect:/swaps?ok=Swap+requested";
+    }
+
+    @PostMapping("/{id}/accept")
+    public String accept(@AuthenticationPrincipal User me, @PathVariable Long id) {
+        swapService.ownerRespond(me, id, true);
+        return "redirect:/swaps?ok=Accepted";
+    }
+
+    @PostMapping("/{id}/decline")
+    public String decline(@AuthenticationPrincipal User me, @PathVariable Long id) {
+        swapService.ownerRespond(me, id, false);
+        return "redirect:/swaps?ok=Declined";
+    }
+
+    @PostMapping("/{id}/complete")
+    public String complete(@AuthenticationPrincipal User me, @PathVariable Long id) {
+        swapService.markCompleted(me, id);
+        return "redirect:/swaps?ok=Completed";
+    }
+
+    @PostMapping("/{id}/cancel")
+    public String cancel(@AuthenticationPrincipal User me, @PathVariable Long id) {
+        swapService.markCancelled(me, id);
+        return "redirect:/swaps?ok=Cancelled";
+    }
+
+    @Data
+    public static class CreateSwapForm {
+        private Long listingId;
+        @Size(max = 300)
+        private String message;
+    }
+}
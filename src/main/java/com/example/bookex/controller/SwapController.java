@@ -1,9 +1,9 @@
 package com.example.bookex.controller;
 
+import com.example.bookex.dto.swap.SwapPageDto;
 import com.example.bookex.entity.User;
+import com.example.bookex.entity.enums.SwapStatus;
 import com.example.bookex.service.SwapService;
-import jakarta.validation.constraints.Size;
-import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
@@ -19,48 +19,25 @@ public class SwapController {
 
     @GetMapping
     public String page(@AuthenticationPrincipal User me, Model model,
-                       @RequestParam(value="ok", required = false) String ok) {
-        model.addAttribute("inbox", swapService.inbox(me));
+                       @RequestParam(value="ok", required = false) String ok,
+                       @RequestParam(value = "status", required = false) String status,
+                       @RequestParam(value = "after", required = false) String after) {
+        SwapPageDto inbox = swapService.inbox(me, parseStatus(status), after);
+        model.addAttribute("inbox", inbox.getItems());
+        model.addAttribute("inboxPage", inbox);
+        model.addAttribute("statuses", SwapStatus.values());
         model.addAttribute("outbox", swapService.outbox(me));
+        model.addAttribute("cycles", swapService.suggestedCycles(me));
         model.addAttribute("ok", ok);
         return "swaps";
     }
 
-    @PostMapping("/create")
-    public String create(@AuthenticationPrincipal User me, @ModelAttribute CreateSwapForm f) {
-        swapService.createRequest(me, f.getListingId(), f.getMessage());
-        return "redirect:/swaps?ok=Swap+requested";
-    }
-
-    @PostMapping("/{id}/accept")
-    public String accept(@AuthenticationPrincipal User me, @PathVariable Long id) {
-        swapService.ownerRespond(me, id, true);
-        return "redirect:/swaps?ok=Accepted";
-    }
-
-    @PostMapping("/{id}/decline")
-    public String decline(@AuthenticationPrincipal User me, @PathVariable Long id) {
-        swapService.ownerRespond(me, id, false);
-        return "redirect:/swaps?ok=Declined";
-    }
-
-    @PostMapping("/{id}/complete")
-    public String complete(@AuthenticationPrincipal User me, @PathVariable Long id) {
-        swapService.markCompleted(me, id);
-        return "redirect:/swaps?ok=Completed";
-    }
-
-    @PostMapping("/{id}/cancel")
-    public String cancel(@AuthenticationPrincipal User me, @PathVariable Long id) {
-        swapService.markCancelled(me, id);
-        return "redirect:/swaps?ok=Cancelled";
-    }
-
-    @Data
-    public static class CreateSwapForm {
-        private Long listingId;
-        @Size(max = 300)
-        private String message;
+    private static SwapStatus parseStatus(String status) {
+        if (status == null || status.isBlank()) return null;
+        try {
+            return SwapStatus.valueOf(status.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown status: " + status);
+        }
     }
 }
-
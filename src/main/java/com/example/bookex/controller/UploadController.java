@@ -0,0 +1,164 @@
+package com.example.bookex.controller;
+
+import com.example.bookex.service.UploadLayout;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Serves stored images. File names never get reused for other bytes (content hashes or per-upload ids), so
+ * responses are cacheable for a year without revalidation; conditional and single-range requests are still
+ * answered for clients that ask. Bodies go out through Tomcat's sendfile when the connector offers it and
+ * through {@link FileChannel#transferTo} otherwise, so the bytes are never copied through the heap.
+ */
+@Controller
+public class UploadController {
+
+    static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    // Tomcat picks these up after the servlet returns and writes the file from the kernel
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String PREFIX = UploadLayout.PUBLIC_PREFIX;
+    private static final Pattern SHA256_NAME = Pattern.compile("([0-9a-f]{64})(-w\\d+)?\\.\\w+");
+    private static final UrlPathHelper PATHS = new UrlPathHelper();
+
+    private final UploadLayout layout;
+    private final long sendfileThreshold;
+
+    public UploadController(UploadLayout layout,
+                            @Value("${app.uploads.sendfile-threshold:48KB}") DataSize sendfileThreshold) {
+        this.layout = layout;
+        this.sendfileThreshold = sendfileThreshold.toBytes();
+    }
+
+    @GetMapping(PREFIX + "**")
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = resolve(PATHS.getPathWithinApplication(request));
+        BasicFileAttributes attrs = file == null ? null : attributes(file);
+        if (attrs == null || !attrs.isRegularFile()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = attrs.size();
+        String etag = etag(file.getFileName().toString(), attrs);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return; // 304 with ETag and Last-Modified already set
+        }
+        response.setContentType(mediaType(file).toString());
+
+        long start = 0;
+        long count = length;
+        HttpRange range = singleRange(request, etag, lastModified);
+        if (range != null) {
+            if (length == 0 || range.getRangeStart(length) >= length) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            count = end - start + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) return;
+
+        if (count >= sendfileThreshold && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long end = start + count;
+            while (position < end) {
+                long sent = in.transferTo(position, end - position, out);
+                if (sent <= 0) break; // file shrank underneath us; the client sees a short body
+                position += sent;
+            }
+        }
+    }
+
+    /** The file under the upload root for a request path, or null for anything outside it or not public. */
+    Path resolve(String requestPath) {
+        Path file = layout.resolve(requestPath);
+        if (file == null || file.startsWith(layout.tmpDir())) return null; // outside, or still being received
+        if (file.getFileName().toString().startsWith(".")) return null; // variants being written
+        return file;
+    }
+
+    // Content-addressed names carry their own strong validator; per-upload names never change once written.
+    static String etag(String filename, BasicFileAttributes attrs) {
+        var matcher = SHA256_NAME.matcher(filename);
+        if (matcher.matches()) {
+            return "\"" + matcher.group(1) + (matcher.group(2) == null ? "" : matcher.group(2)) + "\"";
+        }
+        return "\"" + Long.toHexString(attrs.size()) + "-" + Long.toHexString(attrs.lastModifiedTime().toMillis()) + "\"";
+    }
+
+    // One range is served as 206; several (rare for images) or a stale If-Range get the whole file.
+    private static HttpRange singleRange(HttpServletRequest request, String etag, long lastModified) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) return null;
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) return null; // another (or a weak) tag
+            try {
+                long since = request.getDateHeader(HttpHeaders.IF_RANGE);
+                if (since < 0 || lastModified / 1000 > since / 1000) return null;
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException ex) {
+            return null; // malformed ranges are ignored, as RFC 9110 allows
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static MediaType mediaType(Path file) {
+        return MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.bookex.controller;
+
+import com.example.bookex.entity.User;
+import com.example.bookex.service.WishlistService;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.annotation.*;
+
+@Controller
+@RequiredArgsConstructor
+@RequestMapping("/wishlist")
+public class WishlistController {
+
+    private final WishlistService wishlistService;
+
+    @GetMapping
+    public String page(@AuthenticationPrincipal User me, Model model,
+                       @RequestParam(value = "ok", required = false) String ok) {
+        model.addAttribute("books", wishlistService.wishlist(me));
+        model.addAttribute("form", new WishForm());
+        model.addAttribute("ok", ok);
+        return "wishlist";
+    }
+
+    @PostMapping
+    public String add(@AuthenticationPrincipal User me, @Valid @ModelAttribute("form") WishForm form,
+                      BindingResult bindingResult, Model model) {
+        if (bindingResult.hasErrors()) {
+            model.addAttribute("books", wishlistService.wishlist(me));
+            return "wishlist";
+        }
+        try {
+            wishlistService.add(me, form.getTitle(), form.getAuthor());
+        } catch (IllegalArgumentException ex) {
+            model.addAttribute("books", wishlistService.wishlist(me));
+            model.addAttribute("error", ex.getMessage());
+            return "wishlist";
+        }
+        return "redirect:/wishlist?ok=Added+to+wishlist";
+    }
+
+    @PostMapping("/{bookId}/remove")
+    public String remove(@AuthenticationPrincipal User me, @PathVariable Long bookId) {
+        wishlistService.remove(me, bookId);
+        return "redirect:/wishlist?ok=Removed";
+    }
+
+    @Data
+    public static class WishForm {
+        @NotBlank @Size(max = 255)
+        private String title;
+        @NotBlank @Size(max = 255)
+        private String author;
+    }
+}
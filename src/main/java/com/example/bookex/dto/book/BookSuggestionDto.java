@@ -0,0 +1,15 @@
+package com.example.bookex.dto.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookSuggestionDto {
+    private String text;
+    private String kind; // title | author
+}
@@ -12,4 +12,5 @@ import lombok.NoArgsConstructor;
 public class BookImageDto {
     private short imageNo;
     private String path;
+    private String placeholder; // data URI, null for images stored before placeholders were made
 }
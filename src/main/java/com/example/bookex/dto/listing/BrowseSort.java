@@ -0,0 +1,15 @@
+package com.example.bookex.dto.listing;
+
+public enum BrowseSort {
+    NEWEST, TITLE, CONDITION;
+
+    public static BrowseSort from(String value) {
+        if (value == null || value.isBlank()) return NEWEST;
+        for (BrowseSort sort : values()) {
+            if (sort.name().equalsIgnoreCase(value.trim())) return sort;
+        }
+        throw new IllegalArgumentException("Unknown sort: " + value);
+    }
+
+    public String param() { return name().toLowerCase(); }
+}
@@ -17,5 +17,12 @@ public class ListingCardDto {
     private UserPublicDto owner;
     private String condition;
     private boolean available;
+
+    // cover from the image variants, null until the first image of the listing is processed
+    private String coverUrl;
+    private String coverSrcset;
+    private Integer coverWidth;
+    private Integer coverHeight;
+    private String coverPlaceholder; // data URI painted behind the cover, also shown while variants are pending
 }
 
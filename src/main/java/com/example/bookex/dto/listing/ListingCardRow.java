@@ -0,0 +1,31 @@
+package com.example.bookex.dto.listing;
+
+import com.example.bookex.entity.enums.Condition;
+import com.example.bookex.entity.enums.ContactMethod;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Flat read model for listing cards, filled by a JPQL constructor expression
+ * (listing + book + owner in one statement). Mapped to {@link ListingCardDto} by DtoMapper.
+ */
+@Getter
+@AllArgsConstructor
+public class ListingCardRow {
+    private Long id;
+    private Instant createdAt;
+    private Long bookId;
+    private String title;
+    private String author;
+    private String isbn;
+    private Long ownerId;
+    private String ownerName;
+    private boolean ownerPublicContact;
+    private ContactMethod ownerPreferredMethod;
+    private String ownerContactEmail;
+    private String ownerContactPhone;
+    private Condition condition;
+    private boolean available;
+}
@@ -0,0 +1,19 @@
+package com.example.bookex.dto.listing;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ListingPageDto {
+    private List<ListingCardDto> items;
+    private String sort;
+    private String nextCursor; // null on the last page
+    private String prevCursor; // null on the first page
+}
@@ -0,0 +1,37 @@
+package com.example.bookex.dto.listing;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Change markers for everything a listing detail page renders, read in one statement so
+ * a conditional GET can be answered without loading the listing itself.
+ * Counts are kept next to the timestamps because deleting an image does not move any updated_at.
+ */
+@Getter
+@AllArgsConstructor
+public class ListingVersionRow {
+    private Long listingId;
+    private Instant listingUpdatedAt;
+    private Instant bookUpdatedAt;
+    private Instant ownerUpdatedAt;
+    private Instant imagesUpdatedAt; // null when the listing has no images
+    private Long imageCount;
+    private Instant ratingsUpdatedAt; // null when the book has no ratings
+    private Integer ratingCount;
+
+    public Instant lastModified() {
+        return Stream.of(listingUpdatedAt, bookUpdatedAt, ownerUpdatedAt, imagesUpdatedAt, ratingsUpdatedAt)
+                .filter(Objects::nonNull)
+                .max(Instant::compareTo)
+                .orElse(Instant.EPOCH);
+    }
+
+    public String tag() {
+        return listingId + "-" + lastModified().toEpochMilli() + "-" + imageCount + "-" + ratingCount;
+    }
+}
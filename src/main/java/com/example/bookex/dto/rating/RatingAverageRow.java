@@ -0,0 +1,17 @@
+package com.example.bookex.dto.rating;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Rating totals for one book as stored in book_rating_stats (all zero when unrated).
+ * Turned into rounded averages ({@link RatingAverageDto}) by RatingService.
+ */
+@Getter
+@AllArgsConstructor
+public class RatingAverageRow {
+    private Integer count;
+    private Long difficultySum;
+    private Long emotionSum;
+    private Long enjoymentSum;
+}
@@ -0,0 +1,17 @@
+package com.example.bookex.dto.swap;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** A suggested multi-party swap, rotated so the first leg is the viewer's. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SwapCycleDto {
+    private List<SwapLegDto> legs;
+}
@@ -0,0 +1,18 @@
+package com.example.bookex.dto.swap;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One pushed change on the swaps page, as seen by one of the two parties. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SwapDeltaDto {
+    private Long id;
+    private Long listingId;
+    private String status;
+    private String box; // "inbox" for the listing owner, "outbox" for the requester
+}
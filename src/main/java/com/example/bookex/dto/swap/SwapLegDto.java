@@ -0,0 +1,18 @@
+package com.example.bookex.dto.swap;
+
+import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.dto.user.UserPublicDto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One hand-over in a cycle: {@code receiver} gets {@code listing} from its owner. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SwapLegDto {
+    private ListingCardDto listing;
+    private UserPublicDto receiver;
+}
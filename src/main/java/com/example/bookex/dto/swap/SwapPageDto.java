@@ -0,0 +1,18 @@
+package com.example.bookex.dto.swap;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SwapPageDto {
+    private List<SwapViewDto> items;
+    private String status;     // active filter, null for all
+    private String nextCursor; // null on the last page
+}
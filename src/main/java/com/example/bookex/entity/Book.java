@@ -7,7 +7,8 @@ import lombok.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "books")
+@Table(name = "books",
+        uniqueConstraints = @UniqueConstraint(name = "ux_books_title_author", columnNames = {"title", "author"}))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
+import org.springframework.data.domain.Persistable;
 
 import java.time.Instant;
 
@@ -14,7 +15,7 @@ import java.time.Instant;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class BookImage {
+public class BookImage implements Persistable<BookImageId> {
     @EmbeddedId
     private BookImageId id;
 
@@ -28,12 +29,49 @@ public class BookImage {
     @Column(nullable = false, length = 500)
     private String path; // served under /uploads/**
 
+    @Column(length = 64)
+    private String sha256; // hex digest of the stored file, null for images uploaded before it was recorded
+
+    @Column(name = "original_size_bytes")
+    private Long originalSizeBytes; // as uploaded; with size_bytes, what ingest saved. Null for older rows
+
+    @Column(name = "size_bytes")
+    private Long sizeBytes; // as stored, metadata stripped and re-encoded
+
+    @Column(length = 1024)
+    private String placeholder; // tiny inline JPEG data URI shown until the image loads, null if it could not be made
+
+    @Column(name = "variants_ready", nullable = false)
+    private boolean variantsReady; // resized copies exist (see BookImageVariant)
+
+    @Column(name = "variant_attempts", nullable = false)
+    private short variantAttempts; // failed resize runs, the retry sweep gives up at app.images.max-attempts
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
     @Column(name = "updated_at", nullable = false)
     private Instant updatedAt;
 
+    // ids are assigned (listing, slot), so Spring Data cannot tell new rows apart; without this saveAll
+    // would merge, selecting every row before inserting it instead of batching the inserts
+    @Transient
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean fresh = true;
+
+    @Override
+    public boolean isNew() {
+        return fresh;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        this.fresh = false;
+    }
+
     @PrePersist
     public void prePersist() {
         Instant now = Instant.now();
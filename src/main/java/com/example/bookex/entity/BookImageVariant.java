@@ -0,0 +1,36 @@
+package com.example.bookex.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * A resized copy of a {@link BookImage}, keyed by its pixel width. Rows go away with their image
+ * (FK on delete cascade in the schema).
+ */
+@Entity
+@Table(name = "book_image_variants")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookImageVariant {
+    @EmbeddedId
+    private BookImageVariantId id;
+
+    @Column(nullable = false)
+    private short height;
+
+    @Column(nullable = false, length = 500)
+    private String path; // served under /uploads/**
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        this.createdAt = Instant.now();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.bookex.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.*;
+
+import java.io.Serializable;
+
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class BookImageVariantId implements Serializable {
+    @Column(name = "listing_id", nullable = false)
+    private Long listingId;
+
+    @Column(name = "image_no", nullable = false)
+    private short imageNo;
+
+    @Column(name = "width", nullable = false)
+    private short width;
+}
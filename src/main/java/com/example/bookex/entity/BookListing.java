@@ -8,6 +8,7 @@ import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
 import java.time.Instant;
+import java.util.List;
 
 @Entity
 @Table(
@@ -50,6 +51,15 @@ public class BookListing {
     @Column(length = 500)
     private String notes;
 
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    // read side only (detail fetch join); images are written through BookImageRepository
+    @OneToMany(mappedBy = "listing", fetch = FetchType.LAZY)
+    @OrderBy("id.imageNo ASC")
+    private List<BookImage> images;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
@@ -0,0 +1,38 @@
+package com.example.bookex.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Per-book rating totals (count and per-dimension sums). Written only through native upserts in
+ * BookRatingStatsRepository; mapped here for reads and schema generation.
+ */
+@Entity
+@Table(name = "book_rating_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookRatingStats {
+    @Id
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Column(name = "rating_count", nullable = false)
+    private int ratingCount;
+
+    @Column(name = "difficulty_sum", nullable = false)
+    private long difficultySum;
+
+    @Column(name = "emotion_sum", nullable = false)
+    private long emotionSum;
+
+    @Column(name = "enjoyment_sum", nullable = false)
+    private long enjoymentSum;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
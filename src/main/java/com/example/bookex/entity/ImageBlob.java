@@ -0,0 +1,38 @@
+package com.example.bookex.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * One stored upload file, named by the SHA-256 of its content and shared by every {@link BookImage} with the
+ * same bytes. Rows are written with native upserts (see ImageBlobRepository), never through the entity.
+ */
+@Entity
+@Table(name = "image_blobs")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImageBlob {
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(nullable = false, length = 500)
+    private String path; // served under /uploads/**
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -39,6 +39,10 @@ public class SwapRequest {
     @Column(length = 300)
     private String message;
 
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
@@ -0,0 +1,42 @@
+package com.example.bookex.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "wishlist")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WishlistItem {
+    @EmbeddedId
+    private WishlistItemId id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @MapsId("userId")
+    @JoinColumn(name = "user_id", nullable = false,
+            foreignKey = @ForeignKey(name = "fk_wishlist_user"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @MapsId("bookId")
+    @JoinColumn(name = "book_id", nullable = false,
+            foreignKey = @ForeignKey(name = "fk_wishlist_book"))
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Book book;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        this.createdAt = Instant.now();
+    }
+}
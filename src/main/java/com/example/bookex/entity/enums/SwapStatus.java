@@ -1,3 +1,3 @@
 package com.example.bookex.entity.enums;
 
-public enum SwapStatus {PENDING, ACCEPTED, DECLINED, COMPLETED, CANCELLED}
+public enum SwapStatus {PENDING, ACCEPTED, DECLINED, COMPLETED, CANCELLED, EXPIRED}
@@ -0,0 +1,5 @@
+package com.example.bookex.event;
+
+/** Published when BookService inserts a new (normalized) book. */
+public record BookCreatedEvent(Long bookId, String title, String author) {
+}
@@ -0,0 +1,5 @@
+package com.example.bookex.event;
+
+/** Published when an uploaded image file and its row are in place; starts variant generation. */
+public record ImageStoredEvent(Long listingId, short imageNo, String path) {
+}
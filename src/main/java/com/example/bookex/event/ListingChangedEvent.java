@@ -0,0 +1,5 @@
+package com.example.bookex.event;
+
+/** Published when a listing, or one of its images, is created, updated or deleted. */
+public record ListingChangedEvent(Long listingId) {
+}
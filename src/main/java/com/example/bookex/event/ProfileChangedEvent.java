@@ -0,0 +1,5 @@
+package com.example.bookex.event;
+
+/** Published when a user edits the profile fields shown on their listings. */
+public record ProfileChangedEvent(Long userId) {
+}
@@ -0,0 +1,5 @@
+package com.example.bookex.event;
+
+/** Published when a user rates a book, so anything derived from its averages can be refreshed. */
+public record RatingChangedEvent(Long bookId) {
+}
@@ -0,0 +1,11 @@
+package com.example.bookex.event;
+
+import com.example.bookex.entity.enums.SwapStatus;
+
+/**
+ * Published when a swap request is created ({@code previous} is null) or changes status;
+ * carries both parties for routing.
+ */
+public record SwapChangedEvent(Long swapId, Long listingId, Long ownerId, Long requesterId,
+                               SwapStatus previous, SwapStatus status) {
+}
@@ -0,0 +1,5 @@
+package com.example.bookex.event;
+
+/** Published when a user adds a book to, or removes one from, their wishlist. */
+public record WishlistChangedEvent(Long userId) {
+}
@@ -0,0 +1,6 @@
+package com.example.bookex.exceptions;
+
+/** Lost a concurrent state change (e.g. two responses to one swap); shown to the user as 409. */
+public class ConflictException extends RuntimeException {
+    public ConflictException(String message) { super(message); }
+}
@@ -5,6 +5,7 @@ import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.access.AccessDeniedException;
@@ -91,6 +92,15 @@ public class GlobalExceptionHandler {
         return errorView(HttpStatus.NOT_FOUND, safe(ex.getMessage()), req);
     }
 
+    // --- 409 CONFLICT (lost a concurrent state change, e.g. two responses to one swap) ---
+    @ExceptionHandler({ ConflictException.class, OptimisticLockingFailureException.class })
+    public ModelAndView handleConflict(Exception ex, HttpServletRequest req) {
+        log.warn("409 Conflict: {}", ex.getMessage());
+        String msg = ex instanceof OptimisticLockingFailureException
+                ? "This item was changed by someone else, reload and try again" : safe(ex.getMessage());
+        return errorView(HttpStatus.CONFLICT, msg, req);
+    }
+
     // --- 405 / 415 ---
     @ExceptionHandler(HttpRequestMethodNotSupportedException.class)
     public ModelAndView handleMethodNotAllowed(HttpRequestMethodNotSupportedException ex, HttpServletRequest req) {
@@ -3,10 +3,79 @@ package com.example.bookex.repository;
 import com.example.bookex.entity.BookImage;
 import com.example.bookex.entity.BookImageId;
 import com.example.bookex.entity.BookListing;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+
 public interface BookImageRepository extends JpaRepository<BookImage, BookImageId> {
     List<BookImage> findByListingOrderByIdImageNoAsc(BookListing listing);
-    long countByListing(BookListing listing);
-}
 
+    // Taken slots of a listing in one round trip: their count is the limit check, the gaps are free slots
+    @Query("select i.id.imageNo from BookImage i where i.id.listingId = :listingId order by i.id.imageNo")
+    List<Short> findImageNos(@Param("listingId") Long listingId);
+
+    // Placeholders for card covers: the first image of each listing, and the first processed one if that differs
+    @Query("""
+            select i from BookImage i
+            where i.id.listingId in :listingIds and i.placeholder is not null
+              and (i.id.imageNo = (select min(f.id.imageNo) from BookImage f where f.id.listingId = i.id.listingId)
+                or i.id.imageNo = (select min(r.id.imageNo) from BookImage r
+                                   where r.id.listingId = i.id.listingId and r.variantsReady = true))
+            order by i.id.listingId, i.id.imageNo""")
+    List<BookImage> findCoverPlaceholders(@Param("listingIds") Collection<Long> listingIds);
+
+    // Images still waiting for variants, oldest first; covered by idx_book_images_variants_backlog
+    @Query("""
+            select i from BookImage i
+            where i.variantsReady = false and i.variantAttempts < :maxAttempts and i.createdAt < :before
+            order by i.createdAt""")
+    List<BookImage> findVariantBacklog(@Param("maxAttempts") short maxAttempts, @Param("before") Instant before,
+                                       Pageable page);
+
+    // 0 rows means the image was deleted while its variants were being made
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update BookImage i set i.variantsReady = true
+            where i.id.listingId = :listingId and i.id.imageNo = :imageNo""")
+    int markVariantsReady(@Param("listingId") Long listingId, @Param("imageNo") short imageNo);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update BookImage i set i.variantAttempts = i.variantAttempts + 1
+            where i.id.listingId = :listingId and i.id.imageNo = :imageNo""")
+    int countVariantFailure(@Param("listingId") Long listingId, @Param("imageNo") short imageNo);
+
+    // Which of these public paths an image or variant still points at; the upload reconciler's orphan check
+    @Query(value = """
+            SELECT i.path FROM book_images i WHERE i.path IN (:paths)
+            UNION
+            SELECT v.path FROM book_image_variants v WHERE v.path IN (:paths)""", nativeQuery = true)
+    List<String> findReferencedPaths(@Param("paths") Collection<String> paths);
+
+    // Listings with images still in the flat listings/<id>/ directories, for the layout migration
+    @Query(value = """
+            SELECT DISTINCT i.listing_id FROM book_images i
+             WHERE i.listing_id > :after AND i.path LIKE '/uploads/listings/' || i.listing_id || '/%'
+             ORDER BY i.listing_id
+             LIMIT :limit""", nativeQuery = true)
+    List<Long> findFlatListingIds(@Param("after") long after, @Param("limit") int limit);
+
+    // Re-roots the paths of every image stored as one blob; `from` and `to` are path prefixes
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+            UPDATE book_images SET path = :to || substr(path, length(:from) + 1)
+             WHERE sha256 = :sha256 AND left(path, length(:from)) = :from""", nativeQuery = true)
+    int rebaseBlob(@Param("sha256") String sha256, @Param("from") String from, @Param("to") String to);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+            UPDATE book_images SET path = :to || substr(path, length(:from) + 1)
+             WHERE listing_id = :listingId AND left(path, length(:from)) = :from""", nativeQuery = true)
+    int rebaseListing(@Param("listingId") Long listingId, @Param("from") String from, @Param("to") String to);
+}
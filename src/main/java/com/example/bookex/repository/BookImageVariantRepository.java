@@ -0,0 +1,57 @@
+package com.example.bookex.repository;
+
+import com.example.bookex.entity.BookImageVariant;
+import com.example.bookex.entity.BookImageVariantId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface BookImageVariantRepository extends JpaRepository<BookImageVariant, BookImageVariantId> {
+
+    @Query("""
+            select v from BookImageVariant v
+            where v.id.listingId = :listingId and v.id.imageNo = :imageNo""")
+    List<BookImageVariant> findByImage(@Param("listingId") Long listingId, @Param("imageNo") short imageNo);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            delete from BookImageVariant v
+            where v.id.listingId = :listingId and v.id.imageNo = :imageNo""")
+    int deleteByImage(@Param("listingId") Long listingId, @Param("imageNo") short imageNo);
+
+    // Card covers: every variant of the first processed image of each listing, narrowest first
+    @Query("""
+            select v from BookImageVariant v
+            where v.id.listingId in :listingIds
+              and v.id.imageNo = (select min(i.id.imageNo) from BookImage i
+                                  where i.id.listingId = v.id.listingId and i.variantsReady = true)
+            order by v.id.listingId, v.id.width""")
+    List<BookImageVariant> findCovers(@Param("listingIds") Collection<Long> listingIds);
+
+    // Variants already made for the same stored file under another image (content-addressed uploads)
+    @Query("""
+            select v from BookImageVariant v, BookImage i
+            where i.id.listingId = v.id.listingId and i.id.imageNo = v.id.imageNo
+              and i.path = :path and i.variantsReady = true
+            order by v.id.listingId, v.id.imageNo, v.id.width""")
+    List<BookImageVariant> findReadyByImagePath(@Param("path") String path);
+
+    // Variant paths follow their image's file to its new directory; see BookImageRepository#rebaseBlob
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+            UPDATE book_image_variants v SET path = :to || substr(v.path, length(:from) + 1)
+              FROM book_images i
+             WHERE i.listing_id = v.listing_id AND i.image_no = v.image_no AND i.sha256 = :sha256
+               AND left(v.path, length(:from)) = :from""", nativeQuery = true)
+    int rebaseBlob(@Param("sha256") String sha256, @Param("from") String from, @Param("to") String to);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+            UPDATE book_image_variants SET path = :to || substr(path, length(:from) + 1)
+             WHERE listing_id = :listingId AND left(path, length(:from)) = :from""", nativeQuery = true)
+    int rebaseListing(@Param("listingId") Long listingId, @Param("from") String from, @Param("to") String to);
+}
@@ -1,11 +1,157 @@
 package com.example.bookex.repository;
 
+import com.example.bookex.dto.listing.ListingCardRow;
+import com.example.bookex.dto.listing.ListingVersionRow;
 import com.example.bookex.entity.BookListing;
 import com.example.bookex.entity.User;
+import com.example.bookex.entity.enums.Condition;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 public interface BookListingRepository extends JpaRepository<BookListing, Long> {
-    List<BookListing> findByAvailableTrue();
+
+    // Card rows: listing + book + owner in a single statement (no lazy loads while mapping)
+    String CARD_SELECT = """
+            select new com.example.bookex.dto.listing.ListingCardRow(
+                l.id, l.createdAt, b.id, b.title, b.author, b.isbn,
+                u.id, u.username, u.publicContact, u.preferredMethod, u.contactEmail, u.contactPhone,
+                l.condition, l.available)
+            from BookListing l join l.book b join l.user u
+            """;
+
     List<BookListing> findByUser(User owner);
-}
 
+    // Detail page: listing + book + owner + images in one statement
+    @Query("""
+            select l from BookListing l
+            join fetch l.book join fetch l.user left join fetch l.images
+            where l.id = :id""")
+    Optional<BookListing> findDetailById(@Param("id") Long id);
+
+    // ETag / Last-Modified inputs for the detail page (listing, book, owner, images, rating stats)
+    @Query("""
+            select new com.example.bookex.dto.listing.ListingVersionRow(
+                l.id, l.updatedAt, b.updatedAt, u.updatedAt,
+                (select max(i.updatedAt) from BookImage i where i.listing = l),
+                (select count(i) from BookImage i where i.listing = l),
+                s.updatedAt, coalesce(s.ratingCount, 0))
+            from BookListing l join l.book b join l.user u
+            left join BookRatingStats s on s.bookId = b.id
+            where l.id = :id""")
+    Optional<ListingVersionRow> findVersion(@Param("id") Long id);
+
+    // Conditional availability flip for swap accept/cancel; 0 rows means someone else got there first
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update BookListing l
+               set l.available = :available, l.version = l.version + 1, l.updatedAt = :now
+             where l.id = :id and l.available <> :available""")
+    int setAvailable(@Param("id") Long id, @Param("available") boolean available, @Param("now") Instant now);
+
+    // Version of the public browse pages (BrowseVersion), shared by every node; sequences are not
+    // transactional, so a bump never waits on other writers
+    @Query(value = "SELECT nextval('browse_version_seq')", nativeQuery = true)
+    long bumpBrowseVersion();
+
+    @Query(value = "SELECT last_value FROM browse_version_seq", nativeQuery = true)
+    long currentBrowseVersion();
+
+    // Serializes image uploads to one listing while a free image slot is picked
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select l from BookListing l where l.id = :id")
+    Optional<BookListing> findByIdForUpdate(@Param("id") Long id);
+
+    @Query(CARD_SELECT + "where l.id in :ids")
+    List<ListingCardRow> findCardsByIds(@Param("ids") Collection<Long> ids);
+
+    // Full-text search over title/author/notes (idx_book_listing_search, GIN); ranked, so offset-paged
+    @Query(value = """
+            SELECT l.id
+            FROM book_listing l, websearch_to_tsquery('simple', :q) query
+            WHERE l.available AND l.search_vector @@ query
+            ORDER BY ts_rank_cd(l.search_vector, query) DESC, l.id DESC
+            LIMIT :limit OFFSET :offset""", nativeQuery = true)
+    List<Long> searchIds(@Param("q") String q, @Param("limit") int limit, @Param("offset") int offset);
+
+    @Query(CARD_SELECT + """
+            where u.id = :ownerId
+            order by l.createdAt desc, l.id desc""")
+    List<ListingCardRow> findCardsByOwnerId(@Param("ownerId") Long ownerId);
+
+    // --- browse keyset pages: "after" walks in display order, "before" walks backwards (caller reverses)
+
+    // newest first: (created_at, id) desc, covered by idx_book_listing_available_created
+    @Query(CARD_SELECT + """
+            where l.available = true
+            order by l.createdAt desc, l.id desc""")
+    List<ListingCardRow> findNewest(Pageable page);
+
+    @Query(CARD_SELECT + """
+            where l.available = true
+              and l.createdAt <= :createdAt and (l.createdAt < :createdAt or l.id < :id)
+            order by l.createdAt desc, l.id desc""")
+    List<ListingCardRow> findNewestAfter(@Param("createdAt") Instant createdAt, @Param("id") Long id, Pageable page);
+
+    @Query(CARD_SELECT + """
+            where l.available = true
+              and l.createdAt >= :createdAt and (l.createdAt > :createdAt or l.id > :id)
+            order by l.createdAt asc, l.id asc""")
+    List<ListingCardRow> findNewestBefore(@Param("createdAt") Instant createdAt, @Param("id") Long id, Pageable page);
+
+    // title: (books.title, book id, listing id) asc; a nested loop over idx_books_title_id, each book's
+    // available listings in id order from idx_book_listing_available_book, so no sort of the join
+    @Query(CARD_SELECT + """
+            where l.available = true
+            order by b.title asc, b.id asc, l.id asc""")
+    List<ListingCardRow> findByTitle(Pageable page);
+
+    @Query(CARD_SELECT + """
+            where l.available = true
+              and b.title >= :title and (b.title > :title or b.id > :bookId or (b.id = :bookId and l.id > :id))
+            order by b.title asc, b.id asc, l.id asc""")
+    List<ListingCardRow> findByTitleAfter(@Param("title") String title, @Param("bookId") Long bookId,
+                                          @Param("id") Long id, Pageable page);
+
+    @Query(CARD_SELECT + """
+            where l.available = true
+              and b.title <= :title and (b.title < :title or b.id < :bookId or (b.id = :bookId and l.id < :id))
+            order by b.title desc, b.id desc, l.id desc""")
+    List<ListingCardRow> findByTitleBefore(@Param("title") String title, @Param("bookId") Long bookId,
+                                           @Param("id") Long id, Pageable page);
+
+    // condition: one bucket per Condition, newest first inside a bucket, covered by idx_book_listing_available_condition
+    @Query(CARD_SELECT + """
+            where l.available = true and l.condition = :condition
+            order by l.createdAt desc, l.id desc""")
+    List<ListingCardRow> findByConditionHead(@Param("condition") Condition condition, Pageable page);
+
+    @Query(CARD_SELECT + """
+            where l.available = true and l.condition = :condition
+            order by l.createdAt asc, l.id asc""")
+    List<ListingCardRow> findByConditionTail(@Param("condition") Condition condition, Pageable page);
+
+    @Query(CARD_SELECT + """
+            where l.available = true and l.condition = :condition
+              and l.createdAt <= :createdAt and (l.createdAt < :createdAt or l.id < :id)
+            order by l.createdAt desc, l.id desc""")
+    List<ListingCardRow> findByConditionAfter(@Param("condition") Condition condition,
+                                              @Param("createdAt") Instant createdAt, @Param("id") Long id,
+                                              Pageable page);
+
+    @Query(CARD_SELECT + """
+            where l.available = true and l.condition = :condition
+              and l.createdAt >= :createdAt and (l.createdAt > :createdAt or l.id > :id)
+            order by l.createdAt asc, l.id asc""")
+    List<ListingCardRow> findByConditionBefore(@Param("condition") Condition condition,
+                                               @Param("createdAt") Instant createdAt, @Param("id") Long id,
+                                               Pageable page);
+}
@@ -0,0 +1,77 @@
+package com.example.bookex.repository;
+
+import com.example.bookex.dto.rating.RatingAverageRow;
+import com.example.bookex.entity.BookRatingStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+public interface BookRatingStatsRepository extends JpaRepository<BookRatingStats, Long> {
+
+    // Totals for one book by primary key; empty when the book itself does not exist
+    @Query("""
+            select new com.example.bookex.dto.rating.RatingAverageRow(
+                coalesce(s.ratingCount, 0), coalesce(s.difficultySum, 0),
+                coalesce(s.emotionSum, 0), coalesce(s.enjoymentSum, 0))
+            from Book b left join BookRatingStats s on s.bookId = b.id
+            where b.id = :bookId""")
+    Optional<RatingAverageRow> findTotals(@Param("bookId") Long bookId);
+
+    // Adds a delta in place: the row lock taken by ON CONFLICT serialises concurrent raters of one book
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO book_rating_stats AS s
+                (book_id, rating_count, difficulty_sum, emotion_sum, enjoyment_sum, updated_at)
+            VALUES (:bookId, :count, :difficulty, :emotion, :enjoyment, now())
+            ON CONFLICT (book_id) DO UPDATE SET
+                rating_count   = s.rating_count   + EXCLUDED.rating_count,
+                difficulty_sum = s.difficulty_sum + EXCLUDED.difficulty_sum,
+                emotion_sum    = s.emotion_sum    + EXCLUDED.emotion_sum,
+                enjoyment_sum  = s.enjoyment_sum  + EXCLUDED.enjoyment_sum,
+                updated_at     = now()""", nativeQuery = true)
+    int applyDelta(@Param("bookId") Long bookId, @Param("count") int count, @Param("difficulty") int difficulty,
+                   @Param("emotion") int emotion, @Param("enjoyment") int enjoyment);
+
+    // --- rebuild (RatingService.rebuildStats): drift found in one snapshot without locks, then each drifted
+    // book re-counted under its stats row lock, so raters of other books never wait
+
+    // books whose totals disagree with their ratings, read in one snapshot (rate() moves both in one transaction)
+    @Query(value = """
+            SELECT coalesce(r.book_id, s.book_id)
+              FROM (SELECT book_id, count(*) AS n, sum(difficulty) AS d, sum(emotion) AS e, sum(enjoyment) AS j
+                      FROM ratings
+                     GROUP BY book_id) r
+              FULL JOIN book_rating_stats s ON s.book_id = r.book_id
+             WHERE (coalesce(r.n, 0), coalesce(r.d, 0), coalesce(r.e, 0), coalesce(r.j, 0))
+                   IS DISTINCT FROM
+                   (s.rating_count, s.difficulty_sum, s.emotion_sum, s.enjoyment_sum)""", nativeQuery = true)
+    List<Long> findDrifted();
+
+    // makes sure the row exists before lockRow: waits for a rater that is inserting it right now
+    @Modifying
+    @Query(value = """
+            INSERT INTO book_rating_stats (book_id, rating_count, difficulty_sum, emotion_sum, enjoyment_sum, updated_at)
+            VALUES (:bookId, 0, 0, 0, 0, now())
+            ON CONFLICT (book_id) DO NOTHING""", nativeQuery = true)
+    void insertEmpty(@Param("bookId") Long bookId);
+
+    // waits for raters of the book to commit and keeps new ones out until recount is done
+    @Query(value = "SELECT book_id FROM book_rating_stats WHERE book_id = :bookId FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockRow(@Param("bookId") Long bookId);
+
+    // a separate statement after lockRow, so it counts every rating whose delta is already in the row
+    @Modifying
+    @Query(value = """
+            UPDATE book_rating_stats s
+               SET rating_count = r.n, difficulty_sum = r.d, emotion_sum = r.e, enjoyment_sum = r.j,
+                   updated_at = now()
+              FROM (SELECT count(*) AS n, coalesce(sum(difficulty), 0) AS d, coalesce(sum(emotion), 0) AS e,
+                           coalesce(sum(enjoyment), 0) AS j
+                      FROM ratings
+                     WHERE book_id = :bookId) r
+             WHERE s.book_id = :bookId""", nativeQuery = true)
+    int recount(@Param("bookId") Long bookId);
+}
@@ -1,10 +1,47 @@
 package com.example.bookex.repository;
 
 import com.example.bookex.entity.Book;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 public interface BookRepository extends JpaRepository<Book, Long> {
-    Optional<Book> findByTitleAndAuthor(String t, String a);
+    // Lookups of existing books, the common case: a plain index read on ux_books_title_author
+    @Query("""
+            select b.id as id, b.title as title, b.author as author, b.isbn as isbn,
+                   b.createdAt as createdAt, b.updatedAt as updatedAt
+            from Book b where b.title = :title and b.author = :author""")
+    Optional<BookRow> findRow(@Param("title") String title, @Param("author") String author);
+
+    // Inserts unless (title, author) exists; empty on conflict, leaving the existing row unlocked and
+    // unwritten. Waits for a racing insert of the same book to commit first, so findRow then sees it.
+    @Query(value = """
+            INSERT INTO books (title, author, isbn, created_at, updated_at)
+            VALUES (:title, :author, :isbn, now(), now())
+            ON CONFLICT (title, author) DO NOTHING
+            RETURNING id, title, author, isbn, created_at AS "createdAt", updated_at AS "updatedAt\"""", nativeQuery = true)
+    Optional<BookRow> insertIfAbsent(@Param("title") String title, @Param("author") String author,
+                                     @Param("isbn") String isbn);
+
+    interface BookRow {
+        Long getId();
+        String getTitle();
+        String getAuthor();
+        String getIsbn();
+        Instant getCreatedAt();
+        Instant getUpdatedAt();
+    }
+
+    // {title, author} rows for the autocomplete index; streamed, caller must hold a transaction
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select b.title, b.author from Book b")
+    Stream<Object[]> streamTitlesAndAuthors();
 }
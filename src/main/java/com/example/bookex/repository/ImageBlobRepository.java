@@ -0,0 +1,87 @@
+package com.example.bookex.repository;
+
+import com.example.bookex.entity.ImageBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+
+    // Takes a reference, creating the blob on first use; the row stays locked until commit, so the caller
+    // can check for the file and move it into place without racing the collector
+    @Modifying
+    @Query(value = """
+            INSERT INTO image_blobs (sha256, path, size_bytes, ref_count, created_at, updated_at)
+            VALUES (:sha256, :path, :size, 1, :now, :now)
+            ON CONFLICT (sha256) DO UPDATE SET ref_count = image_blobs.ref_count + 1, updated_at = :now""",
+            nativeQuery = true)
+    int acquire(@Param("sha256") String sha256, @Param("path") String path, @Param("size") long size,
+                @Param("now") Instant now);
+
+    // 0 rows: no such blob (an image stored before content addressing)
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update ImageBlob b set b.refCount = b.refCount - 1, b.updatedAt = :now
+            where b.sha256 = :sha256 and b.refCount > 0""")
+    int release(@Param("sha256") String sha256, @Param("now") Instant now);
+
+    // One reference per image of the listing, before the listing (and its images, by cascade) is deleted
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            UPDATE image_blobs b
+               SET ref_count = GREATEST(b.ref_count - r.refs, 0), updated_at = :now
+              FROM (SELECT i.sha256, count(*) AS refs FROM book_images i
+                     WHERE i.listing_id = :listingId AND i.path LIKE '/uploads/blobs/%'
+                     GROUP BY i.sha256) r
+             WHERE b.sha256 = r.sha256""",
+            nativeQuery = true)
+    int releaseForListing(@Param("listingId") Long listingId, @Param("now") Instant now);
+
+    // Unreferenced past the grace period and not pointed at by any image (guards against a drifted count);
+    // locked, so an upload of the same content waits until the files are gone and then recreates them
+    @Query(value = """
+            SELECT * FROM image_blobs b
+             WHERE b.ref_count = 0 AND b.updated_at < :cutoff
+               AND NOT EXISTS (SELECT 1 FROM book_images i
+                                WHERE i.sha256 = b.sha256 AND i.path LIKE '/uploads/blobs/%')
+             ORDER BY b.updated_at
+             LIMIT :limit
+               FOR UPDATE SKIP LOCKED""", nativeQuery = true)
+    List<ImageBlob> lockCollectable(@Param("cutoff") Instant cutoff, @Param("limit") int limit);
+
+    @Modifying
+    @Query("delete from ImageBlob b where b.sha256 in :shas and b.refCount = 0")
+    int deleteUnreferenced(@Param("shas") Collection<String> shas);
+
+    @Query("select b.sha256 from ImageBlob b where b.sha256 in :shas")
+    List<String> findExisting(@Param("shas") Collection<String> shas);
+
+    // A blob file without a row (its upload rolled back after the move) becomes an unreferenced blob, left to
+    // the collector and its locking; an upload of the same bytes that got there first keeps its row
+    @Modifying
+    @Query(value = """
+            INSERT INTO image_blobs (sha256, path, size_bytes, ref_count, created_at, updated_at)
+            VALUES (:sha256, :path, :size, 0, :since, :since)
+            ON CONFLICT (sha256) DO NOTHING""", nativeQuery = true)
+    int adopt(@Param("sha256") String sha256, @Param("path") String path, @Param("size") long size,
+              @Param("since") Instant since);
+
+    // Blobs still in the flat blobs/ directory; locked so the collector skips them and uploads of the same
+    // bytes wait while their files and paths move
+    @Query(value = """
+            SELECT * FROM image_blobs b
+             WHERE b.sha256 > :after AND b.path NOT LIKE '/uploads/blobs/%/%'
+             ORDER BY b.sha256
+             LIMIT :limit
+               FOR UPDATE""", nativeQuery = true)
+    List<ImageBlob> lockFlat(@Param("after") String after, @Param("limit") int limit);
+
+    @Modifying
+    @Query("update ImageBlob b set b.path = :path where b.sha256 = :sha256")
+    int relocate(@Param("sha256") String sha256, @Param("path") String path);
+}
@@ -4,11 +4,20 @@ import com.example.bookex.entity.Rating;
 import com.example.bookex.entity.Book;
 import com.example.bookex.entity.RatingId;
 import com.example.bookex.entity.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.List;
 import java.util.Optional;
 public interface RatingRepository extends JpaRepository<Rating, RatingId> {
     Optional<Rating> findByUserAndBook(User user, Book book);
+
+    // rate() moves the book's totals by the difference to the previous values: lock them while it does
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from Rating r where r.user = :user and r.book = :book")
+    Optional<Rating> findByUserAndBookForUpdate(@Param("user") User user, @Param("book") Book book);
     List<Rating> findByBook(Book book);
 }
 
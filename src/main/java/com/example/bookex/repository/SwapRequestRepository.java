@@ -2,11 +2,167 @@ package com.example.bookex.repository;
 
 import com.example.bookex.entity.SwapRequest;
 import com.example.bookex.entity.User;
-import com.example.bookex.entity.BookListing;
+import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.event.SwapChangedEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 public interface SwapRequestRepository extends JpaRepository<SwapRequest, Long> {
-    List<SwapRequest> findByListingInOrderByCreatedAtDesc(List<BookListing> listings);
+    // New pending request unless the requester already has one on this listing (ux_swaps_pending_listing_requester);
+    // empty on conflict, then findPendingId reads the existing one in a fresh snapshot
+    @Query(value = """
+            INSERT INTO swap_requests (book_listing_id, user_id, status, message, version, created_at, updated_at)
+            VALUES (:listingId, :requesterId, 'PENDING', :message, 0, :now, :now)
+            ON CONFLICT (book_listing_id, user_id) WHERE status = 'PENDING' DO NOTHING
+            RETURNING id""", nativeQuery = true)
+    Optional<Long> insertPending(@Param("listingId") Long listingId, @Param("requesterId") Long requesterId,
+                                 @Param("message") String message, @Param("now") Instant now);
+
+    @Query("""
+            select s.id from SwapRequest s
+            where s.listing.id = :listingId and s.user.id = :requesterId
+              and s.status = com.example.bookex.entity.enums.SwapStatus.PENDING""")
+    Optional<Long> findPendingId(@Param("listingId") Long listingId, @Param("requesterId") Long requesterId);
+
+    // swap views read listing, book, owner and requester: fetch them with the swaps
+    @EntityGraph(attributePaths = {"listing", "listing.book", "listing.user", "user"})
     List<SwapRequest> findByUserOrderByCreatedAtDesc(User user);
+
+    @EntityGraph(attributePaths = {"listing", "listing.book", "listing.user", "user"})
+    Optional<SwapRequest> findWithPartiesById(Long id);
+
+    // --- status transitions: compare-and-set on the current status, so only one concurrent caller wins
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update SwapRequest s
+               set s.status = :to, s.version = s.version + 1, s.updatedAt = :now
+             where s.id = :id and s.status = :from""")
+    int transition(@Param("id") Long id, @Param("from") SwapStatus from, @Param("to") SwapStatus to,
+                   @Param("now") Instant now);
+
+    // Other pending requests on an accepted swap's listing, locked so declineAll changes exactly these rows;
+    // shaped as the events their decline publishes
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            select new com.example.bookex.event.SwapChangedEvent(s.id, l.id, l.user.id, s.user.id,
+                com.example.bookex.entity.enums.SwapStatus.PENDING, com.example.bookex.entity.enums.SwapStatus.DECLINED)
+            from SwapRequest s join s.listing l
+            where l.id = :listingId and s.id <> :acceptedId
+              and s.status = com.example.bookex.entity.enums.SwapStatus.PENDING""")
+    List<SwapChangedEvent> lockOtherPending(@Param("listingId") Long listingId, @Param("acceptedId") Long acceptedId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update SwapRequest s
+               set s.status = com.example.bookex.entity.enums.SwapStatus.DECLINED,
+                   s.version = s.version + 1, s.updatedAt = :now
+             where s.id in :ids and s.status = com.example.bookex.entity.enums.SwapStatus.PENDING""")
+    int declineAll(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    // Seed for PendingSwapCounter; walks idx_swaps_listing_status_created per listing of the owner
+    @Query("""
+            select count(s) from SwapRequest s join s.listing l
+            where l.user.id = :ownerId and s.status = com.example.bookex.entity.enums.SwapStatus.PENDING""")
+    long countPendingForOwner(@Param("ownerId") Long ownerId);
+
+    // --- expiry batches (SwapExpiryJob): oldest first, skipping rows a user is changing right now
+
+    @Query(value = """
+            WITH batch AS (
+                SELECT id FROM swap_requests
+                WHERE status = 'PENDING' AND created_at < :cutoff
+                ORDER BY created_at, id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED)
+            UPDATE swap_requests s
+               SET status = 'EXPIRED', version = s.version + 1, updated_at = :now
+              FROM batch, book_listing l
+             WHERE s.id = batch.id AND l.id = s.book_listing_id
+            RETURNING s.id AS "swapId", l.id AS "listingId", l.user_id AS "ownerId", s.user_id AS "requesterId",
+                      false AS relisted""", nativeQuery = true)
+    List<ExpiredRow> expirePending(@Param("cutoff") Instant cutoff, @Param("now") Instant now,
+                                   @Param("limit") int limit);
+
+    // Cancels accepted swaps idle since :cutoff and puts their listings back on the market, in one statement
+    @Query(value = """
+            WITH batch AS (
+                SELECT id FROM swap_requests
+                WHERE status = 'ACCEPTED' AND updated_at < :cutoff
+                ORDER BY updated_at, id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED),
+            cancelled AS (
+                UPDATE swap_requests s
+                   SET status = 'CANCELLED', version = s.version + 1, updated_at = :now
+                  FROM batch
+                 WHERE s.id = batch.id
+                RETURNING s.id, s.book_listing_id, s.user_id),
+            relisted AS (
+                UPDATE book_listing l
+                   SET available = true, version = l.version + 1, updated_at = :now
+                  FROM cancelled c
+                 WHERE l.id = c.book_listing_id AND NOT l.available
+                RETURNING l.id)
+            SELECT c.id AS "swapId", l.id AS "listingId", l.user_id AS "ownerId", c.user_id AS "requesterId",
+                   l.id IN (SELECT id FROM relisted) AS relisted
+            FROM cancelled c JOIN book_listing l ON l.id = c.book_listing_id""", nativeQuery = true)
+    List<ExpiredRow> cancelStalledAccepted(@Param("cutoff") Instant cutoff, @Param("now") Instant now,
+                                           @Param("limit") int limit);
+
+    interface ExpiredRow {
+        Long getSwapId();
+        Long getListingId();
+        Long getOwnerId();
+        Long getRequesterId();
+        boolean isRelisted();
+    }
+
+    // --- owner inbox: joined on the listing owner, keyset-paged on (created_at, id) desc;
+    // owner's listings via idx_book_listing_owner, then idx_swaps_listing_status_created per listing.
+    // With and without a status filter as separate queries: an optional ":status is null or ..." predicate
+    // would keep the planner from using the status column of that index.
+
+    String INBOX_SELECT = """
+            select s from SwapRequest s
+            join fetch s.listing l join fetch l.book join fetch l.user o join fetch s.user
+            where o.id = :ownerId
+            """;
+
+    String INBOX_STATUS = """
+              and s.status = :status
+            """;
+
+    String INBOX_AFTER = """
+              and s.createdAt <= :createdAt and (s.createdAt < :createdAt or s.id < :id)
+            """;
+
+    String INBOX_ORDER = "order by s.createdAt desc, s.id desc";
+
+    @Query(INBOX_SELECT + INBOX_ORDER)
+    List<SwapRequest> findInbox(@Param("ownerId") Long ownerId, Pageable page);
+
+    @Query(INBOX_SELECT + INBOX_AFTER + INBOX_ORDER)
+    List<SwapRequest> findInboxAfter(@Param("ownerId") Long ownerId, @Param("createdAt") Instant createdAt,
+                                     @Param("id") Long id, Pageable page);
+
+    @Query(INBOX_SELECT + INBOX_STATUS + INBOX_ORDER)
+    List<SwapRequest> findInboxByStatus(@Param("ownerId") Long ownerId, @Param("status") SwapStatus status,
+                                        Pageable page);
+
+    @Query(INBOX_SELECT + INBOX_STATUS + INBOX_AFTER + INBOX_ORDER)
+    List<SwapRequest> findInboxByStatusAfter(@Param("ownerId") Long ownerId, @Param("status") SwapStatus status,
+                                             @Param("createdAt") Instant createdAt, @Param("id") Long id,
+                                             Pageable page);
 }
 
@@ -0,0 +1,45 @@
+package com.example.bookex.repository;
+
+import com.example.bookex.entity.Book;
+import com.example.bookex.entity.WishlistItem;
+import com.example.bookex.entity.WishlistItemId;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+public interface WishlistRepository extends JpaRepository<WishlistItem, WishlistItemId> {
+
+    @Query("""
+            select b from WishlistItem w join w.book b
+            where w.user.id = :userId
+            order by w.createdAt desc, b.id desc""")
+    List<Book> findBooksByUserId(@Param("userId") Long userId);
+
+    // 1 when added, 0 when the book was already wished for
+    @Modifying
+    @Query(value = """
+            INSERT INTO wishlist (user_id, book_id, created_at) VALUES (:userId, :bookId, now())
+            ON CONFLICT DO NOTHING""", nativeQuery = true)
+    int insert(@Param("userId") Long userId, @Param("bookId") Long bookId);
+
+    @Modifying
+    @Query("delete from WishlistItem w where w.id.userId = :userId and w.id.bookId = :bookId")
+    int remove(@Param("userId") Long userId, @Param("bookId") Long bookId);
+
+    // {wisher id, owner id, listing id} for every available listing of a wished-for book (SwapGraph edges);
+    // streamed, caller must hold a transaction. Driven by idx_wishlist_book on the wishlist side.
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "5000"))
+    @Query("""
+            select w.id.userId, l.user.id, l.id
+            from WishlistItem w, BookListing l
+            where l.book.id = w.id.bookId and l.available = true and l.user.id <> w.id.userId""")
+    Stream<Object[]> streamWantedListings();
+}
@@ -0,0 +1,218 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.book.BookSuggestionDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable prefix index over normalized book titles and authors.
+ * <p>
+ * All distinct terms are packed into one {@code char[]} pool; every word start inside a term is a key
+ * ({@code termIndex << 8 | wordOffset}) and keys are sorted by the suffix they point at, so a lookup is a
+ * binary search plus a short scan with no per-entry objects. Updates return a new index (copy + merge), so
+ * they cost time in the size of the whole index: {@link AutocompleteService} keeps new terms in a small
+ * second index and folds it in now and then, combining the two at lookup with {@link #merge}.
+ */
+public final class AutocompleteIndex {
+
+    public static final byte TITLE = 0;
+    public static final byte AUTHOR = 1;
+
+    private static final int MAX_WORD_OFFSET = 0xFF;
+    private static final int SCAN_FACTOR = 8; // matches scanned per requested suggestion before ranking
+
+    private final char[] pool;
+    private final int[] termStart; // term i spans pool[termStart[i], termStart[i + 1])
+    private final byte[] kinds;
+    private final long[] keys;
+
+    private AutocompleteIndex(char[] pool, int[] termStart, byte[] kinds, long[] keys) {
+        this.pool = pool;
+        this.termStart = termStart;
+        this.kinds = kinds;
+        this.keys = keys;
+    }
+
+    public static AutocompleteIndex empty() {
+        return new AutocompleteIndex(new char[0], new int[]{0}, new byte[0], new long[0]);
+    }
+
+    public int size() { return kinds.length; }
+
+    public boolean contains(String term, byte kind) {
+        for (int k = lowerBound(term); k < keys.length && startsWith(keys[k], term); k++) {
+            int t = term(keys[k]);
+            if (offset(keys[k]) == 0 && length(t) == term.length() && kinds[t] == kind) return true;
+        }
+        return false;
+    }
+
+    /** Returns a new index that also holds the given (term, kind) pairs; existing pairs are skipped. */
+    public AutocompleteIndex with(List<String> terms, byte[] termKinds) {
+        Set<String> fresh = new LinkedHashSet<>();
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            if (term != null && !term.isEmpty() && !contains(term, termKinds[i])) fresh.add(termKinds[i] + term);
+        }
+        if (fresh.isEmpty()) return this;
+
+        int base = kinds.length;
+        int chars = fresh.stream().mapToInt(s -> s.length() - 1).sum();
+        char[] newPool = Arrays.copyOf(pool, pool.length + chars);
+        int[] newStart = Arrays.copyOf(termStart, base + fresh.size() + 1);
+        byte[] newKinds = Arrays.copyOf(kinds, base + fresh.size());
+
+        int t = base;
+        int pos = pool.length;
+        for (String entry : fresh) {
+            newKinds[t] = (byte) (entry.charAt(0) - '0');
+            entry.getChars(1, entry.length(), newPool, pos);
+            pos += entry.length() - 1;
+            newStart[++t] = pos;
+        }
+
+        AutocompleteIndex draft = new AutocompleteIndex(newPool, newStart, newKinds, null);
+        long[] added = draft.wordKeys(base, newKinds.length);
+        draft.sort(added);
+        return new AutocompleteIndex(newPool, newStart, newKinds, draft.merge(keys, added));
+    }
+
+    /** Returns a new index that also holds every term of {@code other}. */
+    public AutocompleteIndex with(AutocompleteIndex other) {
+        List<String> terms = new ArrayList<>(other.size());
+        for (int t = 0; t < other.size(); t++) terms.add(other.termText(t));
+        return with(terms, other.kinds);
+    }
+
+    /**
+     * Suggestions of two indexes holding different terms, ranked together as {@link #suggest} ranks them:
+     * whole-term prefixes first, then shorter terms, then alphabetically.
+     */
+    public static List<BookSuggestionDto> merge(String prefix, int limit, List<BookSuggestionDto> a,
+                                                List<BookSuggestionDto> b) {
+        if (b.isEmpty()) return a;
+        if (a.isEmpty()) return b;
+        List<BookSuggestionDto> all = new ArrayList<>(a.size() + b.size());
+        all.addAll(a);
+        all.addAll(b);
+        all.sort(Comparator.<BookSuggestionDto>comparingInt(s -> s.getText().startsWith(prefix) ? 0 : 1)
+                .thenComparingInt(s -> s.getText().length())
+                .thenComparing(BookSuggestionDto::getText));
+        return all.size() > limit ? all.subList(0, limit) : all;
+    }
+
+    /** Up to {@code limit} terms having a word that starts with {@code prefix}; whole-term prefixes rank first. */
+    public List<BookSuggestionDto> suggest(String prefix, int limit) {
+        if (prefix.isEmpty() || limit <= 0) return List.of();
+        List<long[]> candidates = new ArrayList<>(); // {term, offset}
+        Set<Integer> seen = new HashSet<>();
+        for (int k = lowerBound(prefix); k < keys.length && startsWith(keys[k], prefix)
+                && candidates.size() < limit * SCAN_FACTOR; k++) {
+            int t = term(keys[k]);
+            if (seen.add(t)) candidates.add(new long[]{t, offset(keys[k])});
+        }
+        candidates.sort(Comparator.<long[]>comparingInt(c -> c[1] == 0 ? 0 : 1)
+                .thenComparingInt(c -> length((int) c[0]))
+                .thenComparing(c -> termText((int) c[0])));
+
+        List<BookSuggestionDto> out = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size() && i < limit; i++) {
+            int t = (int) candidates.get(i)[0];
+            out.add(new BookSuggestionDto(termText(t), kinds[t] == TITLE ? "title" : "author"));
+        }
+        return out;
+    }
+
+    // --- key layout
+
+    private static int term(long key) { return (int) (key >>> 8); }
+    private static int offset(long key) { return (int) (key & MAX_WORD_OFFSET); }
+    private int length(int term) { return termStart[term + 1] - termStart[term]; }
+    private String termText(int term) { return new String(pool, termStart[term], length(term)); }
+
+    private long[] wordKeys(int fromTerm, int toTerm) {
+        long[] out = new long[16];
+        int n = 0;
+        for (int t = fromTerm; t < toTerm; t++) {
+            int start = termStart[t];
+            int len = Math.min(length(t), MAX_WORD_OFFSET + 1);
+            for (int i = 0; i < len; i++) {
+                boolean wordStart = Character.isLetterOrDigit(pool[start + i])
+                        && (i == 0 || !Character.isLetterOrDigit(pool[start + i - 1]));
+                if (!wordStart) continue;
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = ((long) t << 8) | i;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // --- suffix comparisons against the pool
+
+    private int compareKeys(long a, long b) {
+        int ta = term(a), tb = term(b);
+        int pa = termStart[ta] + offset(a), ea = termStart[ta + 1];
+        int pb = termStart[tb] + offset(b), eb = termStart[tb + 1];
+        while (pa < ea && pb < eb) {
+            int diff = pool[pa++] - pool[pb++];
+            if (diff != 0) return diff;
+        }
+        int byLength = (ea - pa) - (eb - pb);
+        return byLength != 0 ? byLength : Long.compare(a, b);
+    }
+
+    private int compareToPrefix(long key, String prefix) {
+        int t = term(key);
+        int p = termStart[t] + offset(key), end = termStart[t + 1];
+        for (int i = 0; i < prefix.length(); i++, p++) {
+            if (p == end) return -1;
+            int diff = pool[p] - prefix.charAt(i);
+            if (diff != 0) return diff;
+        }
+        return 0; // suffix starts with prefix
+    }
+
+    private boolean startsWith(long key, String prefix) { return compareToPrefix(key, prefix) == 0; }
+
+    private int lowerBound(String prefix) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareToPrefix(keys[mid], prefix) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // --- primitive merge sort / merge (no boxing of millions of keys)
+
+    private void sort(long[] a) {
+        if (a.length < 2) return;
+        long[] tmp = new long[a.length];
+        for (int width = 1; width < a.length; width *= 2) {
+            for (int lo = 0; lo < a.length - width; lo += 2 * width) {
+                int mid = lo + width, hi = Math.min(lo + 2 * width, a.length);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) tmp[k++] = compareKeys(a[i], a[j]) <= 0 ? a[i++] : a[j++];
+                while (i < mid) tmp[k++] = a[i++];
+                while (j < hi) tmp[k++] = a[j++];
+                System.arraycopy(tmp, lo, a, lo, hi - lo);
+            }
+        }
+    }
+
+    private long[] merge(long[] a, long[] b) {
+        long[] out = new long[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) out[k++] = compareKeys(a[i], b[j]) <= 0 ? a[i++] : b[j++];
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return out;
+    }
+}
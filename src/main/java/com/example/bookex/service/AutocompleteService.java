@@ -0,0 +1,118 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.book.BookSuggestionDto;
+import com.example.bookex.event.BookCreatedEvent;
+import com.example.bookex.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Type-ahead over book titles and authors served from memory.
+ * Loaded once at startup, then extended as BookService creates books; reads never touch the database.
+ * New terms go into a small delta index, so a created book costs time in the size of the delta rather than
+ * the catalogue; the delta is folded into the main index every {@code merge-delay-ms}, or at once when it
+ * reaches {@code delta-max} terms.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AutocompleteService {
+
+    private static final int LOAD_BATCH = 50_000;
+    private static final int MAX_PREFIX = 100;
+
+    private final BookRepository bookRepository;
+
+    @Value("${app.autocomplete.min-prefix:2}")
+    private int minPrefix;
+
+    @Value("${app.autocomplete.max-results:10}")
+    private int maxResults;
+
+    @Value("${app.autocomplete.delta-max:1000}")
+    private int deltaMax;
+
+    // replaced as a whole, so a reader never sees a term in both or in neither
+    private record Snapshot(AutocompleteIndex base, AutocompleteIndex delta) {
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(AutocompleteIndex.empty(), AutocompleteIndex.empty());
+
+    public List<BookSuggestionDto> suggest(String query, int limit) {
+        if (query == null) return List.of();
+        String prefix = query.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        if (prefix.length() < minPrefix || prefix.length() > MAX_PREFIX) return List.of();
+        int n = Math.max(1, Math.min(limit, maxResults));
+        Snapshot current = snapshot;
+        return AutocompleteIndex.merge(prefix, n, current.base().suggest(prefix, n), current.delta().suggest(prefix, n));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        long started = System.nanoTime();
+        List<String> terms = new ArrayList<>(LOAD_BATCH);
+        try (Stream<Object[]> rows = bookRepository.streamTitlesAndAuthors()) {
+            rows.forEach(row -> {
+                terms.add((String) row[0]);
+                terms.add((String) row[1]);
+                if (terms.size() >= LOAD_BATCH) {
+                    addAll(terms);
+                    terms.clear();
+                }
+            });
+        }
+        addAll(terms);
+        log.info("Autocomplete index loaded: {} terms in {} ms", snapshot.base().size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @TransactionalEventListener
+    public synchronized void onBookCreated(BookCreatedEvent event) {
+        List<String> terms = new ArrayList<>(2);
+        List<Byte> kinds = new ArrayList<>(2);
+        if (!snapshot.base().contains(event.title(), AutocompleteIndex.TITLE)) {
+            terms.add(event.title());
+            kinds.add(AutocompleteIndex.TITLE);
+        }
+        if (!snapshot.base().contains(event.author(), AutocompleteIndex.AUTHOR)) {
+            terms.add(event.author());
+            kinds.add(AutocompleteIndex.AUTHOR);
+        }
+        if (terms.isEmpty()) return;
+        byte[] termKinds = new byte[kinds.size()];
+        for (int i = 0; i < termKinds.length; i++) termKinds[i] = kinds.get(i);
+        snapshot = new Snapshot(snapshot.base(), snapshot.delta().with(terms, termKinds));
+        if (snapshot.delta().size() >= deltaMax) mergeDelta();
+    }
+
+    /** Folds the delta into the main index; the one update that costs time in the size of the catalogue. */
+    @Scheduled(fixedDelayString = "${app.autocomplete.merge-delay-ms:60000}")
+    public synchronized void mergeDelta() {
+        if (snapshot.delta().size() == 0) return;
+        snapshot = new Snapshot(snapshot.base().with(snapshot.delta()), AutocompleteIndex.empty());
+    }
+
+    int pendingTerms() {
+        return snapshot.delta().size();
+    }
+
+    // startup load straight into the main index; single writer at a time, readers keep the previous snapshot
+    private synchronized void addAll(List<String> titleAuthorPairs) {
+        if (titleAuthorPairs.isEmpty()) return;
+        byte[] kinds = new byte[titleAuthorPairs.size()];
+        for (int i = 1; i < kinds.length; i += 2) kinds[i] = AutocompleteIndex.AUTHOR;
+        snapshot = new Snapshot(snapshot.base().with(titleAuthorPairs, kinds), snapshot.delta());
+    }
+}
@@ -2,37 +2,66 @@ package com.example.bookex.service;
 
 import com.example.bookex.dto.book.BookDto;
 import com.example.bookex.entity.Book;
+import com.example.bookex.event.BookCreatedEvent;
 import com.example.bookex.repository.BookRepository;
 import com.example.bookex.util.DtoMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Optional;
+
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 public class BookService {
 
     private final BookRepository bookRepository;
+    private final ApplicationEventPublisher events;
 
+    /**
+     * Returns the book for the normalized (title, author), inserting it if needed. Existing books cost one
+     * index read and are never locked or rewritten; racing creators get the same row and one of them the
+     * event. An ISBN only applies to newly created books.
+     */
     @Transactional
     public Book findOrCreate(String title, String author, String isbn) {
-        String normalizedTitle = normalize(title);
-        String normalizedAuthor = normalize(author);
-        return bookRepository.findByTitleAndAuthor(normalizedTitle, normalizedAuthor)
-                .orElseGet(() -> {
-                    Book b = Book.builder()
-                            .title(normalizedTitle)
-                            .author(normalizedAuthor)
-                            .isbn(normalizeOrNull(isbn))
-                            .build();
-                    // @PrePersist sets timestamps
-                    return bookRepository.save(b);
-                });
+        String t = normalize(title);
+        String a = normalize(author);
+        Optional<BookRepository.BookRow> existing = bookRepository.findRow(t, a);
+        if (existing.isPresent()) return toBook(existing.get());
+
+        Optional<BookRepository.BookRow> inserted = bookRepository.insertIfAbsent(t, a, normalizeOrNull(isbn));
+        if (inserted.isEmpty()) {
+            // lost the race: the winner has committed by now
+            return toBook(bookRepository.findRow(t, a)
+                    .orElseThrow(() -> new IllegalStateException("Book vanished while being created")));
+        }
+        BookRepository.BookRow row = inserted.get();
+        events.publishEvent(new BookCreatedEvent(row.getId(), row.getTitle(), row.getAuthor()));
+        return toBook(row);
+    }
+
+    /** The catalogue book for the normalized (title, author), if there is one; never inserts. */
+    public Optional<Book> find(String title, String author) {
+        return bookRepository.findRow(normalize(title), normalize(author)).map(BookService::toBook);
     }
 
     public BookDto toDto(Book b) { return DtoMapper.toBookDto(b); }
 
+    // detached but fully populated: callers only reference or render it
+    private static Book toBook(BookRepository.BookRow row) {
+        return Book.builder()
+                .id(row.getId())
+                .title(row.getTitle())
+                .author(row.getAuthor())
+                .isbn(row.getIsbn())
+                .createdAt(row.getCreatedAt())
+                .updatedAt(row.getUpdatedAt())
+                .build();
+    }
+
     private static String normalize(String string) {
         if (string == null) throw new IllegalArgumentException("Value required");
         string = string.trim().toLowerCase();
@@ -0,0 +1,61 @@
+package com.example.bookex.service;
+
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.event.ProfileChangedEvent;
+import com.example.bookex.repository.BookListingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version of the public browse/search pages, used as their ETag.
+ * Kept in a database sequence so every node hands out the same tags: bumped after every committed change
+ * that can alter a card, and re-read at most once per {@code ttl}, which bounds how long a node keeps
+ * answering 304 after a change made on another node.
+ */
+@Component
+public class BrowseVersion {
+
+    private final BookListingRepository bookListingRepository;
+    private final long ttlNanos;
+    private final AtomicLong version = new AtomicLong();
+    private volatile long readAt;
+
+    public BrowseVersion(BookListingRepository bookListingRepository,
+                         @Value("${app.browse.version-ttl:1s}") Duration ttl) {
+        this.bookListingRepository = bookListingRepository;
+        this.ttlNanos = ttl.toNanos();
+        this.readAt = System.nanoTime() - ttlNanos - 1;
+    }
+
+    public String current() {
+        long now = System.nanoTime();
+        if (now - readAt > ttlNanos) {
+            // the sequence only grows: never go back to a value read before a concurrent bump
+            version.accumulateAndGet(bookListingRepository.currentBrowseVersion(), Math::max);
+            readAt = now;
+        }
+        return Long.toString(version.get(), 36);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onListingChanged(ListingChangedEvent event) {
+        bump();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onProfileChanged(ProfileChangedEvent event) {
+        bump();
+    }
+
+    private void bump() {
+        version.accumulateAndGet(bookListingRepository.bumpBrowseVersion(), Math::max);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.bookex.service;
+
+import com.example.bookex.config.CacheConfig;
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.event.ProfileChangedEvent;
+import com.example.bookex.event.RatingChangedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Evicts read caches once the change that makes them stale has committed, so a concurrent reader
+ * cannot repopulate an entry from the old state. Browse pages are keyed by cursor, and one listing can
+ * shift every page after it, so the browse cache is cleared as a whole.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidationListener {
+
+    private final CacheManager cacheManager;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onListingChanged(ListingChangedEvent event) {
+        cache(CacheConfig.LISTING_DETAIL).evict(event.listingId());
+        cache(CacheConfig.BROWSE).clear();
+    }
+
+    // owner name and contact appear on every card and detail page of that owner
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProfileChanged(ProfileChangedEvent event) {
+        cache(CacheConfig.LISTING_DETAIL).clear();
+        cache(CacheConfig.BROWSE).clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRatingChanged(RatingChangedEvent event) {
+        cache(CacheConfig.RATING_AVERAGES).evict(event.bookId());
+    }
+
+    private Cache cache(String name) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache == null) throw new IllegalStateException("Cache not configured: " + name);
+        return cache;
+    }
+}
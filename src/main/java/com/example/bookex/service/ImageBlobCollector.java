@@ -0,0 +1,59 @@
+package com.example.bookex.service;
+
+import com.example.bookex.entity.ImageBlob;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Deletes content-addressed image blobs (and their variants) that no image has referenced for
+ * {@code grace}, in batches of {@code batch-size}; the grace period lets a just-deleted cover be re-uploaded
+ * without rewriting it. Freed bytes are recorded as {@code bookex.images.blobs.collected.bytes}.
+ */
+@Slf4j
+@Component
+public class ImageBlobCollector {
+
+    private final StorageService storageService;
+    private final MeterRegistry meterRegistry;
+    private final Duration grace;
+    private final int batchSize;
+    private final int maxBatches;
+
+    public ImageBlobCollector(StorageService storageService, MeterRegistry meterRegistry,
+                              @Value("${app.images.blobs.grace:1d}") Duration grace,
+                              @Value("${app.images.blobs.batch-size:200}") int batchSize,
+                              @Value("${app.images.blobs.max-batches:50}") int maxBatches) {
+        this.storageService = storageService;
+        this.meterRegistry = meterRegistry;
+        this.grace = grace;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    @Scheduled(cron = "${app.images.blobs.gc-cron:0 40 * * * *}")
+    public void run() {
+        Instant cutoff = Instant.now().minus(grace);
+        int blobs = 0;
+        long bytes = 0;
+        try {
+            for (int i = 0; i < maxBatches; i++) {
+                List<ImageBlob> batch = storageService.collectBlobs(cutoff, batchSize);
+                blobs += batch.size();
+                bytes += batch.stream().mapToLong(ImageBlob::getSizeBytes).sum();
+                if (batch.size() < batchSize) break;
+            }
+        } catch (IOException ex) {
+            log.warn("Image blob collection stopped: {}", ex.getMessage());
+        }
+        meterRegistry.counter("bookex.images.blobs.collected.bytes").increment(bytes);
+        if (blobs > 0) log.info("Image blobs: {} unreferenced blobs deleted, {} bytes freed", blobs, bytes);
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.bookex.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Turns a received upload into the file that gets stored, with the JDK only. Metadata is always dropped:
+ * EXIF (camera, GPS position, embedded thumbnail), XMP, IPTC, comments, and data appended after the image
+ * such as motion-photo clips. JPEGs are turned upright by their EXIF orientation. Images wider or taller
+ * than the dimension cap are scaled down, and the pixels are re-encoded at the configured JPEG quality.
+ * When the geometry does not change and re-encoding would not shrink the file, the original stripped of
+ * its metadata is kept instead, so a file never grows.
+ * <p>
+ * Memory: the metadata pass streams, and the decoder subsamples large sources so the decoded raster stays
+ * under twice the cap on its long side, however many pixels the upload has (within {@code maxPixels}).
+ */
+final class ImageIngest {
+
+    record Result(int width, int height, long originalSize, long storedSize, BufferedImage image) {
+    }
+
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] ICC_HEADER = "ICC_PROFILE\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // ancillary PNG chunks that only describe where and when the picture was taken or edited
+    private static final Set<String> PNG_METADATA = Set.of("tEXt", "zTXt", "iTXt", "eXIf", "tIME");
+
+    private ImageIngest() {
+    }
+
+    /**
+     * Writes the image in {@code source} to {@code target} as described above. {@code source} is expected
+     * to have passed the magic-byte check for its format.
+     *
+     * @throws IllegalArgumentException when the image is too large or cannot be decoded
+     */
+    static Result process(Path source, Path target, boolean png, int maxDimension, long maxPixels,
+                          float jpegQuality) throws IOException {
+        long originalSize = Files.size(source);
+        int orientation = 1;
+        if (png) {
+            stripPng(source, target);
+        } else {
+            orientation = stripJpeg(source, target);
+        }
+
+        Decoded decoded = decode(target, maxDimension, maxPixels);
+        int[] size = fit(decoded.width(), decoded.height(), maxDimension);
+        BufferedImage image = decoded.image();
+        if (image.getWidth() != size[0] || image.getHeight() != size[1]) {
+            image = ImageResizer.scale(image, size[0], size[1], png && image.getColorModel().hasAlpha());
+        }
+        image = orient(image, orientation);
+        boolean sameGeometry = orientation == 1 && size[0] == decoded.width() && size[1] == decoded.height();
+
+        Path encoded = target.resolveSibling(target.getFileName() + ".enc");
+        try {
+            ImageResizer.encode(image, png, jpegQuality, encoded);
+            if (!sameGeometry || Files.size(encoded) < Files.size(target)) {
+                Files.move(encoded, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(encoded);
+        }
+        return new Result(image.getWidth(), image.getHeight(), originalSize, Files.size(target), image);
+    }
+
+    // --- decoding
+
+    private record Decoded(BufferedImage image, int width, int height) {
+    }
+
+    // subsampled by whole steps so the raster is at most twice the cap; the filtered downscale does the rest
+    private static Decoded decode(Path file, int maxDimension, long maxPixels) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) throw new IllegalArgumentException("File is not a readable image");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Image too large (max " + maxPixels / 1_000_000 + " megapixels)");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / maxDimension);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return new Decoded(reader.read(0, param), width, height);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("File is not a readable image", ex);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static int[] fit(int width, int height, int maxDimension) {
+        if (width <= maxDimension && height <= maxDimension) return new int[]{width, height};
+        return width >= height
+                ? new int[]{maxDimension, Math.max(1, Math.round((float) height * maxDimension / width))}
+                : new int[]{Math.max(1, Math.round((float) width * maxDimension / height)), maxDimension};
+    }
+
+    // EXIF orientations 2-8 as the transform that draws the stored pixels upright
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) return image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = orientation >= 5;
+        AffineTransform t = new AffineTransform();
+        switch (orientation) {
+            case 2 -> { t.translate(w, 0); t.scale(-1, 1); }
+            case 3 -> { t.translate(w, h); t.rotate(Math.PI); }
+            case 4 -> { t.translate(0, h); t.scale(1, -1); }
+            case 5 -> { t.rotate(-Math.PI / 2); t.scale(-1, 1); }
+            case 6 -> { t.translate(h, 0); t.rotate(Math.PI / 2); }
+            case 7 -> { t.translate(h, w); t.rotate(Math.PI / 2); t.scale(-1, 1); }
+            default -> { t.translate(0, w); t.rotate(-Math.PI / 2); }
+        }
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(image, t, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    // --- metadata
+
+    /**
+     * Copies a JPEG segment by segment, leaving out comments and every APPn segment except JFIF, ICC colour
+     * profiles and Adobe's colour-transform flag, and stopping at the end-of-image marker. Returns the EXIF
+     * orientation found on the way (1 when there is none).
+     */
+    static int stripJpeg(Path source, Path target) throws IOException {
+        int orientation = 1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)));
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            if (in.readUnsignedShort() != 0xFFD8) throw new IllegalArgumentException("File content is not a JPEG image");
+            out.write(0xFF);
+            out.write(0xD8);
+            boolean scan = false; // inside entropy-coded data, where 0xFF 0x00 and restart markers are data
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    if (scan) return orientation; // truncated image data: the decoder decides what to make of it
+                    throw new IllegalArgumentException("File content is not a JPEG image");
+                }
+                if (b != 0xFF) {
+                    if (!scan) throw new IllegalArgumentException("File content is not a JPEG image");
+                    out.write(b);
+                    continue;
+                }
+                int marker = in.read();
+                while (marker == 0xFF) marker = in.read(); // fill bytes
+                if (marker < 0) throw new EOFException();
+                if (marker == 0xD9) {
+                    out.write(0xFF);
+                    out.write(0xD9);
+                    return orientation; // anything after it (thumbnails, motion clips) is dropped
+                }
+                if (marker == 0x00 || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                    out.write(0xFF);
+                    out.write(marker);
+                    continue;
+                }
+                int length = in.readUnsignedShort();
+                if (length < 2) throw new IllegalArgumentException("File content is not a JPEG image");
+                byte[] data = in.readNBytes(length - 2);
+                if (data.length != length - 2) throw new EOFException();
+                if (marker == 0xE1 && startsWith(data, EXIF_HEADER)) orientation = exifOrientation(data);
+                if (keepJpegSegment(marker, data)) {
+                    out.write(0xFF);
+                    out.write(marker);
+                    out.write(length >> 8);
+                    out.write(length);
+                    out.write(data);
+                }
+                scan = marker == 0xDA;
+            }
+        } catch (EOFException ex) {
+            throw new IllegalArgumentException("File content is not a JPEG image");
+        }
+    }
+
+    /** Copies a PNG chunk by chunk up to IEND, leaving out the text, time and EXIF chunks. */
+    static void stripPng(Path source, Path target) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+            if (!Arrays.equals(in.readNBytes(PNG_SIGNATURE.length), PNG_SIGNATURE)) {
+                throw new IllegalArgumentException("File content is not a PNG image");
+            }
+            out.write(PNG_SIGNATURE);
+            while (true) {
+                int length = in.readInt();
+                if (length < 0) throw new IllegalArgumentException("File content is not a PNG image");
+                byte[] type = in.readNBytes(4);
+                if (type.length != 4) throw new EOFException();
+                String name = new String(type, StandardCharsets.ISO_8859_1);
+                if (PNG_METADATA.contains(name)) {
+                    in.skipNBytes(length + 4L); // data and CRC
+                } else {
+                    out.writeInt(length);
+                    out.write(type);
+                    copy(in, out, length + 4L);
+                }
+                if (name.equals("IEND")) return;
+            }
+        } catch (EOFException ex) {
+            throw new IllegalArgumentException("File content is not a PNG image");
+        }
+    }
+
+    private static boolean keepJpegSegment(int marker, byte[] data) {
+        if (marker == 0xFE) return false; // comment
+        if (marker < 0xE0 || marker > 0xEF) return true; // tables, frame and scan headers
+        return marker == 0xE0 || marker == 0xEE || (marker == 0xE2 && startsWith(data, ICC_HEADER));
+    }
+
+    // IFD0 of the TIFF structure after "Exif\0\0", tag 0x0112
+    private static int exifOrientation(byte[] data) {
+        int tiff = EXIF_HEADER.length;
+        if (data.length < tiff + 8) return 1;
+        boolean little = data[tiff] == 'I' && data[tiff + 1] == 'I';
+        long ifd = tiff + u32(data, tiff + 4, little);
+        if (ifd + 2 > data.length) return 1;
+        int entries = u16(data, (int) ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > data.length) break;
+            if (u16(data, entry, little) == 0x0112) {
+                int value = u16(data, entry + 8, little);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static int u16(byte[] b, int at, boolean little) {
+        int b0 = b[at] & 0xFF;
+        int b1 = b[at + 1] & 0xFF;
+        return little ? b0 | b1 << 8 : b0 << 8 | b1;
+    }
+
+    private static long u32(byte[] b, int at, boolean little) {
+        long hi = u16(b, little ? at + 2 : at, little);
+        long lo = u16(b, little ? at : at + 2, little);
+        return hi << 16 | lo;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length && Arrays.equals(data, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static void copy(InputStream in, OutputStream out, long count) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (count > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (n < 0) throw new EOFException();
+            out.write(buffer, 0, n);
+            count -= n;
+        }
+    }
+}
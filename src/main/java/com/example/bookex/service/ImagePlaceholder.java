@@ -0,0 +1,75 @@
+package com.example.bookex.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Low-quality image placeholder: the picture shrunk to {@link #SIZE}px on its long side and written as a
+ * small JPEG data URI (about a kilobyte, mostly JPEG tables), which pages inline as the background of a
+ * thumbnail until the real image arrives. Made from the image {@link ImageIngest} has decoded anyway;
+ * transparency is flattened onto white. A busy picture can encode past the {@link #MAX_LENGTH} the column
+ * holds, so it is written at lower qualities until it fits, and left out if it never does.
+ */
+final class ImagePlaceholder {
+
+    static final int SIZE = 16;
+    static final String PREFIX = "data:image/jpeg;base64,";
+    static final int MAX_LENGTH = 1024; // book_images.placeholder
+
+    private static final float[] QUALITIES = {0.5f, 0.3f, 0.1f};
+
+    private ImagePlaceholder() {
+    }
+
+    /** The placeholder data URI for a decoded image, or null if it does not fit in {@link #MAX_LENGTH}. */
+    static String of(BufferedImage image) throws IOException {
+        BufferedImage small = shrink(image);
+        for (float quality : QUALITIES) {
+            String uri = encode(small, quality);
+            if (uri.length() <= MAX_LENGTH) return uri;
+        }
+        return null;
+    }
+
+    // stepwise halving on the way down (see ImageResizer#scale), then onto white for JPEG
+    private static BufferedImage shrink(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int width = w >= h ? SIZE : Math.max(1, Math.round((float) SIZE * w / h));
+        int height = w >= h ? Math.max(1, Math.round((float) SIZE * h / w)) : SIZE;
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage small = w > width || h > height ? ImageResizer.scale(image, width, height, alpha) : image;
+        BufferedImage out = new BufferedImage(small.getWidth(), small.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.drawImage(small, 0, 0, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static String encode(BufferedImage image, float quality) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return PREFIX + Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+}
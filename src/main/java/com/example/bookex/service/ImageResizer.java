@@ -0,0 +1,128 @@
+package com.example.bookex.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Downscales an uploaded JPEG or PNG with the JDK only (ImageIO + Java2D). Each variant keeps the source
+ * format and is written as {@code <name>-w<width>.<ext>} next to the source, under a temp name first.
+ */
+final class ImageResizer {
+
+    record Variant(int width, int height, Path file) {
+    }
+
+    private ImageResizer() {
+    }
+
+    /**
+     * One variant per requested width narrower than the image, or a single re-encoded copy at the image's
+     * own width when it is narrower than all of them. Dimensions are read from the header and checked against
+     * {@code maxPixels} before any pixel is decoded.
+     */
+    static List<Variant> resize(Path source, int[] widths, long maxPixels, float jpegQuality) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) throw new IOException("Not a readable image: " + source.getFileName());
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image too large to resize: " + width + "x" + height);
+                }
+                boolean png = "png".equalsIgnoreCase(reader.getFormatName());
+                BufferedImage image = reader.read(0);
+
+                List<Variant> out = new ArrayList<>();
+                for (int target : targetWidths(widths, width)) {
+                    int targetHeight = Math.max(1, Math.round((float) height * target / width));
+                    if (targetHeight > Short.MAX_VALUE) throw new IOException("Image too tall: " + width + "x" + height);
+                    Path file = source.resolveSibling(withWidth(source.getFileName().toString(), target));
+                    write(scale(image, target, targetHeight, png && image.getColorModel().hasAlpha()), png, jpegQuality, file);
+                    out.add(new Variant(target, targetHeight, file));
+                }
+                return out;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** {@code 2-abc.jpg} → {@code 2-abc-w320.jpg}; works on file names and public paths alike. */
+    static String withWidth(String name, int width) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name + "-w" + width : name.substring(0, dot) + "-w" + width + name.substring(dot);
+    }
+
+    private static int[] targetWidths(int[] widths, int width) {
+        int[] smaller = Arrays.stream(widths).filter(w -> w > 0 && w < width).distinct().sorted().toArray();
+        return smaller.length > 0 ? smaller : new int[]{width};
+    }
+
+    // halve with bilinear filtering until the target size: one big bilinear step would alias badly
+    static BufferedImage scale(BufferedImage source, int width, int height, boolean alpha) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = new BufferedImage(w, h, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    private static void write(BufferedImage image, boolean png, float jpegQuality, Path target) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), ".variant-", ".part");
+        try {
+            encode(image, png, jpegQuality, temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Writes the pixels only: no metadata is carried over from wherever the image came from. */
+    static void encode(BufferedImage image, boolean png, float jpegQuality, Path target) throws IOException {
+        Files.deleteIfExists(target); // the stream would leave a longer old file's tail in place
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(png ? "png" : "jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (!png) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
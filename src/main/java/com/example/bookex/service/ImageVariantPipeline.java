@@ -0,0 +1,184 @@
+package com.example.bookex.service;
+
+import com.example.bookex.entity.BookImage;
+import com.example.bookex.entity.BookImageId;
+import com.example.bookex.entity.BookImageVariant;
+import com.example.bookex.entity.BookImageVariantId;
+import com.example.bookex.event.ImageStoredEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the resized variants of each uploaded image (see {@link ImageResizer}) off the request thread.
+ * <p>
+ * A committed upload is queued on a small bounded pool; when the queue is full the image is simply left
+ * for the retry sweep, which also picks up failed runs (up to {@code max-attempts}) and images uploaded
+ * before variants existed. Images queued or being resized are exported as
+ * {@code bookex.images.variants.backlog}, finished runs as {@code bookex.images.variants} (tag {@code result}).
+ */
+@Slf4j
+@Component
+public class ImageVariantPipeline {
+
+    private final ImageVariantService imageVariantService;
+    private final UploadLayout layout;
+    private final int[] widths;
+    private final long maxPixels;
+    private final float jpegQuality;
+    private final short maxAttempts;
+    private final Duration retryAfter;
+    private final int sweepBatch;
+    private final Executor executor;
+    private final Set<BookImageId> inFlight = ConcurrentHashMap.newKeySet();
+    private final Counter succeeded;
+    private final Counter failed;
+    private final Counter reused;
+
+    @Autowired
+    public ImageVariantPipeline(ImageVariantService imageVariantService, MeterRegistry meterRegistry,
+                                UploadLayout layout,
+                                @Value("${app.images.variant-widths:160,320,640}") int[] widths,
+                                @Value("${app.images.max-pixels:40000000}") long maxPixels,
+                                @Value("${app.images.jpeg-quality:0.82}") float jpegQuality,
+                                @Value("${app.images.max-attempts:5}") short maxAttempts,
+                                @Value("${app.images.retry-after:2m}") Duration retryAfter,
+                                @Value("${app.images.threads:2}") int threads,
+                                @Value("${app.images.queue-capacity:500}") int queueCapacity) {
+        this(imageVariantService, meterRegistry, layout, widths, maxPixels, jpegQuality,
+                maxAttempts, retryAfter, queueCapacity, workerPool(threads, queueCapacity));
+    }
+
+    ImageVariantPipeline(ImageVariantService imageVariantService, MeterRegistry meterRegistry, UploadLayout layout,
+                         int[] widths, long maxPixels, float jpegQuality, short maxAttempts, Duration retryAfter,
+                         int sweepBatch, Executor executor) {
+        this.imageVariantService = imageVariantService;
+        this.layout = layout;
+        this.widths = widths;
+        this.maxPixels = maxPixels;
+        this.jpegQuality = jpegQuality;
+        this.maxAttempts = maxAttempts;
+        this.retryAfter = retryAfter;
+        this.sweepBatch = sweepBatch;
+        this.executor = executor;
+        Gauge.builder("bookex.images.variants.backlog", inFlight, Set::size).register(meterRegistry);
+        this.succeeded = meterRegistry.counter("bookex.images.variants", "result", "ok");
+        this.failed = meterRegistry.counter("bookex.images.variants", "result", "failed");
+        this.reused = meterRegistry.counter("bookex.images.variants", "result", "reused");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onImageStored(ImageStoredEvent event) {
+        submit(new BookImageId(event.listingId(), event.imageNo()), event.path());
+    }
+
+    // young uploads are skipped: they are normally still queued from their own event
+    @Scheduled(fixedDelayString = "${app.images.retry-ms:300000}", initialDelayString = "${app.images.retry-initial-delay-ms:60000}")
+    public void retryBacklog() {
+        List<BookImage> backlog = imageVariantService.backlog(maxAttempts, Instant.now().minus(retryAfter), sweepBatch);
+        backlog.forEach(image -> submit(image.getId(), image.getPath()));
+        if (!backlog.isEmpty()) log.info("Image variants: {} images re-queued by the retry sweep", backlog.size());
+    }
+
+    public int backlog() {
+        return inFlight.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor instanceof ExecutorService pool) pool.shutdownNow();
+    }
+
+    private void submit(BookImageId id, String path) {
+        if (!inFlight.add(id)) return;
+        try {
+            executor.execute(() -> process(id, path));
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(id); // queue full; the sweep comes back for it
+            log.debug("Image variants queue full, {} left for the retry sweep", path);
+        }
+    }
+
+    private void process(BookImageId id, String path) {
+        // variant files of a content-addressed blob are shared with other images; its collector removes them
+        boolean shared = UploadLayout.isBlob(path);
+        List<Path> written = List.of();
+        try {
+            if (shared && imageVariantService.reuseVariants(id.getListingId(), id.getImageNo(), path)) {
+                reused.increment();
+                return;
+            }
+            List<ImageResizer.Variant> made = ImageResizer.resize(resolve(path), widths, maxPixels, jpegQuality);
+            written = made.stream().map(ImageResizer.Variant::file).toList();
+            List<BookImageVariant> rows = made.stream().map(v -> BookImageVariant.builder()
+                    .id(new BookImageVariantId(id.getListingId(), id.getImageNo(), (short) v.width()))
+                    .height((short) v.height())
+                    .path(ImageResizer.withWidth(path, v.width()))
+                    .build()).toList();
+            if (!imageVariantService.recordVariants(id.getListingId(), id.getImageNo(), rows) && !shared) {
+                written.forEach(ImageVariantPipeline::deleteQuietly); // the image was deleted meanwhile
+            }
+            succeeded.increment();
+        } catch (Exception ex) {
+            if (!shared) written.forEach(ImageVariantPipeline::deleteQuietly);
+            failed.increment();
+            log.warn("Image variants for {} failed: {}", path, ex.getMessage());
+            try {
+                imageVariantService.recordFailure(id.getListingId(), id.getImageNo());
+            } catch (RuntimeException e) {
+                log.warn("Could not record variant failure for {}: {}", path, e.getMessage());
+            }
+        } finally {
+            inFlight.remove(id);
+        }
+    }
+
+    private Path resolve(String publicPath) throws IOException {
+        Path file = layout.resolve(publicPath);
+        if (file == null) throw new IOException("Not an upload path: " + publicPath);
+        return file;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // left for the next cleanup
+        }
+    }
+
+    private static ExecutorService workerPool(int threads, int queueCapacity) {
+        AtomicInteger n = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "image-variants-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.entity.BookImage;
+import com.example.bookex.entity.BookImageVariant;
+import com.example.bookex.entity.BookImageVariantId;
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.repository.BookImageRepository;
+import com.example.bookex.repository.BookImageVariantRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class ImageVariantService {
+
+    private final BookImageRepository bookImageRepository;
+    private final BookImageVariantRepository bookImageVariantRepository;
+    private final ApplicationEventPublisher events;
+
+    // CSS width of the card thumbnail; the fallback src is the narrowest variant at least this wide
+    @Value("${app.images.card-width:160}")
+    private int cardWidth;
+
+    /**
+     * Fills the cover of each card from the first processed image of its listing, in one query for the page,
+     * and its placeholder in a second one. Cards whose images have no variants yet get only the placeholder
+     * of their first image rather than pulling the original.
+     */
+    public void attachCovers(List<ListingCardDto> cards) {
+        if (cards.isEmpty()) return;
+        List<Long> listingIds = cards.stream().map(ListingCardDto::getId).toList();
+        Map<Long, List<BookImageVariant>> byListing = bookImageVariantRepository.findCovers(listingIds).stream()
+                .collect(Collectors.groupingBy(v -> v.getId().getListingId()));
+        Map<Long, List<BookImage>> placeholders = bookImageRepository.findCoverPlaceholders(listingIds).stream()
+                .collect(Collectors.groupingBy(i -> i.getId().getListingId()));
+        for (ListingCardDto card : cards) {
+            List<BookImageVariant> variants = byListing.get(card.getId());
+            card.setCoverPlaceholder(placeholder(placeholders.get(card.getId()),
+                    variants == null ? null : variants.get(0).getId().getImageNo()));
+            if (variants == null) continue;
+            BookImageVariant fit = variants.stream().filter(v -> v.getId().getWidth() >= cardWidth).findFirst()
+                    .orElse(variants.get(variants.size() - 1));
+            card.setCoverUrl(fit.getPath());
+            card.setCoverWidth((int) fit.getId().getWidth());
+            card.setCoverHeight((int) fit.getHeight());
+            card.setCoverSrcset(variants.stream().map(v -> v.getPath() + " " + v.getId().getWidth() + "w")
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    /** Stores the variants and marks the image processed; false when the image is gone meanwhile. */
+    @Transactional
+    public boolean recordVariants(Long listingId, short imageNo, List<BookImageVariant> variants) {
+        if (bookImageRepository.markVariantsReady(listingId, imageNo) == 0) return false;
+        bookImageVariantRepository.saveAll(variants);
+        events.publishEvent(new ListingChangedEvent(listingId)); // cached browse pages pick up the cover
+        return true;
+    }
+
+    /**
+     * Copies the variant rows of another image stored in the same file, if any has them; the files are
+     * shared already. False when there is nothing to copy and the image needs resizing.
+     */
+    @Transactional
+    public boolean reuseVariants(Long listingId, short imageNo, String path) {
+        List<BookImageVariant> existing = bookImageVariantRepository.findReadyByImagePath(path);
+        if (existing.isEmpty()) return false;
+        BookImageVariantId source = existing.get(0).getId();
+        List<BookImageVariant> copies = existing.stream()
+                .filter(v -> v.getId().getListingId().equals(source.getListingId()) && v.getId().getImageNo() == source.getImageNo())
+                .map(v -> BookImageVariant.builder()
+                        .id(new BookImageVariantId(listingId, imageNo, v.getId().getWidth()))
+                        .height(v.getHeight())
+                        .path(v.getPath())
+                        .build())
+                .toList();
+        recordVariants(listingId, imageNo, copies);
+        return true;
+    }
+
+    @Transactional
+    public void recordFailure(Long listingId, short imageNo) {
+        bookImageRepository.countVariantFailure(listingId, imageNo);
+    }
+
+    public List<BookImage> backlog(short maxAttempts, Instant uploadedBefore, int limit) {
+        return bookImageRepository.findVariantBacklog(maxAttempts, uploadedBefore, PageRequest.of(0, limit));
+    }
+
+    // the placeholder of the image the cover shows, else of the first image (ordered by image number)
+    private static String placeholder(List<BookImage> images, Short coverImageNo) {
+        if (images == null) return null;
+        return images.stream().filter(i -> coverImageNo == null || i.getId().getImageNo() == coverImageNo)
+                .findFirst().map(BookImage::getPlaceholder).orElse(null);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.dto.listing.ListingCardRow;
+import com.example.bookex.dto.listing.ListingPageDto;
+import com.example.bookex.repository.BookListingRepository;
+import com.example.bookex.util.DtoMapper;
+import com.example.bookex.util.ServiceGuards;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class ListingSearchService {
+
+    private static final int MAX_QUERY_LENGTH = 200;
+
+    private final BookListingRepository bookListingRepository;
+    private final ImageVariantService imageVariantService;
+
+    @Value("${app.browse.page-size:24}")
+    private int pageSize;
+
+    // Ranked results cannot be keyset-paged; cap the offset instead
+    @Value("${app.search.max-pages:20}")
+    private int maxPages;
+
+    /** Ranked page of available listings matching {@code query}; cursors are page numbers. */
+    public ListingPageDto search(String query, int page) {
+        String q = ServiceGuards.trimOrNull(query);
+        if (q == null) throw new IllegalArgumentException("Search query required");
+        if (q.length() > MAX_QUERY_LENGTH) throw new IllegalArgumentException("Search query too long");
+        if (page < 0 || page >= maxPages) throw new IllegalArgumentException("Page out of range");
+
+        List<Long> ids = bookListingRepository.searchIds(q, pageSize + 1, page * pageSize);
+        boolean more = ids.size() > pageSize;
+        if (more) ids = ids.subList(0, pageSize);
+
+        // second statement loads the cards; keep the rank order from the search
+        Map<Long, ListingCardRow> byId = ids.isEmpty() ? Map.of()
+                : bookListingRepository.findCardsByIds(ids).stream()
+                .collect(Collectors.toMap(ListingCardRow::getId, Function.identity()));
+        List<ListingCardRow> rows = ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+        List<ListingCardDto> items = DtoMapper.toCardRowList(rows);
+        imageVariantService.attachCovers(items);
+
+        return ListingPageDto.builder()
+                .items(items)
+                .sort("relevance")
+                .nextCursor(more && page + 1 < maxPages ? String.valueOf(page + 1) : null)
+                .prevCursor(page > 0 ? String.valueOf(page - 1) : null)
+                .build();
+    }
+}
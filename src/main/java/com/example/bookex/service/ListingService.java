@@ -1,22 +1,39 @@
 package com.example.bookex.service;
 
+import com.example.bookex.config.CacheConfig;
+import com.example.bookex.dto.listing.BrowseSort;
 import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.dto.listing.ListingCardRow;
 import com.example.bookex.dto.listing.ListingDetailDto;
 import com.example.bookex.dto.listing.ListingFormDto;
+import com.example.bookex.dto.listing.ListingPageDto;
+import com.example.bookex.dto.listing.ListingVersionRow;
 import com.example.bookex.entity.Book;
 import com.example.bookex.entity.BookImage;
 import com.example.bookex.entity.BookListing;
 import com.example.bookex.entity.User;
+import com.example.bookex.entity.enums.Condition;
+import com.example.bookex.event.ListingChangedEvent;
 import com.example.bookex.exceptions.NotFoundException;
 import com.example.bookex.repository.BookImageRepository;
 import com.example.bookex.repository.BookListingRepository;
+import com.example.bookex.repository.ImageBlobRepository;
 import com.example.bookex.util.DtoMapper;
+import com.example.bookex.util.KeysetCursor;
 import com.example.bookex.util.ServiceGuards;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -26,6 +43,12 @@ public class ListingService {
     private final BookService bookService;
     private final BookListingRepository bookListingRepository;
     private final BookImageRepository bookImageRepository;
+    private final ImageBlobRepository imageBlobRepository;
+    private final ApplicationEventPublisher events;
+    private final ImageVariantService imageVariantService;
+
+    @Value("${app.browse.page-size:24}")
+    private int pageSize;
 
     @Transactional
     public ListingDetailDto createListing(User owner, ListingFormDto form) {
@@ -38,6 +61,7 @@ public class ListingService {
                 .notes(form.getNotes())
                 .build();
         bookListing = bookListingRepository.save(bookListing);
+        events.publishEvent(new ListingChangedEvent(bookListing.getId()));
         return toDetail(bookListing);
     }
 
@@ -53,29 +77,141 @@ public class ListingService {
         bookListing.setAvailable(form.isAvailable());
         bookListing.setNotes(form.getNotes());
         bookListingRepository.save(bookListing);
+        events.publishEvent(new ListingChangedEvent(listingId));
         return toDetail(bookListing);
     }
 
     @Transactional
     public void deleteListing(User owner, Long listingId) {
-        BookListing bookListing = bookListingRepository.findById(listingId)
+        // locked first, like uploads do, so this cannot deadlock with one on the blob rows
+        BookListing bookListing = bookListingRepository.findByIdForUpdate(listingId)
                 .orElseThrow(() -> new NotFoundException("Listing not found"));
         ServiceGuards.requireOwner(owner, bookListing);
+        imageBlobRepository.releaseForListing(listingId, Instant.now()); // images go with the listing by cascade
         bookListingRepository.delete(bookListing);
+        events.publishEvent(new ListingChangedEvent(listingId));
     }
 
+    @Cacheable(cacheNames = CacheConfig.LISTING_DETAIL, key = "#listingId")
     public ListingDetailDto getListingDetail(Long listingId) {
-        BookListing bookListing = bookListingRepository.findById(listingId)
+        BookListing bookListing = bookListingRepository.findDetailById(listingId)
                 .orElseThrow(() -> new NotFoundException("Listing not found"));
-        return toDetail(bookListing);
+        return DtoMapper.toDetailDto(bookListing, bookListing.getImages());
     }
 
-    public List<ListingCardDto> browsePublic() {
-        return DtoMapper.toCardList(bookListingRepository.findByAvailableTrue());
+    /** Change markers for a listing detail page; empty when the listing does not exist. */
+    public Optional<ListingVersionRow> getListingVersion(Long listingId) {
+        return bookListingRepository.findVersion(listingId);
+    }
+
+    /**
+     * One keyset page of available listings. {@code after} continues forward from a page's
+     * {@code nextCursor}, {@code before} goes back from its {@code prevCursor}; with neither the first page is returned.
+     * Pages are cached per (sort, cursor) and dropped whenever any listing changes.
+     */
+    @Cacheable(cacheNames = CacheConfig.BROWSE, key = "#sort.name() + '|' + #after + '|' + #before")
+    public ListingPageDto browsePublic(BrowseSort sort, String after, String before) {
+        KeysetCursor afterCursor = KeysetCursor.decode(after);
+        KeysetCursor beforeCursor = afterCursor == null ? KeysetCursor.decode(before) : null;
+        boolean backward = beforeCursor != null;
+        int limit = pageSize + 1; // one extra row tells whether another page exists
+
+        List<ListingCardRow> rows = switch (sort) {
+            case NEWEST -> backward
+                    ? bookListingRepository.findNewestBefore(beforeCursor.getCreatedAt(), beforeCursor.getId(), PageRequest.of(0, limit))
+                    : afterCursor == null
+                    ? bookListingRepository.findNewest(PageRequest.of(0, limit))
+                    : bookListingRepository.findNewestAfter(afterCursor.getCreatedAt(), afterCursor.getId(), PageRequest.of(0, limit));
+            case TITLE -> backward
+                    ? bookListingRepository.findByTitleBefore(titleOf(beforeCursor), bookIdOf(beforeCursor),
+                            beforeCursor.getId(), PageRequest.of(0, limit))
+                    : afterCursor == null
+                    ? bookListingRepository.findByTitle(PageRequest.of(0, limit))
+                    : bookListingRepository.findByTitleAfter(titleOf(afterCursor), bookIdOf(afterCursor),
+                            afterCursor.getId(), PageRequest.of(0, limit));
+            case CONDITION -> backward
+                    ? conditionBackward(beforeCursor, limit)
+                    : conditionForward(afterCursor, limit);
+        };
+
+        boolean more = rows.size() > pageSize;
+        List<ListingCardRow> page = new ArrayList<>(more ? rows.subList(0, pageSize) : rows);
+        if (backward) Collections.reverse(page);
+
+        boolean hasNext = backward || more;
+        boolean hasPrev = backward ? more : afterCursor != null;
+        List<ListingCardDto> items = DtoMapper.toCardRowList(page);
+        imageVariantService.attachCovers(items);
+        return ListingPageDto.builder()
+                .items(items)
+                .sort(sort.param())
+                .nextCursor(hasNext && !page.isEmpty() ? cursorOf(sort, page.get(page.size() - 1)) : null)
+                .prevCursor(hasPrev && !page.isEmpty() ? cursorOf(sort, page.get(0)) : null)
+                .build();
     }
 
     public List<ListingCardDto> myLibrary(User owner) {
-        return DtoMapper.toCardList(bookListingRepository.findByUser(owner));
+        return DtoMapper.toCardRowList(bookListingRepository.findCardsByOwnerId(owner.getId()));
+    }
+
+    // Condition buckets are walked in enum order (NEW first), each one an index range scan.
+    private List<ListingCardRow> conditionForward(KeysetCursor cursor, int limit) {
+        Condition[] buckets = Condition.values();
+        List<ListingCardRow> rows = new ArrayList<>(limit);
+        int next = 0;
+        if (cursor != null) {
+            Condition current = Condition.valueOf(requireKey(cursor));
+            rows.addAll(bookListingRepository.findByConditionAfter(current, cursor.getCreatedAt(), cursor.getId(),
+                    PageRequest.of(0, limit)));
+            next = current.ordinal() + 1;
+        }
+        for (int i = next; i < buckets.length && rows.size() < limit; i++) {
+            rows.addAll(bookListingRepository.findByConditionHead(buckets[i], PageRequest.of(0, limit - rows.size())));
+        }
+        return rows;
+    }
+
+    private List<ListingCardRow> conditionBackward(KeysetCursor cursor, int limit) {
+        Condition[] buckets = Condition.values();
+        Condition current = Condition.valueOf(requireKey(cursor));
+        List<ListingCardRow> rows = new ArrayList<>(bookListingRepository.findByConditionBefore(
+                current, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, limit)));
+        for (int i = current.ordinal() - 1; i >= 0 && rows.size() < limit; i--) {
+            rows.addAll(bookListingRepository.findByConditionTail(buckets[i], PageRequest.of(0, limit - rows.size())));
+        }
+        return rows;
+    }
+
+    private static String cursorOf(BrowseSort sort, ListingCardRow row) {
+        String key = switch (sort) {
+            case NEWEST -> null;
+            case TITLE -> row.getBookId() + ":" + row.getTitle(); // book id breaks ties between equal titles
+            case CONDITION -> row.getCondition().name();
+        };
+        return new KeysetCursor(row.getId(), row.getCreatedAt(), key).encode();
+    }
+
+    private static String requireKey(KeysetCursor cursor) {
+        if (cursor.getKey() == null) throw new IllegalArgumentException("Invalid cursor");
+        return cursor.getKey();
+    }
+
+    // title cursors carry "<book id>:<title>"
+    private static String titleOf(KeysetCursor cursor) {
+        String key = requireKey(cursor);
+        int colon = key.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Invalid cursor");
+        return key.substring(colon + 1);
+    }
+
+    private static long bookIdOf(KeysetCursor cursor) {
+        String key = requireKey(cursor);
+        int colon = key.indexOf(':');
+        try {
+            return Long.parseLong(key.substring(0, Math.max(colon, 0)));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
     }
 
     private ListingDetailDto toDetail(BookListing bookListing) {
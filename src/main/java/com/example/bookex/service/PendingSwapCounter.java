@@ -0,0 +1,46 @@
+package com.example.bookex.service;
+
+import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.event.SwapChangedEvent;
+import com.example.bookex.repository.SwapRequestRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Number of pending requests on each owner's listings, for the nav badge.
+ * <p>
+ * Counted with one COUNT on first read and kept in memory, so a page render costs a map lookup. A committed
+ * swap event drops the owner's entry and the next read counts again: a count taken while the change was
+ * committing can never have the change applied twice. Entries expire after {@code ttl} and are re-counted;
+ * that bounds drift from anything the events do not see (another node, a change made directly in the database).
+ */
+@Component
+public class PendingSwapCounter {
+
+    private final SwapRequestRepository swapRequestRepository;
+    private final Cache<Long, Integer> counts;
+
+    public PendingSwapCounter(SwapRequestRepository swapRequestRepository,
+                              @Value("${app.swaps.counter.max-size:100000}") long maxSize,
+                              @Value("${app.swaps.counter.ttl:10m}") Duration ttl) {
+        this.swapRequestRepository = swapRequestRepository;
+        this.counts = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+    }
+
+    public int pendingFor(Long ownerId) {
+        return counts.get(ownerId, id -> (int) swapRequestRepository.countPendingForOwner(id));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSwapChanged(SwapChangedEvent event) {
+        boolean wasPending = event.previous() == SwapStatus.PENDING;
+        if (wasPending == (event.status() == SwapStatus.PENDING)) return;
+        // waits for a count being taken for this owner, then drops it
+        counts.invalidate(event.ownerId());
+    }
+}
@@ -1,21 +1,28 @@
 package com.example.bookex.service;
 
+import com.example.bookex.config.CacheConfig;
 import com.example.bookex.dto.rating.RatingAverageDto;
+import com.example.bookex.dto.rating.RatingAverageRow;
 import com.example.bookex.entity.Book;
 import com.example.bookex.entity.Rating;
 import com.example.bookex.entity.RatingId;
 import com.example.bookex.entity.User;
+import com.example.bookex.event.RatingChangedEvent;
 import com.example.bookex.exceptions.NotFoundException;
+import com.example.bookex.repository.BookRatingStatsRepository;
 import com.example.bookex.repository.BookRepository;
 import com.example.bookex.repository.RatingRepository;
 import com.example.bookex.util.DtoMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +31,8 @@ public class RatingService {
 
     private final RatingRepository ratingRepository;
     private final BookRepository bookRepository;
+    private final BookRatingStatsRepository statsRepository;
+    private final ApplicationEventPublisher events;
 
     @Transactional
     public RatingAverageDto rate(User rater, Long bookId, int difficulty, int emotion, int enjoyment) {
@@ -35,7 +44,8 @@ public class RatingService {
         validate1to5(emotion, "emotion");
         validate1to5(enjoyment, "enjoyment");
 
-        Rating rating = ratingRepository.findByUserAndBook(rater, book)
+        Optional<Rating> previous = ratingRepository.findByUserAndBookForUpdate(rater, book);
+        Rating rating = previous
                 .orElseGet(() -> Rating.builder()
                         .id(new RatingId(rater.getId(), book.getId()))
                         .user(rater)
@@ -43,29 +53,52 @@ public class RatingService {
                         .build()
                 );
 
+        // stats move by the delta: a new rating adds one, a re-rating only shifts the sums
+        int count = previous.isPresent() ? 0 : 1;
+        int dDifficulty = difficulty - previous.map(Rating::getDifficulty).orElse((short) 0);
+        int dEmotion = emotion - previous.map(Rating::getEmotion).orElse((short) 0);
+        int dEnjoyment = enjoyment - previous.map(Rating::getEnjoyment).orElse((short) 0);
+
         rating.setDifficulty((short) difficulty);
         rating.setEmotion((short) emotion);
         rating.setEnjoyment((short) enjoyment);
         ratingRepository.save(rating);
+        statsRepository.applyDelta(book.getId(), count, dDifficulty, dEmotion, dEnjoyment);
+        events.publishEvent(new RatingChangedEvent(book.getId()));
 
-        return computeAverages(book);
+        return computeAverages(book.getId());
     }
 
+    @Cacheable(cacheNames = CacheConfig.RATING_AVERAGES, key = "#bookId")
     public RatingAverageDto getAverages(Long bookId) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new NotFoundException("Book not found"));
-        return computeAverages(book);
+        return computeAverages(bookId);
     }
 
-    private RatingAverageDto computeAverages(Book book) {
-        List<Rating> list = ratingRepository.findByBook(book);
-        if (list.isEmpty()) return DtoMapper.toAvgDto(0, 0, 0, 0);
-
-        double d = list.stream().mapToInt(Rating::getDifficulty).average().orElse(0);
-        double e = list.stream().mapToInt(Rating::getEmotion).average().orElse(0);
-        double j = list.stream().mapToInt(Rating::getEnjoyment).average().orElse(0);
+    /**
+     * Re-derives book_rating_stats from the ratings table, repairing drift from paths that bypass rate()
+     * (e.g. ratings removed by a user delete cascade). Only books found to have drifted are locked, one stats
+     * row at a time, and re-counted once their in-flight raters have committed; returns how many.
+     */
+    @Transactional
+    public int rebuildStats() {
+        List<Long> drifted = statsRepository.findDrifted();
+        for (Long bookId : drifted) {
+            statsRepository.insertEmpty(bookId);
+            statsRepository.lockRow(bookId);
+            statsRepository.recount(bookId);
+        }
+        return drifted.size();
+    }
 
-        return DtoMapper.toAvgDto(round1(d), round1(e), round1(j), list.size());
+    // one primary-key lookup regardless of how many ratings the book has
+    private RatingAverageDto computeAverages(Long bookId) {
+        RatingAverageRow row = statsRepository.findTotals(bookId)
+                .orElseThrow(() -> new NotFoundException("Book not found"));
+        int count = row.getCount();
+        if (count == 0) return DtoMapper.toAvgDto(0, 0, 0, 0);
+        return DtoMapper.toAvgDto(round1((double) row.getDifficultySum() / count),
+                round1((double) row.getEmotionSum() / count),
+                round1((double) row.getEnjoymentSum() / count), count);
     }
 
     private static double round1(double v) {
@@ -0,0 +1,26 @@
+package com.example.bookex.service;
+
+import com.example.bookex.config.CacheConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/** Periodic full rebuild of book_rating_stats; rate() keeps it current in between. */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RatingStatsJob {
+
+    private final RatingService ratingService;
+
+    // evicts after RatingService has committed, so cached averages never outlive the rebuilt totals
+    @Scheduled(cron = "${app.ratings.stats-rebuild-cron:0 30 3 * * *}")
+    @CacheEvict(cacheNames = CacheConfig.RATING_AVERAGES, allEntries = true)
+    public void rebuild() {
+        long started = System.nanoTime();
+        int changed = ratingService.rebuildStats();
+        log.info("Rating stats rebuilt: {} drifted books re-counted in {} ms", changed, (System.nanoTime() - started) / 1_000_000);
+    }
+}
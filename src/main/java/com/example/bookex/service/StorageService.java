@@ -3,74 +3,99 @@ package com.example.bookex.service;
 import com.example.bookex.dto.listing.BookImageDto;
 import com.example.bookex.entity.BookImage;
 import com.example.bookex.entity.BookImageId;
+import com.example.bookex.entity.BookImageVariant;
 import com.example.bookex.entity.BookListing;
+import com.example.bookex.entity.ImageBlob;
 import com.example.bookex.entity.User;
+import com.example.bookex.event.ImageStoredEvent;
+import com.example.bookex.event.ListingChangedEvent;
 import com.example.bookex.exceptions.NotFoundException;
 import com.example.bookex.repository.BookImageRepository;
+import com.example.bookex.repository.BookImageVariantRepository;
 import com.example.bookex.repository.BookListingRepository;
+import com.example.bookex.repository.ImageBlobRepository;
 import com.example.bookex.util.DtoMapper;
 import com.example.bookex.util.ServiceGuards;
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.io.FilenameUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.StringUtils;
+import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 public class StorageService {
 
+    // <sha>.<ext> and its variants <sha>-w<width>.<ext>
+    private static final Pattern BLOB_FILE = Pattern.compile("([0-9a-f]{64})(?:-w\\d+)?\\.\\w+");
+
     private final BookImageRepository bookImageRepository;
     private final BookListingRepository bookListingRepository;
+    private final BookImageVariantRepository bookImageVariantRepository;
+    private final ImageBlobRepository imageBlobRepository;
+    private final ApplicationEventPublisher events;
+    private final TransactionOperations tx;
+    private final UploadLayout layout;
+    private final UploadReceiver receiver;
 
     @Value("${app.max-images-per-listing:5}")
     private int maxImages;
 
-    @Value("${app.upload-dir:uploads}")
-    private String uploadDir;
-
-    @Transactional
+    /**
+     * Streams the upload into a temp file next to the upload tree, hashing and checking its magic bytes on the
+     * way, with no transaction open. Only then a short transaction locks the listing, picks a free slot,
+     * inserts the row and takes a reference on the content-addressed blob, moving the file into place unless
+     * the same bytes are already stored. A slow upload never holds a pooled connection.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public BookImageDto addImage(User owner, Long listingId, MultipartFile file) throws IOException {
-        BookListing bookListing = bookListingRepository.findById(listingId)
-                .orElseThrow(() -> new NotFoundException("Listing not found"));
-        ServiceGuards.requireOwner(owner, bookListing);
-
-        long currentCount = bookImageRepository.countByListing(bookListing);
-        if (currentCount >= maxImages) {
-            throw new IllegalStateException("Image limit reached (" + maxImages + ")");
+        UploadReceiver.Received upload = receiver.receive(file);
+        try {
+            return tx.execute(status -> storeImages(owner, listingId, List.of(upload))).get(0);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            upload.discard();
         }
+    }
 
-        validateImageFile(file);
-
-        short nextNo = nextAvailableImageNo(bookListing);
-
-
-        String ext = safeExt(file.getOriginalFilename());
-        String filename = nextNo + "-" + UUID.randomUUID() + "." + ext;
-        Path dir = Paths.get(uploadDir, "listings", bookListing.getId().toString());
-        Files.createDirectories(dir);
-        Path target = dir.resolve(filename).normalize();
-        if (!target.startsWith(dir)) throw new SecurityException("Invalid path");
-
-        Files.copy(file.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Several images at once, as {@link #addImage} does one: all files are received in parallel before the
+     * transaction, which then takes free slots from a single query and inserts every row in one batch. Either
+     * all of them are stored or none is.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BookImageDto> addImages(User owner, Long listingId, List<MultipartFile> files) throws IOException {
+        List<MultipartFile> chosen = files == null ? List.of() : files.stream().filter(f -> !f.isEmpty()).toList();
+        if (chosen.isEmpty()) throw new IllegalArgumentException("File is empty");
+        if (chosen.size() > maxImages) throw new IllegalStateException("Image limit reached (" + maxImages + ")");
 
-        BookImageId id = new BookImageId(bookListing.getId(), nextNo);
-        String publicPath = "/uploads/listings/" + bookListing.getId() + "/" + filename;
-        BookImage img = BookImage.builder()
-                .id(id)
-                .listing(bookListing)
-                .path(publicPath)
-                .build();
-        bookImageRepository.save(img);
-        return DtoMapper.toImageDto(img);
+        List<UploadReceiver.Received> uploads = receiver.receiveAll(chosen);
+        try {
+            return tx.execute(status -> storeImages(owner, listingId, uploads));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            uploads.forEach(UploadReceiver.Received::discard);
+        }
     }
 
     @Transactional
@@ -83,9 +108,19 @@ public class StorageService {
         BookImage img = bookImageRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Image not found"));
 
-        removeFileIfExists(img.getPath());
+        if (UploadLayout.isBlob(img.getPath())) {
+            // shared file: drop our reference, the collector deletes the blob once nobody holds one
+            imageBlobRepository.release(img.getSha256(), Instant.now());
+        } else {
+            for (BookImageVariant variant : bookImageVariantRepository.findByImage(listingId, imageNo)) {
+                removeFileIfExists(variant.getPath());
+            }
+            removeFileIfExists(img.getPath());
+        }
 
+        bookImageVariantRepository.deleteByImage(listingId, imageNo);
         bookImageRepository.delete(img);
+        events.publishEvent(new ListingChangedEvent(listingId));
     }
 
     public List<BookImageDto> listImages(Long listingId) {
@@ -94,46 +129,234 @@ public class StorageService {
         return DtoMapper.toImageDtoList(bookImageRepository.findByListingOrderByIdImageNoAsc(bookListing));
     }
 
+    /**
+     * Deletes up to {@code limit} blobs that nobody referenced since {@code cutoff}, files first, while their
+     * rows are locked; returns the blobs removed. An upload of the same bytes arriving meanwhile waits on the
+     * row and writes the file again.
+     */
+    @Transactional
+    public List<ImageBlob> collectBlobs(Instant cutoff, int limit) throws IOException {
+        List<ImageBlob> blobs = imageBlobRepository.lockCollectable(cutoff, limit);
+        if (blobs.isEmpty()) return blobs;
+        for (ImageBlob blob : blobs) {
+            // the blob and its resized variants (<sha>-w<width>.<ext>)
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(layout.blobDir(blob.getSha256()), blob.getSha256() + "*")) {
+                for (Path file : files) Files.deleteIfExists(file);
+            } catch (NoSuchFileException ignored) {
+                // nothing stored yet
+            }
+        }
+        imageBlobRepository.deleteUnreferenced(blobs.stream().map(ImageBlob::getSha256).toList());
+        return blobs;
+    }
+
+    /**
+     * Deletes those of {@code files} (under the upload tree and last modified before {@code cutoff}) that no
+     * image or variant points at, and returns the bytes freed. A blob file without a blob row is not deleted
+     * here but adopted as an unreferenced blob, so {@link #collectBlobs} removes it under the row lock that
+     * keeps it safe from a concurrent upload of the same bytes.
+     */
+    @Transactional
+    public long reclaimOrphans(List<Path> files, Instant cutoff) throws IOException {
+        Map<String, Path> byPath = new LinkedHashMap<>();
+        Map<String, Path> blobFiles = new LinkedHashMap<>();
+        for (Path file : files) {
+            Matcher blob = BLOB_FILE.matcher(file.getFileName().toString());
+            if (blob.matches() && layout.blobDir(blob.group(1)).equals(file.getParent())) {
+                blobFiles.putIfAbsent(blob.group(1), file);
+            } else {
+                byPath.put(layout.publicPath(file), file); // includes blobs left in the flat layout after moving
+            }
+        }
+
+        if (!blobFiles.isEmpty()) {
+            imageBlobRepository.findExisting(blobFiles.keySet()).forEach(blobFiles::remove);
+            for (Map.Entry<String, Path> orphan : blobFiles.entrySet()) {
+                Path file = orphan.getValue();
+                if (!Files.exists(file)) continue; // collected meanwhile
+                imageBlobRepository.adopt(orphan.getKey(), layout.publicPath(file), Files.size(file),
+                        Files.getLastModifiedTime(file).toInstant());
+            }
+        }
+
+        long freed = 0;
+        if (!byPath.isEmpty()) {
+            bookImageRepository.findReferencedPaths(byPath.keySet()).forEach(byPath::remove);
+            for (Path file : byPath.values()) {
+                try {
+                    // re-checked: a variant rewritten since the walk is live again
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (!attrs.lastModifiedTime().toInstant().isBefore(cutoff)) continue;
+                    Files.delete(file);
+                    freed += attrs.size();
+                } catch (NoSuchFileException ignored) {
+                    // already gone
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Moves up to {@code limit} blobs still stored flat in {@code blobs/} (sha256 after {@code after}) into their
+     * shard directory, with their variants, and points blob, image and variant rows at the new paths. The blob
+     * rows stay locked until commit, so the collector skips them and an upload of the same bytes waits.
+     * The old names remain as hard links for pages rendered before the switch; the upload reconciler deletes
+     * them once its grace period has passed. Returns the blobs handled, in order.
+     */
+    @Transactional
+    public List<String> relocateFlatBlobs(String after, int limit) throws IOException {
+        List<ImageBlob> blobs = imageBlobRepository.lockFlat(after, limit);
+        for (ImageBlob blob : blobs) {
+            String sha = blob.getSha256();
+            Path shard = layout.blobDir(sha);
+            Path flatDir = layout.root().resolve("blobs");
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(flatDir, sha + "*")) {
+                for (Path file : files) {
+                    if (Files.isRegularFile(file)) linkIntoShard(file, shard.resolve(file.getFileName()));
+                }
+            }
+            String from = UploadLayout.BLOB_PREFIX + sha;
+            String to = layout.publicPath(shard.resolve(sha));
+            bookImageRepository.rebaseBlob(sha, from, to);
+            bookImageVariantRepository.rebaseBlob(sha, from, to);
+            imageBlobRepository.relocate(sha, to + blob.getPath().substring(from.length()));
+        }
+        return blobs.stream().map(ImageBlob::getSha256).toList();
+    }
+
+    /**
+     * Moves the files of up to {@code limit} listings (ids after {@code after}) still in the flat
+     * {@code listings/<id>/} directories into their shard under {@code by-listing/}, rewriting image and
+     * variant paths; old names are left for the reconciler as with {@link #relocateFlatBlobs}. Returns the
+     * listings handled, in order.
+     */
+    @Transactional
+    public List<Long> relocateFlatListings(long after, int limit) throws IOException {
+        List<Long> listingIds = bookImageRepository.findFlatListingIds(after, limit);
+        for (Long listingId : listingIds) {
+            String from = UploadLayout.flatListingDir(listingId);
+            String to = UploadLayout.listingDir(listingId);
+            Path source = layout.resolve(from);
+            Path target = layout.resolve(to);
+            if (Files.isDirectory(source)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(source)) {
+                    for (Path file : files) {
+                        if (Files.isRegularFile(file)) linkIntoShard(file, target.resolve(file.getFileName()));
+                    }
+                }
+            }
+            bookImageRepository.rebaseListing(listingId, from, to);
+            bookImageVariantRepository.rebaseListing(listingId, from, to);
+        }
+        return listingIds;
+    }
+
+    /** Absolute root of the upload tree; files under it are served as {@code /uploads/<relative path>}. */
+    public Path uploadRoot() {
+        return layout.root();
+    }
+
     // --- helpers
 
-    private static void validateImageFile(MultipartFile file) {
-        if (file == null || file.isEmpty()) throw new IllegalArgumentException("File is empty");
-        if (file.getSize() > 5L * 1024 * 1024) {
-            throw new IllegalArgumentException("File too large (max 5MB)");
+    private List<BookImageDto> storeImages(User owner, Long listingId, List<UploadReceiver.Received> uploads) {
+        BookListing bookListing = bookListingRepository.findByIdForUpdate(listingId)
+                .orElseThrow(() -> new NotFoundException("Listing not found"));
+        ServiceGuards.requireOwner(owner, bookListing);
+
+        List<Short> slots = freeImageNos(bookImageRepository.findImageNos(listingId));
+        if (slots.size() < uploads.size()) {
+            throw new IllegalStateException("Image limit reached (" + maxImages + ")");
+        }
+
+        List<BookImage> images = new ArrayList<>(uploads.size());
+        for (int i = 0; i < uploads.size(); i++) {
+            UploadReceiver.Received upload = uploads.get(i);
+            // same bytes, same file and URL, whichever listing they were uploaded to
+            images.add(BookImage.builder()
+                    .id(new BookImageId(listingId, slots.get(i)))
+                    .listing(bookListing)
+                    .path(UploadLayout.blobPath(upload.sha256(), upload.ext()))
+                    .sha256(upload.sha256())
+                    .placeholder(upload.placeholder())
+                    .originalSizeBytes(upload.originalSize())
+                    .sizeBytes(upload.size())
+                    .build());
         }
-        String contentType = file.getContentType();
-        if (contentType == null || !(contentType.equalsIgnoreCase("image/jpeg")
-                || contentType.equalsIgnoreCase("image/png"))) {
-            throw new IllegalArgumentException("Only JPEG/PNG allowed");
+        bookImageRepository.saveAllAndFlush(images); // one batch; constraint failures surface before any blob is touched
+
+        // blob rows stay locked until commit: the collector cannot delete a file under us, and a concurrent
+        // upload of the same bytes waits and then finds the file in place. Taken in hash order, so two
+        // batches sharing files cannot deadlock.
+        Instant now = Instant.now();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < uploads.size(); i++) order.add(i);
+        order.sort(Comparator.comparing(i -> uploads.get(i).sha256()));
+        for (int i : order) {
+            UploadReceiver.Received upload = uploads.get(i);
+            String publicPath = images.get(i).getPath();
+            imageBlobRepository.acquire(upload.sha256(), publicPath, upload.size(), now);
+            try {
+                Path target = layout.resolve(publicPath);
+                if (!Files.exists(target)) moveIntoShard(upload.file(), target);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
         }
-        String name = file.getOriginalFilename();
-        String extension = FilenameUtils.getExtension(name);
-        if (extension == null) throw new IllegalArgumentException("Invalid file extension");
-        String lower = extension.toLowerCase();
-        if (!(lower.equals("jpg") || lower.equals("jpeg") || lower.equals("png"))) {
-            throw new IllegalArgumentException("Only JPG/PNG extensions allowed");
+
+        events.publishEvent(new ListingChangedEvent(listingId));
+        for (BookImage img : images) {
+            events.publishEvent(new ImageStoredEvent(listingId, img.getId().getImageNo(), img.getPath()));
         }
+        return DtoMapper.toImageDtoList(images);
     }
 
-    private short nextAvailableImageNo(BookListing listing) {
-        List<Short> existing = bookImageRepository.findByListingOrderByIdImageNoAsc(listing)
-                .stream().map(i -> i.getId().getImageNo()).sorted().toList();
+    private List<Short> freeImageNos(List<Short> taken) {
+        List<Short> free = new ArrayList<>();
         for (short i = 1; i <= (short) maxImages; i++) {
-            if (!existing.contains(i)) return i;
+            if (!taken.contains(i)) free.add(i);
         }
-        throw new IllegalStateException("No available image slot");
+        return free;
     }
 
-    private String safeExt(String filename) {
-        String extension = FilenameUtils.getExtension(filename);
-        if (!StringUtils.hasText(extension)) throw new IllegalArgumentException("File must have extension");
-        return extension.toLowerCase();
+    private void removeFileIfExists(String publicPath) throws IOException {
+        Path target = layout.resolve(publicPath);
+        if (target != null) Files.deleteIfExists(target);
     }
 
-    private void removeFileIfExists(String publicPath) throws IOException {
-        // publicPath like /uploads/...
-        String relative = publicPath.startsWith("/") ? publicPath.substring(1) : publicPath;
-        Path target = Paths.get(relative).normalize();
-        if (Files.exists(target)) Files.delete(target);
+    // same file system as tmp/; a shard directory emptied and removed by the reconciler just now is recreated
+    private static void moveIntoShard(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException ex) {
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // a second name for the same bytes, so the old URL keeps working until the reconciler removes it;
+    // copied where the file system has no hard links. Both names are touched: the reconciler's grace
+    // period then runs from the move, not from the original upload.
+    private static void linkIntoShard(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (!Files.exists(target)) { // else moved by an earlier, interrupted run: same name, same bytes
+            try {
+                Files.createLink(target, source);
+            } catch (NoSuchFileException ex) {
+                throw ex;
+            } catch (UnsupportedOperationException | FileSystemException ex) {
+                Path temp = Files.createTempFile(target.getParent(), ".move-", ".part");
+                try {
+                    Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+        FileTime now = FileTime.from(Instant.now());
+        Files.setLastModifiedTime(source, now);
+        Files.setLastModifiedTime(target, now);
     }
 }
@@ -0,0 +1,19 @@
+package com.example.bookex.service;
+
+/**
+ * A closed chain of swaps: {@code userIds[i]} receives listing {@code listingIds[i]}, which belongs to
+ * {@code userIds[i + 1]} (wrapping around), so everyone gives one book and gets one they wished for.
+ */
+public record SwapCycle(long[] userIds, long[] listingIds) {
+
+    public int length() { return userIds.length; }
+
+    public boolean involves(long userId) {
+        return indexOf(userId) >= 0;
+    }
+
+    public int indexOf(long userId) {
+        for (int i = 0; i < userIds.length; i++) if (userIds[i] == userId) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.bookex.service;
+
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.event.WishlistChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps suggested swap cycles (see {@link SwapCycle}) for every user, off the request path.
+ * <p>
+ * A change to a user's wishlist or listings can only create or break cycles through that user, so a
+ * refresh reloads the graph (one streamed query) but searches only from the users touched since the last
+ * run, dropping their old cycles and keeping everyone else's. A periodic full search reconciles anything
+ * the events missed. Reads return the last published snapshot.
+ */
+@Slf4j
+@Component
+public class SwapCycleMatcher {
+
+    private final WishlistService wishlistService;
+    private final ForkJoinPool pool;
+    private final int maxLength;
+    private final int perUser;
+    private final int maxCycles;
+
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirtyListings = ConcurrentHashMap.newKeySet();
+    private volatile boolean fullSearchDue = true;
+    private volatile Snapshot snapshot = new Snapshot(SwapGraph.empty(), Map.of());
+
+    public SwapCycleMatcher(WishlistService wishlistService,
+                            @Value("${app.matching.max-cycle-length:4}") int maxLength,
+                            @Value("${app.matching.cycles-per-user:10}") int perUser,
+                            @Value("${app.matching.max-cycles:1000000}") int maxCycles,
+                            @Value("${app.matching.parallelism:0}") int parallelism) {
+        this.wishlistService = wishlistService;
+        this.maxLength = maxLength;
+        this.perUser = perUser;
+        this.maxCycles = maxCycles;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    public List<SwapCycle> cyclesFor(Long userId) {
+        return snapshot.byUser().getOrDefault(userId, List.of());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWishlistChanged(WishlistChangedEvent event) {
+        dirtyUsers.add(event.userId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onListingChanged(ListingChangedEvent event) {
+        dirtyListings.add(event.listingId());
+    }
+
+    @Scheduled(cron = "${app.matching.full-cron:0 0 4 * * *}")
+    public void scheduleFullSearch() {
+        fullSearchDue = true;
+    }
+
+    // single scheduler thread, so runs never overlap
+    @Scheduled(fixedDelayString = "${app.matching.refresh-ms:60000}", initialDelayString = "${app.matching.initial-delay-ms:30000}")
+    public void refresh() {
+        boolean full = fullSearchDue;
+        if (!full && dirtyUsers.isEmpty() && dirtyListings.isEmpty()) return;
+        long started = System.nanoTime();
+        Set<Long> users = drain(dirtyUsers);
+        Set<Long> listings = drain(dirtyListings);
+        fullSearchDue = false;
+
+        Snapshot previous = snapshot;
+        SwapGraph graph = wishlistService.loadGraph();
+        for (Long listingId : listings) { // owner from either graph: the listing may be gone from one of them
+            long owner = graph.ownerOfListing(listingId);
+            if (owner < 0) owner = previous.graph().ownerOfListing(listingId);
+            if (owner >= 0) users.add(owner);
+        }
+
+        BitSet seeds = new BitSet(graph.vertices());
+        if (full) {
+            seeds.set(0, graph.vertices());
+        } else {
+            for (Long userId : users) {
+                int v = graph.vertexOf(userId);
+                if (v >= 0) seeds.set(v);
+            }
+        }
+        List<SwapCycle> found = graph.findCycles(seeds, maxLength, perUser, maxCycles, pool);
+
+        Map<Long, List<SwapCycle>> byUser = new HashMap<>();
+        if (!full) {
+            previous.byUser().forEach((userId, cycles) -> {
+                for (SwapCycle cycle : cycles) {
+                    if (!touches(cycle, users)) byUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(cycle);
+                }
+            });
+        }
+        for (SwapCycle cycle : found) {
+            for (long userId : cycle.userIds()) {
+                List<SwapCycle> mine = byUser.computeIfAbsent(userId, id -> new ArrayList<>());
+                if (mine.size() < perUser) mine.add(cycle);
+            }
+        }
+        snapshot = new Snapshot(graph, byUser);
+        log.info("Swap cycles {}: {} users, {} edges, {} seeds, {} cycles found in {} ms",
+                full ? "rebuilt" : "refreshed", graph.vertices(), graph.edges(), seeds.cardinality(), found.size(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static boolean touches(SwapCycle cycle, Set<Long> users) {
+        for (long userId : cycle.userIds()) if (users.contains(userId)) return true;
+        return false;
+    }
+
+    private static Set<Long> drain(Set<Long> dirty) {
+        Set<Long> out = new HashSet<>();
+        for (Long id : dirty) if (dirty.remove(id)) out.add(id);
+        return out;
+    }
+
+    private record Snapshot(SwapGraph graph, Map<Long, List<SwapCycle>> byUser) {
+    }
+}
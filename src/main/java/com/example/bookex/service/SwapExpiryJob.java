@@ -0,0 +1,65 @@
+package com.example.bookex.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.BiFunction;
+
+/**
+ * Ages out swaps nobody acts on: pending requests become EXPIRED, accepted swaps that stalled are cancelled
+ * and their books relisted. Works in short transactions of {@code batch-size} rows, so it never holds many
+ * row locks and skips rows users are changing; a run stops after {@code max-batches} and resumes next time.
+ * Rows per run are recorded as {@code bookex.swaps.expiry.rows} (tag {@code kind}).
+ */
+@Slf4j
+@Component
+public class SwapExpiryJob {
+
+    private final SwapService swapService;
+    private final MeterRegistry meterRegistry;
+    private final Duration pendingAfter;
+    private final Duration acceptedAfter;
+    private final int batchSize;
+    private final int maxBatches;
+
+    public SwapExpiryJob(SwapService swapService, MeterRegistry meterRegistry,
+                         @Value("${app.swaps.expiry.pending-after:14d}") Duration pendingAfter,
+                         @Value("${app.swaps.expiry.accepted-after:30d}") Duration acceptedAfter,
+                         @Value("${app.swaps.expiry.batch-size:500}") int batchSize,
+                         @Value("${app.swaps.expiry.max-batches:100}") int maxBatches) {
+        this.swapService = swapService;
+        this.meterRegistry = meterRegistry;
+        this.pendingAfter = pendingAfter;
+        this.acceptedAfter = acceptedAfter;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    @Scheduled(cron = "${app.swaps.expiry.cron:0 */15 * * * *}")
+    public void run() {
+        Instant now = Instant.now();
+        long started = System.nanoTime();
+        int expired = drain("pending", now.minus(pendingAfter), swapService::expirePending);
+        int cancelled = drain("accepted", now.minus(acceptedAfter), swapService::cancelStalledAccepted);
+        if (expired + cancelled > 0) {
+            log.info("Swap expiry: {} pending expired, {} stalled accepted cancelled in {} ms",
+                    expired, cancelled, (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    private int drain(String kind, Instant cutoff, BiFunction<Instant, Integer, Integer> batch) {
+        int total = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            int rows = batch.apply(cutoff, batchSize);
+            total += rows;
+            if (rows < batchSize) break; // caught up (or the rest is locked by users right now)
+        }
+        meterRegistry.summary("bookex.swaps.expiry.rows", "kind", kind).record(total);
+        return total;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.bookex.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable "wants from" graph between users: an edge u → v means u wishes for a book that v has listed,
+ * labelled with one such listing.
+ * <p>
+ * Users are mapped to dense vertex numbers (position in the sorted {@code userIds}) and edges are kept in
+ * compressed sparse rows: the targets of v are {@code targets[offsets[v], offsets[v + 1])}, sorted, with one
+ * edge per (u, v) pair. Everything is primitive arrays, so a few million edges stay a few tens of MB.
+ */
+public final class SwapGraph {
+
+    private static final int SEEDS_PER_TASK = 256;
+
+    private final long[] userIds;  // vertex -> user id, ascending
+    private final int[] offsets;   // vertex -> first edge, length vertices + 1
+    private final int[] targets;   // edge -> target vertex
+    private final long[] listings; // edge -> listing id
+    private final long[] listingKeys;  // listing ids on any edge, ascending
+    private final int[] listingOwners; // parallel to listingKeys: owner vertex
+
+    private SwapGraph(long[] userIds, int[] offsets, int[] targets, long[] listings,
+                      long[] listingKeys, int[] listingOwners) {
+        this.userIds = userIds;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.listings = listings;
+        this.listingKeys = listingKeys;
+        this.listingOwners = listingOwners;
+    }
+
+    public static SwapGraph empty() {
+        return new Builder().build();
+    }
+
+    public int vertices() { return userIds.length; }
+    public int edges() { return targets.length; }
+
+    /** Vertex of the user, or -1 when the user has no edge. */
+    public int vertexOf(long userId) {
+        int v = Arrays.binarySearch(userIds, userId);
+        return v < 0 ? -1 : v;
+    }
+
+    public long userId(int vertex) { return userIds[vertex]; }
+
+    /** User id of the owner of a listing that labels some edge, or -1. */
+    public long ownerOfListing(long listingId) {
+        int i = Arrays.binarySearch(listingKeys, listingId);
+        return i < 0 ? -1 : userIds[listingOwners[i]];
+    }
+
+    /** Listing labelling u → v, or -1 when there is no such edge. */
+    public long listing(int u, int v) {
+        int e = Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v);
+        return e < 0 ? -1 : listings[e];
+    }
+
+    /**
+     * Simple cycles of 2..maxLength users through at least one seed vertex, each reported once: a cycle is
+     * found only from its smallest seed. Every seed contributes at most {@code perSeed} cycles and the search
+     * stops after {@code limit} in total. Seeds are split across the pool in fork-join tasks.
+     */
+    public List<SwapCycle> findCycles(BitSet seeds, int maxLength, int perSeed, int limit, ForkJoinPool pool) {
+        int[] starts = seeds.stream().filter(v -> v < vertices()).toArray();
+        if (starts.length == 0 || maxLength < 2) return List.of();
+        return pool.invoke(new Search(seeds, starts, 0, starts.length, maxLength, perSeed, limit, new AtomicInteger()));
+    }
+
+    private final class Search extends RecursiveTask<List<SwapCycle>> {
+        private final BitSet seeds;
+        private final int[] starts;
+        private final int from, to, maxLength, perSeed, limit;
+        private final AtomicInteger found;
+
+        Search(BitSet seeds, int[] starts, int from, int to, int maxLength, int perSeed, int limit, AtomicInteger found) {
+            this.seeds = seeds;
+            this.starts = starts;
+            this.from = from;
+            this.to = to;
+            this.maxLength = maxLength;
+            this.perSeed = perSeed;
+            this.limit = limit;
+            this.found = found;
+        }
+
+        @Override
+        protected List<SwapCycle> compute() {
+            if (to - from > SEEDS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                Search left = new Search(seeds, starts, from, mid, maxLength, perSeed, limit, found);
+                left.fork();
+                List<SwapCycle> out = new ArrayList<>(new Search(seeds, starts, mid, to, maxLength, perSeed, limit, found).compute());
+                out.addAll(left.join());
+                return out;
+            }
+            List<SwapCycle> out = new ArrayList<>();
+            int[] path = new int[maxLength];
+            int[] cursor = new int[maxLength];
+            for (int i = from; i < to && found.get() < limit; i++) {
+                search(starts[i], path, cursor, out);
+            }
+            return out;
+        }
+
+        // iterative DFS from s; path[0..depth] is the current walk, cursor[d] the next edge to try at depth d
+        private void search(int s, int[] path, int[] cursor, List<SwapCycle> out) {
+            int fromSeed = 0;
+            int depth = 0;
+            path[0] = s;
+            cursor[0] = offsets[s];
+            while (depth >= 0) {
+                int u = path[depth];
+                if (cursor[depth] == offsets[u + 1] || fromSeed >= perSeed) {
+                    depth--;
+                    continue;
+                }
+                int v = targets[cursor[depth]++];
+                if (v == s) {
+                    if (depth >= 1) {
+                        out.add(cycle(path, depth + 1));
+                        fromSeed++;
+                        if (found.incrementAndGet() >= limit) return;
+                    }
+                } else if (depth + 1 < maxLength && allowed(s, v) && !onPath(path, depth, v)) {
+                    path[++depth] = v;
+                    cursor[depth] = offsets[v];
+                }
+            }
+        }
+
+        // a seed smaller than s would already have reported every cycle through it
+        private boolean allowed(int s, int v) {
+            return !(v < s && seeds.get(v));
+        }
+
+        private boolean onPath(int[] path, int depth, int v) {
+            for (int d = 1; d <= depth; d++) if (path[d] == v) return true;
+            return false;
+        }
+
+        private SwapCycle cycle(int[] path, int length) {
+            long[] users = new long[length];
+            long[] wanted = new long[length];
+            for (int i = 0; i < length; i++) {
+                users[i] = userIds[path[i]];
+                wanted[i] = listing(path[i], path[(i + 1) % length]);
+            }
+            return new SwapCycle(users, wanted);
+        }
+    }
+
+    /** Collects (wisher, owner, listing) triples, then packs them into the arrays above. */
+    public static final class Builder {
+        private long[] wishers = new long[1024];
+        private long[] owners = new long[1024];
+        private long[] edgeListings = new long[1024];
+        private int size;
+
+        public Builder add(long wisherId, long ownerId, long listingId) {
+            if (wisherId == ownerId) return this;
+            if (size == wishers.length) {
+                wishers = Arrays.copyOf(wishers, size * 2);
+                owners = Arrays.copyOf(owners, size * 2);
+                edgeListings = Arrays.copyOf(edgeListings, size * 2);
+            }
+            wishers[size] = wisherId;
+            owners[size] = ownerId;
+            edgeListings[size] = listingId;
+            size++;
+            return this;
+        }
+
+        public SwapGraph build() {
+            long[] ids = new long[size * 2];
+            System.arraycopy(wishers, 0, ids, 0, size);
+            System.arraycopy(owners, 0, ids, size, size);
+            Arrays.sort(ids);
+            int n = 0;
+            for (int i = 0; i < ids.length; i++) if (i == 0 || ids[i] != ids[i - 1]) ids[n++] = ids[i];
+            long[] userIds = Arrays.copyOf(ids, n);
+
+            // bucket edges by source (counting sort), then sort each bucket by target with the edge index packed in
+            int[] offsets = new int[n + 1];
+            int[] src = new int[size];
+            int[] dst = new int[size];
+            for (int e = 0; e < size; e++) {
+                src[e] = Arrays.binarySearch(userIds, wishers[e]);
+                dst[e] = Arrays.binarySearch(userIds, owners[e]);
+                offsets[src[e] + 1]++;
+            }
+            for (int v = 0; v < n; v++) offsets[v + 1] += offsets[v];
+            long[] packed = new long[size]; // target << 32 | edge
+            int[] fill = Arrays.copyOf(offsets, n);
+            for (int e = 0; e < size; e++) packed[fill[src[e]]++] = ((long) dst[e] << 32) | e;
+
+            int[] targets = new int[size];
+            long[] listings = new long[size];
+            int[] newOffsets = new int[n + 1];
+            int m = 0;
+            for (int v = 0; v < n; v++) {
+                Arrays.sort(packed, offsets[v], offsets[v + 1]);
+                int last = -1;
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    int target = (int) (packed[i] >>> 32);
+                    if (target == last) continue; // keep one listing per (wisher, owner) pair
+                    last = target;
+                    targets[m] = target;
+                    listings[m++] = edgeListings[(int) packed[i]];
+                }
+                newOffsets[v + 1] = m;
+            }
+
+            targets = Arrays.copyOf(targets, m);
+            listings = Arrays.copyOf(listings, m);
+
+            long[] listingKeys = Arrays.copyOf(listings, m); // a listing labels one edge per wisher, all to its owner
+            Arrays.sort(listingKeys);
+            int k = 0;
+            for (int i = 0; i < m; i++) if (i == 0 || listingKeys[i] != listingKeys[i - 1]) listingKeys[k++] = listingKeys[i];
+            listingKeys = Arrays.copyOf(listingKeys, k);
+            int[] listingOwners = new int[k];
+            for (int e = 0; e < m; e++) listingOwners[Arrays.binarySearch(listingKeys, listings[e])] = targets[e];
+            return new SwapGraph(userIds, newOffsets, targets, listings, listingKeys, listingOwners);
+        }
+    }
+}
@@ -1,20 +1,40 @@
 package com.example.bookex.service;
 
+import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.dto.swap.SwapCycleDto;
+import com.example.bookex.dto.swap.SwapLegDto;
+import com.example.bookex.dto.swap.SwapPageDto;
 import com.example.bookex.dto.swap.SwapViewDto;
 import com.example.bookex.entity.BookListing;
 import com.example.bookex.entity.SwapRequest;
 import com.example.bookex.entity.User;
 import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.event.SwapChangedEvent;
+import com.example.bookex.exceptions.ConflictException;
 import com.example.bookex.exceptions.NotFoundException;
 import com.example.bookex.repository.BookListingRepository;
 import com.example.bookex.repository.SwapRequestRepository;
 import com.example.bookex.util.DtoMapper;
+import com.example.bookex.util.KeysetCursor;
 import com.example.bookex.util.ServiceGuards;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -23,7 +43,19 @@ public class SwapService {
 
     private final SwapRequestRepository swapRequestRepository;
     private final BookListingRepository bookListingRepository;
+    private final ApplicationEventPublisher events;
+    private final SwapCycleMatcher swapCycleMatcher;
 
+    @Value("${app.swaps.page-size:20}")
+    private int pageSize;
+
+    @Value("${app.matching.suggestions:5}")
+    private int maxSuggestions;
+
+    /**
+     * Creates a pending request, or returns the requester's existing pending one for this listing.
+     * The partial unique index decides, so concurrent double-submits cannot both insert.
+     */
     @Transactional
     public SwapViewDto createRequest(User requester, Long listingId, String message) {
         BookListing listing = bookListingRepository.findById(listingId)
@@ -32,62 +64,201 @@ public class SwapService {
         if (listing.getUser().getId().equals(requester.getId()))
             throw new IllegalArgumentException("Cannot request your own listing");
 
+        Instant now = now();
+        String text = ServiceGuards.trimOrNull(message);
+        Optional<Long> inserted = swapRequestRepository.insertPending(listingId, requester.getId(), text, now);
+        if (inserted.isEmpty()) {
+            // already pending: answer with that request as stored, not one rebuilt from this submit
+            return swapRequestRepository.findPendingId(listingId, requester.getId())
+                    .flatMap(swapRequestRepository::findWithPartiesById)
+                    .map(DtoMapper::toSwapDto)
+                    .orElseThrow(() -> new ConflictException("Request changed concurrently, try again"));
+        }
+
         SwapRequest swapRequest = SwapRequest.builder()
+                .id(inserted.get())
                 .listing(listing)
                 .user(requester)
-                .message(ServiceGuards.trimOrNull(message))
+                .message(text)
                 .status(SwapStatus.PENDING)
                 .build();
-        swapRequest = swapRequestRepository.save(swapRequest);
+        publish(swapRequest, null);
         return DtoMapper.toSwapDto(swapRequest);
     }
 
+    /**
+     * Accept or decline a pending request. Every change is a conditional UPDATE, so of two concurrent
+     * responses exactly one wins and the other gets a {@link ConflictException} (409).
+     * Accepting also takes the listing off the market and declines its other pending requests.
+     */
     @Transactional
     public SwapViewDto ownerRespond(User owner, Long swapId, boolean accept) {
-        SwapRequest swapRequest = swapRequestRepository.findById(swapId)
-                .orElseThrow(() -> new NotFoundException("Swap not found"));
-
+        SwapRequest swapRequest = loadSwap(swapId);
         ServiceGuards.requireOwner(owner, swapRequest);
         ServiceGuards.requireStatus(swapRequest, SwapStatus.PENDING);
 
-        swapRequest.setStatus(accept ? SwapStatus.ACCEPTED : SwapStatus.DECLINED);
-        swapRequestRepository.save(swapRequest);
+        Instant now = now();
+        if (!accept) {
+            transition(swapRequest, SwapStatus.PENDING, SwapStatus.DECLINED, now);
+            return DtoMapper.toSwapDto(swapRequest);
+        }
+
+        // Listing row first: concurrent accepts on the same listing serialize here, and the loser sees 0 rows
+        BookListing listing = swapRequest.getListing();
+        if (bookListingRepository.setAvailable(listing.getId(), false, now) == 0)
+            throw new ConflictException("Listing is no longer available");
+        transition(swapRequest, SwapStatus.PENDING, SwapStatus.ACCEPTED, now);
+        List<SwapChangedEvent> declined = swapRequestRepository.lockOtherPending(listing.getId(), swapRequest.getId());
+        if (!declined.isEmpty()) {
+            swapRequestRepository.declineAll(declined.stream().map(SwapChangedEvent::swapId).toList(), now);
+            declined.forEach(events::publishEvent);
+        }
+
+        listing.setAvailable(false);
+        events.publishEvent(new ListingChangedEvent(listing.getId()));
         return DtoMapper.toSwapDto(swapRequest);
     }
 
     @Transactional
     public SwapViewDto markCompleted(User actor, Long swapId) {
-        SwapRequest swapRequest = swapRequestRepository.findById(swapId)
-                .orElseThrow(() -> new NotFoundException("Swap not found"));
+        SwapRequest swapRequest = loadSwap(swapId);
         ServiceGuards.requireOwner(actor, swapRequest);
         ServiceGuards.requireStatus(swapRequest, SwapStatus.ACCEPTED);
 
-        swapRequest.setStatus(SwapStatus.COMPLETED);
-        swapRequestRepository.save(swapRequest);
+        transition(swapRequest, SwapStatus.ACCEPTED, SwapStatus.COMPLETED, now());
         return DtoMapper.toSwapDto(swapRequest);
     }
 
+    /** Cancels an accepted swap and puts the listing back on the market. */
     @Transactional
     public SwapViewDto markCancelled(User actor, Long swapId) {
-        SwapRequest swapRequest = swapRequestRepository.findById(swapId)
-                .orElseThrow(() -> new NotFoundException("Swap not found"));
+        SwapRequest swapRequest = loadSwap(swapId);
         ServiceGuards.requireOwner(actor, swapRequest);
         ServiceGuards.requireStatus(swapRequest, SwapStatus.ACCEPTED);
 
-        swapRequest.setStatus(SwapStatus.CANCELLED);
-        swapRequestRepository.save(swapRequest);
+        Instant now = now();
+        transition(swapRequest, SwapStatus.ACCEPTED, SwapStatus.CANCELLED, now);
+        BookListing listing = swapRequest.getListing();
+        if (bookListingRepository.setAvailable(listing.getId(), true, now) > 0) {
+            listing.setAvailable(true);
+            events.publishEvent(new ListingChangedEvent(listing.getId()));
+        }
         return DtoMapper.toSwapDto(swapRequest);
     }
 
-    public List<SwapViewDto> inbox(User owner) {
-        List<BookListing> ownerBookListing = bookListingRepository.findByUser(owner);
-        return swapRequestRepository.findByListingInOrderByCreatedAtDesc(ownerBookListing)
-                .stream().map(DtoMapper::toSwapDto).toList();
+    /** Expires up to {@code limit} requests still pending since before {@code cutoff}; returns how many. */
+    @Transactional
+    public int expirePending(Instant cutoff, int limit) {
+        List<SwapRequestRepository.ExpiredRow> rows = swapRequestRepository.expirePending(cutoff, now(), limit);
+        rows.forEach(row -> publish(row, SwapStatus.PENDING, SwapStatus.EXPIRED));
+        return rows.size();
+    }
+
+    /** Cancels up to {@code limit} accepted swaps untouched since {@code cutoff}, relisting their books. */
+    @Transactional
+    public int cancelStalledAccepted(Instant cutoff, int limit) {
+        List<SwapRequestRepository.ExpiredRow> rows = swapRequestRepository.cancelStalledAccepted(cutoff, now(), limit);
+        for (SwapRequestRepository.ExpiredRow row : rows) {
+            publish(row, SwapStatus.ACCEPTED, SwapStatus.CANCELLED);
+            if (row.isRelisted()) events.publishEvent(new ListingChangedEvent(row.getListingId()));
+        }
+        return rows.size();
+    }
+
+    /**
+     * One page of requests made on the owner's listings, newest first, optionally filtered by status.
+     * {@code after} is the {@code nextCursor} of the previous page.
+     */
+    public SwapPageDto inbox(User owner, SwapStatus status, String after) {
+        KeysetCursor cursor = KeysetCursor.decode(after);
+        PageRequest limit = PageRequest.of(0, pageSize + 1); // one extra row tells whether another page exists
+        List<SwapRequest> rows;
+        if (status == null) {
+            rows = cursor == null
+                    ? swapRequestRepository.findInbox(owner.getId(), limit)
+                    : swapRequestRepository.findInboxAfter(owner.getId(), cursor.getCreatedAt(), cursor.getId(), limit);
+        } else {
+            rows = cursor == null
+                    ? swapRequestRepository.findInboxByStatus(owner.getId(), status, limit)
+                    : swapRequestRepository.findInboxByStatusAfter(owner.getId(), status, cursor.getCreatedAt(),
+                            cursor.getId(), limit);
+        }
+
+        boolean more = rows.size() > pageSize;
+        List<SwapRequest> page = more ? rows.subList(0, pageSize) : rows;
+        SwapRequest last = page.isEmpty() ? null : page.get(page.size() - 1);
+        return SwapPageDto.builder()
+                .items(page.stream().map(DtoMapper::toSwapDto).toList())
+                .status(status == null ? null : status.name())
+                .nextCursor(more ? new KeysetCursor(last.getId(), last.getCreatedAt(), null).encode() : null)
+                .build();
+    }
+
+    /**
+     * Multi-party swaps the user could join, from the matcher's last snapshot. Listings are re-read in one
+     * statement so suggestions whose books have since gone off the market are dropped.
+     */
+    public List<SwapCycleDto> suggestedCycles(User user) {
+        List<SwapCycle> cycles = swapCycleMatcher.cyclesFor(user.getId());
+        if (cycles.isEmpty()) return List.of();
+        Set<Long> ids = new HashSet<>();
+        cycles.forEach(c -> Arrays.stream(c.listingIds()).forEach(ids::add));
+        Map<Long, ListingCardDto> cards = bookListingRepository.findCardsByIds(ids).stream()
+                .map(DtoMapper::toCardDto).filter(ListingCardDto::isAvailable)
+                .collect(Collectors.toMap(ListingCardDto::getId, c -> c));
+
+        List<SwapCycleDto> out = new ArrayList<>();
+        for (SwapCycle cycle : cycles) {
+            if (out.size() == maxSuggestions) break;
+            int me = cycle.indexOf(user.getId());
+            int n = cycle.length();
+            List<ListingCardDto> legs = new ArrayList<>(n);
+            for (int j = 0; j < n; j++) legs.add(cards.get(cycle.listingIds()[(me + j) % n]));
+            if (legs.contains(null)) continue;
+            List<SwapLegDto> withReceivers = new ArrayList<>(n);
+            for (int j = 0; j < n; j++) { // the receiver of each leg owns the listing of the leg before it
+                withReceivers.add(new SwapLegDto(legs.get(j), legs.get((j + n - 1) % n).getOwner()));
+            }
+            out.add(new SwapCycleDto(withReceivers));
+        }
+        return out;
     }
 
     public List<SwapViewDto> outbox(User requester) {
         return swapRequestRepository.findByUserOrderByCreatedAtDesc(requester)
                 .stream().map(DtoMapper::toSwapDto).toList();
     }
+
+    // for the push stream and pending counters (SwapStream, PendingSwapCounter), delivered after commit
+    private void publish(SwapRequest swapRequest, SwapStatus previous) {
+        BookListing listing = swapRequest.getListing();
+        events.publishEvent(new SwapChangedEvent(swapRequest.getId(), listing.getId(), listing.getUser().getId(),
+                swapRequest.getUser().getId(), previous, swapRequest.getStatus()));
+    }
+
+    private void publish(SwapRequestRepository.ExpiredRow row, SwapStatus previous, SwapStatus status) {
+        events.publishEvent(new SwapChangedEvent(row.getSwapId(), row.getListingId(), row.getOwnerId(),
+                row.getRequesterId(), previous, status));
+    }
+
+    // microsecond precision, as stored
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    private SwapRequest loadSwap(Long swapId) {
+        return swapRequestRepository.findWithPartiesById(swapId)
+                .orElseThrow(() -> new NotFoundException("Swap not found"));
+    }
+
+    // Compare-and-set on status; the repository clears the persistence context, so the loaded swap is
+    // detached afterwards and only updated in memory for the response
+    private void transition(SwapRequest swapRequest, SwapStatus from, SwapStatus to, Instant now) {
+        if (swapRequestRepository.transition(swapRequest.getId(), from, to, now) == 0)
+            throw new ConflictException("Swap was changed by someone else, reload and try again");
+        swapRequest.setStatus(to);
+        swapRequest.setUpdatedAt(now);
+        publish(swapRequest, from);
+    }
 }
 
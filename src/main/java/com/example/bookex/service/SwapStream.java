@@ -0,0 +1,258 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.swap.SwapDeltaDto;
+import com.example.bookex.event.SwapChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes committed swap changes to the open /swaps pages of both parties over Server-Sent Events.
+ * <p>
+ * Connections are async servlet requests ({@link SseEmitter}), so an idle one holds no thread. Each has a
+ * bounded queue drained by a small shared sender pool, one drain at a time per connection. A client that
+ * falls {@code buffer} events behind loses its backlog and gets a single {@code resync} event instead,
+ * telling the page to reload; publishers never block on a slow reader.
+ * <p>
+ * Servlet writes block while the client's socket is full, so they run on a small fixed writer pool and the
+ * sender waits at most {@code send-timeout} for each. A client that stalls that long is dropped at once and its
+ * stream closed when the stuck write returns. While every writer is stuck, further sends are refused and those
+ * clients dropped too (the page reconnects), so stalled clients never hold more than {@code writer-threads}
+ * threads between them.
+ */
+@Slf4j
+@Component
+public class SwapStream {
+
+    static final String SWAP_EVENT = "swap";
+    static final String RESYNC_EVENT = "resync";
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Executor sender;
+    private final ExecutorService writer;
+    private final int buffer;
+    private final int maxPerUser;
+    private final long timeoutMillis;
+    private final long sendTimeoutMillis;
+
+    @Autowired
+    public SwapStream(@Value("${app.swaps.stream.buffer:32}") int buffer,
+                      @Value("${app.swaps.stream.max-per-user:4}") int maxPerUser,
+                      @Value("${app.swaps.stream.timeout:30m}") Duration timeout,
+                      @Value("${app.swaps.stream.send-timeout:5s}") Duration sendTimeout,
+                      @Value("${app.swaps.stream.sender-threads:2}") int senderThreads,
+                      @Value("${app.swaps.stream.writer-threads:8}") int writerThreads) {
+        this(buffer, maxPerUser, timeout, sendTimeout, senderPool(senderThreads), writerPool(writerThreads));
+    }
+
+    SwapStream(int buffer, int maxPerUser, Duration timeout, Duration sendTimeout, Executor sender,
+               ExecutorService writer) {
+        this.buffer = buffer;
+        this.maxPerUser = maxPerUser;
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutMillis = sendTimeout.toMillis();
+        this.sender = sender;
+        this.writer = writer;
+    }
+
+    /** Opens a stream for the user; the oldest of their streams is closed beyond {@code max-per-user}. */
+    public SseEmitter subscribe(Long userId) {
+        return register(userId, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter register(Long userId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(userId, emitter, new ArrayBlockingQueue<>(buffer));
+        Set<Subscriber> mine = subscribers.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet());
+        mine.add(subscriber);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(ex -> remove(subscriber));
+        while (mine.size() > maxPerUser) {
+            mine.stream().min((a, b) -> Integer.compare(a.seq, b.seq))
+                    .filter(mine::remove).ifPresent(oldest -> oldest.emitter.complete());
+        }
+        return emitter;
+    }
+
+    public int connections() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSwapChanged(SwapChangedEvent event) {
+        String status = event.status().name();
+        publish(event.ownerId(), new SwapDeltaDto(event.swapId(), event.listingId(), status, "inbox"));
+        publish(event.requesterId(), new SwapDeltaDto(event.swapId(), event.listingId(), status, "outbox"));
+    }
+
+    // keeps proxies and NATs from dropping idle streams, and finds dead ones
+    @Scheduled(fixedDelayString = "${app.swaps.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        subscribers.values().forEach(mine -> mine.forEach(s -> {
+            s.heartbeat = true;
+            schedule(s);
+        }));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        subscribers.values().forEach(mine -> mine.forEach(s -> s.emitter.complete()));
+        subscribers.clear();
+        if (sender instanceof ExecutorService pool) pool.shutdownNow();
+        writer.shutdownNow();
+    }
+
+    private void publish(Long userId, SwapDeltaDto delta) {
+        Set<Subscriber> mine = userId == null ? null : subscribers.get(userId);
+        if (mine == null) return;
+        for (Subscriber s : mine) {
+            if (!s.queue.offer(delta)) {
+                s.overflowed.set(true); // reader is too slow: drop the backlog, the page reloads on resync
+                s.queue.clear();
+            }
+            schedule(s);
+        }
+    }
+
+    private void schedule(Subscriber s) {
+        if (!s.draining.compareAndSet(false, true)) return;
+        try {
+            sender.execute(() -> drain(s));
+        } catch (RejectedExecutionException ex) {
+            s.draining.set(false); // pool saturated; events stay queued for the next publish or heartbeat
+        }
+    }
+
+    private void drain(Subscriber s) {
+        try {
+            while (true) {
+                if (s.overflowed.getAndSet(false)) {
+                    send(s, SseEmitter.event().name(RESYNC_EVENT).data(""));
+                }
+                SwapDeltaDto delta = s.queue.poll();
+                if (delta == null) {
+                    if (!s.heartbeat) break;
+                    s.heartbeat = false;
+                    send(s, SseEmitter.event().comment("ping"));
+                    continue;
+                }
+                s.heartbeat = false;
+                send(s, SseEmitter.event().name(SWAP_EVENT).data(delta, MediaType.APPLICATION_JSON));
+            }
+        } catch (IOException | IllegalStateException | RejectedExecutionException ex) {
+            log.debug("Swap stream of user {} closed: {}", s.userId, ex.getMessage());
+            remove(s);
+            s.emitter.completeWithError(ex);
+            return;
+        } catch (TimeoutException ex) {
+            log.debug("Swap stream of user {} stalled for {} ms, dropped", s.userId, sendTimeoutMillis);
+            remove(s); // the stuck write closes the stream once it returns
+            return;
+        } finally {
+            s.draining.set(false);
+        }
+        if (!s.queue.isEmpty() || s.overflowed.get()) schedule(s); // published while we were finishing
+    }
+
+    private void send(Subscriber s, SseEmitter.SseEventBuilder event) throws IOException, TimeoutException {
+        // whichever of the write and the timeout settles second closes a dropped stream
+        AtomicBoolean settled = new AtomicBoolean();
+        Future<?> write = writer.submit(() -> {
+            try {
+                s.emitter.send(event);
+            } finally {
+                if (!settled.compareAndSet(false, true)) s.emitter.complete();
+            }
+            return null;
+        });
+        try {
+            write.get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException io) throw io;
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending", ex);
+        } catch (TimeoutException ex) {
+            if (!settled.compareAndSet(false, true)) s.emitter.complete(); // the write returned just now
+            throw ex;
+        }
+    }
+
+    private void remove(Subscriber s) {
+        subscribers.computeIfPresent(s.userId, (id, mine) -> {
+            mine.remove(s);
+            return mine.isEmpty() ? null : mine;
+        });
+    }
+
+    private static ExecutorService senderPool(int threads) {
+        AtomicInteger n = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(10_000), r -> {
+                    Thread t = new Thread(r, "swap-stream-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    // no queue: with every writer stuck on a stalled client, a send is refused rather than left waiting
+    static ThreadPoolExecutor writerPool(int threads) {
+        AtomicInteger n = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "swap-stream-writer-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static final class Subscriber {
+        private static final AtomicInteger SEQ = new AtomicInteger();
+
+        final int seq = SEQ.incrementAndGet();
+        final Long userId;
+        final SseEmitter emitter;
+        final Queue<SwapDeltaDto> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean overflowed = new AtomicBoolean();
+        volatile boolean heartbeat;
+
+        Subscriber(Long userId, SseEmitter emitter, Queue<SwapDeltaDto> queue) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.queue = queue;
+        }
+    }
+}
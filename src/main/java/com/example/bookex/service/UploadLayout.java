@@ -0,0 +1,88 @@
+package com.example.bookex.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Where uploaded files live, and the mapping between their public {@code /uploads/...} paths and the disk.
+ * Files are fanned out over two levels of 256 directories so no directory grows past a few thousand
+ * entries: blobs by the first bytes of their content hash ({@code blobs/ab/cd/<sha>.jpg}), and files kept per
+ * listing by a hash of its id ({@code by-listing/3f/a0/<id>/...}). The older flat layouts
+ * ({@code blobs/<sha>.jpg}, {@code listings/<id>/...}) are still resolved until {@link UploadLayoutMigrator}
+ * has moved everything.
+ */
+@Component
+public class UploadLayout {
+
+    public static final String PUBLIC_PREFIX = "/uploads/";
+    /** Content-addressed files; older images keep their per-listing paths. */
+    public static final String BLOB_PREFIX = PUBLIC_PREFIX + "blobs/";
+    public static final String LISTING_PREFIX = PUBLIC_PREFIX + "by-listing/";
+    static final String FLAT_LISTING_PREFIX = PUBLIC_PREFIX + "listings/";
+
+    private final Path root;
+
+    public UploadLayout(@Value("${app.upload-dir:uploads}") String uploadDir) {
+        this.root = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    /** Absolute root of the upload tree. */
+    public Path root() {
+        return root;
+    }
+
+    /** Uploads being received; never served. */
+    public Path tmpDir() {
+        return root.resolve("tmp");
+    }
+
+    public static String blobPath(String sha256, String ext) {
+        return BLOB_PREFIX + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + "." + ext;
+    }
+
+    /** Directory holding a blob and its variants. */
+    public Path blobDir(String sha256) {
+        return root.resolve("blobs").resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4));
+    }
+
+    /** Public directory prefix (with trailing slash) for files kept per listing. */
+    public static String listingDir(long listingId) {
+        int h = (int) mix(listingId);
+        return LISTING_PREFIX + String.format("%02x/%02x/", (h >>> 8) & 0xff, h & 0xff) + listingId + "/";
+    }
+
+    static String flatListingDir(long listingId) {
+        return FLAT_LISTING_PREFIX + listingId + "/";
+    }
+
+    public static boolean isBlob(String publicPath) {
+        return publicPath.startsWith(BLOB_PREFIX);
+    }
+
+    /** The file behind a public path, or null when the path does not point inside the upload tree. */
+    public Path resolve(String publicPath) {
+        if (publicPath == null || !publicPath.startsWith(PUBLIC_PREFIX)) return null;
+        String relative = publicPath.substring(PUBLIC_PREFIX.length());
+        if (relative.isEmpty() || relative.contains("\\") || relative.contains("\0")) return null;
+        Path file = root.resolve(relative).normalize();
+        return file.startsWith(root) && !file.equals(root) ? file : null;
+    }
+
+    public String publicPath(Path file) {
+        return PUBLIC_PREFIX + root.relativize(file.toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+
+    // murmur3 finalizer: consecutive ids land in unrelated directories
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.bookex.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Moves files still in the flat upload layout into the sharded one (see {@link UploadLayout}) while the site
+ * keeps running: first blobs in {@code blobs/}, then per-listing directories in {@code listings/}. Each tick
+ * handles one batch of {@code batch-size} in its own short transaction, so the work is throttled by
+ * {@code delay-ms} and resumes from its cursor after a failed batch. Once nothing flat is left it stops until
+ * the next restart. Units moved are recorded as {@code bookex.uploads.relocated} (tag {@code kind}).
+ */
+@Slf4j
+@Component
+public class UploadLayoutMigrator {
+
+    private final StorageService storageService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Counter blobsMoved;
+    private final Counter listingsMoved;
+
+    private String blobCursor = "";
+    private long listingCursor = 0;
+    private boolean blobsDone;
+    private boolean listingsDone;
+
+    public UploadLayoutMigrator(StorageService storageService, MeterRegistry meterRegistry,
+                                @Value("${app.uploads.migration.enabled:true}") boolean enabled,
+                                @Value("${app.uploads.migration.batch-size:200}") int batchSize) {
+        this.storageService = storageService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.blobsMoved = meterRegistry.counter("bookex.uploads.relocated", "kind", "blob");
+        this.listingsMoved = meterRegistry.counter("bookex.uploads.relocated", "kind", "listing");
+    }
+
+    @Scheduled(fixedDelayString = "${app.uploads.migration.delay-ms:2000}",
+            initialDelayString = "${app.uploads.migration.initial-delay-ms:30000}")
+    public synchronized void step() {
+        if (!enabled || done()) return;
+        try {
+            if (!blobsDone) {
+                List<String> moved = storageService.relocateFlatBlobs(blobCursor, batchSize);
+                if (!moved.isEmpty()) blobCursor = moved.get(moved.size() - 1);
+                blobsMoved.increment(moved.size());
+                blobsDone = moved.size() < batchSize;
+            } else {
+                List<Long> moved = storageService.relocateFlatListings(listingCursor, batchSize);
+                if (!moved.isEmpty()) listingCursor = moved.get(moved.size() - 1);
+                listingsMoved.increment(moved.size());
+                listingsDone = moved.size() < batchSize;
+            }
+            if (done()) {
+                log.info("Upload layout migration finished: {} blobs, {} listing directories moved",
+                        (long) blobsMoved.count(), (long) listingsMoved.count());
+            }
+        } catch (IOException | RuntimeException ex) {
+            // rolled back; the same batch is tried again next tick
+            log.warn("Upload layout migration batch failed after blob {} / listing {}: {}",
+                    blobCursor, listingCursor, ex.getMessage());
+        }
+    }
+
+    public synchronized boolean done() {
+        return blobsDone && listingsDone;
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.bookex.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Takes uploaded images off the request: checks the declared type, streams the bytes into a temp file under
+ * the upload tree checking the magic bytes on the way, and hands them to {@link ImageIngest}, which strips
+ * metadata, turns the image upright, caps its size ({@code app.images.max-dimension}) and re-encodes it
+ * ({@code app.images.ingest-quality}). What is stored is hashed, and the {@link ImagePlaceholder} pages show
+ * until the image loads is made from the decoded pixels. Sizes before and after are recorded as
+ * {@code bookex.uploads.bytes} (tag {@code stage}).
+ * <p>
+ * Several files of one request are received in parallel on a small pool ({@code app.images.upload-threads});
+ * when it is busy the request thread does the work itself, so a burst of uploads slows down instead of
+ * queueing without bound. Decoding takes one of as many permits, whichever thread it runs on, so at most
+ * that many decoded images (each bounded by the cap) are in memory at once. No transaction is involved;
+ * {@link StorageService} stores what comes back.
+ */
+@Slf4j
+@Component
+public class UploadReceiver {
+
+    static final long MAX_BYTES = 5L * 1024 * 1024;
+    private static final byte[] JPEG_MAGIC = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final UploadLayout layout;
+    private final int maxDimension;
+    private final long maxPixels;
+    private final float quality;
+    private final ExecutorService pool;
+    private final Semaphore decoding;
+    private final DistributionSummary originalBytes;
+    private final DistributionSummary storedBytes;
+
+    @Autowired
+    public UploadReceiver(UploadLayout layout, MeterRegistry meterRegistry,
+                          @Value("${app.images.max-dimension:1600}") int maxDimension,
+                          @Value("${app.images.max-pixels:40000000}") long maxPixels,
+                          @Value("${app.images.ingest-quality:0.85}") float quality,
+                          @Value("${app.images.upload-threads:4}") int threads) {
+        this(layout, meterRegistry, maxDimension, maxPixels, quality, threads, workerPool(threads));
+    }
+
+    UploadReceiver(UploadLayout layout, MeterRegistry meterRegistry, int maxDimension, long maxPixels,
+                   float quality, int decoders, ExecutorService pool) {
+        this.layout = layout;
+        this.maxDimension = maxDimension;
+        this.maxPixels = maxPixels;
+        this.quality = quality;
+        this.pool = pool;
+        this.decoding = new Semaphore(decoders);
+        this.originalBytes = DistributionSummary.builder("bookex.uploads.bytes").baseUnit("bytes")
+                .tag("stage", "original").register(meterRegistry);
+        this.storedBytes = DistributionSummary.builder("bookex.uploads.bytes").baseUnit("bytes")
+                .tag("stage", "stored").register(meterRegistry);
+    }
+
+    /** One file, on the caller's thread; the caller discards the result when done with it. */
+    Received receive(MultipartFile file) throws IOException {
+        validateImageFile(file);
+        Path tmpDir = layout.tmpDir();
+        Files.createDirectories(tmpDir);
+        Path raw = Files.createTempFile(tmpDir, "upload-", ".part");
+        Path stored = Files.createTempFile(tmpDir, "upload-", ".part");
+        try {
+            String ext = copy(file, raw);
+            ImageIngest.Result result;
+            String placeholder;
+            decoding.acquireUninterruptibly(); // held while the decoded image is alive
+            try {
+                result = ImageIngest.process(raw, stored, ext.equals("png"), maxDimension, maxPixels, quality);
+                placeholder = placeholder(result);
+            } finally {
+                decoding.release();
+            }
+            String sha256 = sha256(stored);
+            try (FileChannel out = FileChannel.open(stored, StandardOpenOption.WRITE)) {
+                out.force(false); // the row is committed next, so the bytes must be durable first
+            }
+            originalBytes.record(result.originalSize());
+            storedBytes.record(result.storedSize());
+            return new Received(stored, ext, sha256, result.storedSize(), result.originalSize(), placeholder);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(stored);
+            throw ex;
+        } finally {
+            Files.deleteIfExists(raw);
+        }
+    }
+
+    /**
+     * All files in parallel, results in the order given. If any file is rejected the others are discarded
+     * and the first failure (in that order) is thrown, so a batch is stored completely or not at all.
+     */
+    List<Received> receiveAll(List<MultipartFile> files) throws IOException {
+        List<CompletableFuture<Received>> pending = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return receive(file);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, pool));
+        }
+
+        List<Received> received = new ArrayList<>(files.size());
+        Throwable failure = null;
+        for (CompletableFuture<Received> future : pending) {
+            try {
+                received.add(future.join());
+            } catch (CompletionException ex) {
+                if (failure == null) failure = ex.getCause();
+            }
+        }
+        if (failure == null) return received;
+
+        received.forEach(Received::discard);
+        if (failure instanceof UncheckedIOException io) throw io.getCause();
+        if (failure instanceof RuntimeException runtime) throw runtime;
+        throw new IllegalStateException(failure);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // header checked against the declared type first, the rest copied by the channel; returns the extension
+    private static String copy(MultipartFile file, Path temp) throws IOException {
+        try (InputStream in = file.getInputStream();
+             FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            byte[] head = in.readNBytes(PNG_MAGIC.length);
+            String ext = sniffExtension(head, file.getContentType());
+            out.write(ByteBuffer.wrap(head));
+
+            ReadableByteChannel src = Channels.newChannel(in);
+            long size = head.length;
+            long n;
+            while (size <= MAX_BYTES && (n = out.transferFrom(src, size, MAX_BYTES + 1 - size)) > 0) {
+                size += n;
+            }
+            if (size > MAX_BYTES) throw new IllegalArgumentException("File too large (max 5MB)");
+            return ext;
+        }
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest sha256 = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), sha256)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    // the image itself is fine without one, so a failure here does not reject the upload
+    private static String placeholder(ImageIngest.Result result) {
+        try {
+            return ImagePlaceholder.of(result.image());
+        } catch (IOException | RuntimeException ex) {
+            log.debug("No placeholder for a {}x{} image: {}", result.width(), result.height(), ex.toString());
+            return null;
+        }
+    }
+
+    private static String sniffExtension(byte[] head, String contentType) {
+        boolean png = "image/png".equalsIgnoreCase(contentType);
+        byte[] magic = png ? PNG_MAGIC : JPEG_MAGIC;
+        if (head.length < magic.length || !Arrays.equals(head, 0, magic.length, magic, 0, magic.length)) {
+            throw new IllegalArgumentException("File content is not a " + (png ? "PNG" : "JPEG") + " image");
+        }
+        return png ? "png" : "jpg";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void validateImageFile(MultipartFile file) {
+        if (file == null || file.isEmpty()) throw new IllegalArgumentException("File is empty");
+        if (file.getSize() > MAX_BYTES) {
+            throw new IllegalArgumentException("File too large (max 5MB)");
+        }
+        String contentType = file.getContentType();
+        if (contentType == null || !(contentType.equalsIgnoreCase("image/jpeg")
+                || contentType.equalsIgnoreCase("image/png"))) {
+            throw new IllegalArgumentException("Only JPEG/PNG allowed");
+        }
+        String name = file.getOriginalFilename();
+        String extension = FilenameUtils.getExtension(name);
+        if (extension == null) throw new IllegalArgumentException("Invalid file extension");
+        String lower = extension.toLowerCase();
+        if (!(lower.equals("jpg") || lower.equals("jpeg") || lower.equals("png"))) {
+            throw new IllegalArgumentException("Only JPG/PNG extensions allowed");
+        }
+    }
+
+    private static ExecutorService workerPool(int threads) {
+        AtomicInteger n = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+                    Thread t = new Thread(r, "upload-receiver-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** A received upload waiting in its temp file; {@code size} is what is stored, after {@link ImageIngest}. */
+    record Received(Path file, String ext, String sha256, long size, long originalSize, String placeholder) {
+        void discard() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // left for the upload reconciler
+            }
+        }
+    }
+}
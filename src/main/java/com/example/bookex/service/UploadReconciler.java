@@ -0,0 +1,114 @@
+package com.example.bookex.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes files in the upload tree that nothing points at any more: per-listing directories left behind by
+ * deleted listings, files of uploads whose transaction failed, abandoned temp files. The tree is walked once
+ * per run and checked against the database {@code batch-size} files at a time, so memory and query size stay
+ * bounded however large it grows; only files untouched for {@code grace} are considered, which covers uploads
+ * and variants still being committed. Freed bytes are recorded as {@code bookex.uploads.orphans.reclaimed.bytes}.
+ */
+@Slf4j
+@Component
+public class UploadReconciler {
+
+    private final StorageService storageService;
+    private final MeterRegistry meterRegistry;
+    private final Duration grace;
+    private final int batchSize;
+
+    public UploadReconciler(StorageService storageService, MeterRegistry meterRegistry,
+                            @Value("${app.uploads.orphans.grace:1d}") Duration grace,
+                            @Value("${app.uploads.orphans.batch-size:500}") int batchSize) {
+        this.storageService = storageService;
+        this.meterRegistry = meterRegistry;
+        this.grace = grace;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${app.uploads.orphans.cron:0 20 4 * * *}")
+    public void run() {
+        Path root = storageService.uploadRoot();
+        if (!Files.isDirectory(root)) return;
+
+        long started = System.nanoTime();
+        Walk walk = new Walk(root, Instant.now().minus(grace));
+        try {
+            Files.walkFileTree(root, walk);
+            walk.flush();
+        } catch (IOException ex) {
+            log.warn("Upload reconciliation stopped: {}", ex.getMessage());
+        }
+        meterRegistry.counter("bookex.uploads.orphans.reclaimed.bytes").increment(walk.freed);
+        log.info("Upload reconciliation: {} files checked, {} bytes reclaimed, {} empty directories removed in {} ms",
+                walk.checked, walk.freed, walk.directories, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private final class Walk extends SimpleFileVisitor<Path> {
+
+        private final Path root;
+        private final Instant cutoff;
+        private final List<Path> batch = new ArrayList<>();
+        long checked;
+        long freed;
+        int directories;
+
+        Walk(Path root, Instant cutoff) {
+            this.root = root;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (attrs.isRegularFile() && attrs.lastModifiedTime().toInstant().isBefore(cutoff)) {
+                batch.add(file);
+                if (batch.size() >= batchSize) flush();
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException ex) {
+            return FileVisitResult.CONTINUE; // deleted under us, or unreadable: the next run sees it again
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+            // listings/{id} emptied by an earlier run (deleting its files touched it); the top-level layout stays
+            if (dir.equals(root) || dir.getParent().equals(root)) return FileVisitResult.CONTINUE;
+            try {
+                if (!Files.getLastModifiedTime(dir).toInstant().isBefore(cutoff)) return FileVisitResult.CONTINUE;
+                Files.delete(dir);
+                directories++;
+            } catch (DirectoryNotEmptyException | NoSuchFileException ignored) {
+                // still in use, or gone already
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        void flush() throws IOException {
+            if (batch.isEmpty()) return;
+            checked += batch.size();
+            freed += storageService.reclaimOrphans(List.copyOf(batch), cutoff);
+            batch.clear();
+        }
+    }
+}
@@ -3,10 +3,12 @@ package com.example.bookex.service;
 import com.example.bookex.dto.user.UserProfileDto;
 import com.example.bookex.dto.user.UserPublicDto;
 import com.example.bookex.entity.User;
+import com.example.bookex.event.ProfileChangedEvent;
 import com.example.bookex.exceptions.NotFoundException;
 import com.example.bookex.repository.UserRepository;
 import com.example.bookex.util.DtoMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,6 +22,7 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder encoder;
+    private final ApplicationEventPublisher events;
 
     @Transactional
     public User register(String email, String displayName, String rawPassword) {
@@ -52,6 +55,7 @@ public class UserService {
         User user = userRepository.findById(userId).orElseThrow(() -> new NotFoundException("User not found"));
         DtoMapper.updateUserFromProfile(dto, user);
         userRepository.save(user);
+        events.publishEvent(new ProfileChangedEvent(userId));
         return DtoMapper.toProfileDto(user);
     }
 
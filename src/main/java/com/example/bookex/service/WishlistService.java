@@ -0,0 +1,59 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.book.BookDto;
+import com.example.bookex.entity.Book;
+import com.example.bookex.entity.User;
+import com.example.bookex.event.WishlistChangedEvent;
+import com.example.bookex.repository.WishlistRepository;
+import com.example.bookex.util.DtoMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class WishlistService {
+
+    private final WishlistRepository wishlistRepository;
+    private final BookService bookService;
+    private final ApplicationEventPublisher events;
+
+    public List<BookDto> wishlist(User user) {
+        return wishlistRepository.findBooksByUserId(user.getId()).stream().map(DtoMapper::toBookDto).toList();
+    }
+
+    /**
+     * Wishes for a book already in the catalogue (as picked from the title and author suggestions). Unknown
+     * books are refused rather than created, so a typo never adds a catalogue entry.
+     */
+    @Transactional
+    public BookDto add(User user, String title, String author) {
+        Book book = bookService.find(title, author)
+                .orElseThrow(() -> new IllegalArgumentException("No such book yet: pick the title and author from the suggestions"));
+        if (wishlistRepository.insert(user.getId(), book.getId()) > 0) {
+            events.publishEvent(new WishlistChangedEvent(user.getId()));
+        }
+        return DtoMapper.toBookDto(book);
+    }
+
+    @Transactional
+    public void remove(User user, Long bookId) {
+        if (wishlistRepository.remove(user.getId(), bookId) > 0) {
+            events.publishEvent(new WishlistChangedEvent(user.getId()));
+        }
+    }
+
+    /** Current wishes joined with available listings, packed for cycle matching (one streamed query). */
+    public SwapGraph loadGraph() {
+        SwapGraph.Builder builder = new SwapGraph.Builder();
+        try (Stream<Object[]> rows = wishlistRepository.streamWantedListings()) {
+            rows.forEach(row -> builder.add((Long) row[0], (Long) row[1], (Long) row[2]));
+        }
+        return builder.build();
+    }
+}
@@ -38,12 +38,18 @@ public final class DtoMapper {
 
     // Reveal if public=true or swap status is ACCEPTED
     public static UserPublicDto toUserPublic(User u, boolean revealContact) {
+        return toUserPublic(u.getId(), u.getUsername(), u.isPublicContact(), u.getPreferredMethod(),
+                u.getContactEmail(), u.getContactPhone(), revealContact);
+    }
+
+    private static UserPublicDto toUserPublic(Long id, String username, boolean publicContact, ContactMethod method,
+                                              String contactEmail, String contactPhone, boolean revealContact) {
         UserPublicDto d = new UserPublicDto();
-        d.setId(u.getId());
-        d.setDisplayName(u.getUsername());
-        if (revealContact || u.isPublicContact()) {
-            if (u.getPreferredMethod() == ContactMethod.EMAIL) d.setContact(u.getContactEmail());
-            else if (u.getPreferredMethod() == ContactMethod.PHONE) d.setContact(u.getContactPhone());
+        d.setId(id);
+        d.setDisplayName(username);
+        if (revealContact || publicContact) {
+            if (method == ContactMethod.EMAIL) d.setContact(contactEmail);
+            else if (method == ContactMethod.PHONE) d.setContact(contactPhone);
             else d.setContact(null);
         } else {
             d.setContact(null);
@@ -66,6 +72,7 @@ public final class DtoMapper {
         BookImageDto d = new BookImageDto();
         d.setImageNo(img.getId().getImageNo());
         d.setPath(img.getPath());
+        d.setPlaceholder(img.getPlaceholder());
         return d;
     }
 
@@ -88,6 +95,22 @@ public final class DtoMapper {
         return list.stream().map(DtoMapper::toCardDto).collect(Collectors.toList());
     }
 
+    // Projection rows already carry book and owner columns
+    public static ListingCardDto toCardDto(ListingCardRow r) {
+        ListingCardDto d = new ListingCardDto();
+        d.setId(r.getId());
+        d.setBook(new BookDto(r.getBookId(), r.getTitle(), r.getAuthor(), r.getIsbn()));
+        d.setOwner(toUserPublic(r.getOwnerId(), r.getOwnerName(), r.isOwnerPublicContact(), r.getOwnerPreferredMethod(),
+                r.getOwnerContactEmail(), r.getOwnerContactPhone(), false));
+        d.setCondition(r.getCondition().name());
+        d.setAvailable(r.isAvailable());
+        return d;
+    }
+
+    public static List<ListingCardDto> toCardRowList(List<ListingCardRow> list) {
+        return list.stream().map(DtoMapper::toCardDto).collect(Collectors.toList());
+    }
+
     // --- LISTING DETAIL ---
     public static ListingDetailDto toDetailDto(BookListing l, List<BookImage> images) {
         ListingDetailDto d = new ListingDetailDto();
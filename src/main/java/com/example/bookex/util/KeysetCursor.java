@@ -0,0 +1,41 @@
+package com.example.bookex.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position: the sort keys of the last (or first) row of a page.
+ * Encoded as url-safe base64 so it can travel in a query string.
+ */
+@Getter
+@AllArgsConstructor
+public final class KeysetCursor {
+
+    private final long id;
+    private final Instant createdAt;
+    private final String key; // sort-specific key (book id and title, condition), may be null
+
+    public String encode() {
+        String raw = id + "|" + createdAt.getEpochSecond() + "|" + createdAt.getNano() + "|" + (key == null ? "" : key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns null for a missing cursor; throws IllegalArgumentException for a malformed one. */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4) throw new IllegalArgumentException("Invalid cursor");
+            Instant createdAt = Instant.ofEpochSecond(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            return new KeysetCursor(Long.parseLong(parts[0]), createdAt, parts[3].isEmpty() ? null : parts[3]);
+        } catch (IllegalArgumentException | DateTimeException ex) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+// Type-ahead for inputs marked with data-autocomplete="title|author|any"; fills a shared <datalist>.
+(function () {
+    var list = document.createElement('datalist');
+    list.id = 'book-suggestions';
+    document.body.appendChild(list);
+
+    document.querySelectorAll('input[data-autocomplete]').forEach(function (input) {
+        var kind = input.getAttribute('data-autocomplete');
+        var timer = null;
+        var seq = 0;
+        input.setAttribute('list', list.id);
+        input.setAttribute('autocomplete', 'off');
+
+        input.addEventListener('input', function () {
+            clearTimeout(timer);
+            var q = input.value.trim();
+            if (q.length < 2) return;
+            timer = setTimeout(function () {
+                var mine = ++seq;
+                fetch('/api/autocomplete?q=' + encodeURIComponent(q))
+                    .then(function (r) { return r.ok ? r.json() : []; })
+                    .then(function (items) {
+                        if (mine !== seq) return; // a newer keystroke won
+                        list.innerHTML = '';
+                        items.filter(function (i) { return kind === 'any' || i.kind === kind; })
+                            .forEach(function (i) {
+                                var option = document.createElement('option');
+                                option.value = i.text;
+                                list.appendChild(option);
+                            });
+                    })
+                    .catch(function () { /* suggestions are optional */ });
+            }, 120);
+        });
+    });
+})();
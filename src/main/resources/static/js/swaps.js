@@ -0,0 +1,25 @@
+// Live updates for /swaps: status changes pushed over SSE by SwapActionController#stream.
+(function () {
+    if (!window.EventSource) return;
+    var banner = document.getElementById('swaps-live');
+    var source = new EventSource('/swaps/stream');
+
+    function stale() {
+        if (banner) banner.classList.remove('d-none');
+    }
+
+    source.addEventListener('swap', function (e) {
+        var delta = JSON.parse(e.data);
+        var row = document.querySelector('tr[data-swap-id="' + delta.id + '"][data-box="' + delta.box + '"]');
+        if (!row) return stale(); // a new request, or one on another page
+        var cell = row.querySelector('.swap-status');
+        if (cell.textContent === delta.status) return;
+        cell.textContent = delta.status;
+        row.querySelectorAll('form').forEach(function (f) { f.remove(); }); // actions depend on status
+        stale();
+    });
+
+    // we fell behind and missed updates
+    source.addEventListener('resync', stale);
+    window.addEventListener('pagehide', function () { source.close(); });
+})();
@@ -0,0 +1,40 @@
+package com.example.bookex.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StaticAssetPrecompressorTest {
+
+    @TempDir
+    Path work;
+
+    @Test
+    void precompress_writesEachAssetWithASmallerGzipCopy() throws Exception {
+        new StaticAssetPrecompressor(work, new PathMatchingResourcePatternResolver()).precompress();
+
+        byte[] original;
+        try (InputStream in = new ClassPathResource("static/css/styles.css").getInputStream()) {
+            original = in.readAllBytes();
+        }
+        Path css = work.resolve("css/styles.css");
+        Path gz = work.resolve("css/styles.css.gz");
+        assertThat(Files.readAllBytes(css)).isEqualTo(original);
+        assertThat(Files.size(gz)).isLessThan(original.length);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gz))) {
+            assertThat(in.readAllBytes()).isEqualTo(original);
+        }
+        assertThat(work.resolve("js/swaps.js.gz")).exists();
+        try (var files = Files.list(work.resolve("css"))) {
+            assertThat(files).noneMatch(p -> p.getFileName().toString().endsWith(".part"));
+        }
+    }
+}
@@ -1,16 +1,31 @@
 package com.example.bookex.controller;
 
 import com.example.bookex.dto.book.BookDto;
+import com.example.bookex.dto.listing.BrowseSort;
 import com.example.bookex.dto.listing.ListingCardDto;
 import com.example.bookex.dto.listing.ListingDetailDto;
+import com.example.bookex.dto.listing.ListingPageDto;
+import com.example.bookex.dto.listing.ListingVersionRow;
 import com.example.bookex.dto.rating.RatingAverageDto;
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.repository.BookListingRepository;
+import com.example.bookex.service.BrowseVersion;
+import com.example.bookex.service.ListingSearchService;
 import com.example.bookex.service.ListingService;
 import com.example.bookex.service.RatingService;
 import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.ui.ExtendedModelMap;
 import org.springframework.ui.Model;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -19,7 +34,7 @@ class HomeControllerTest {
 
     @Test
     void root_redirectsToBrowse() {
-        HomeController homeController = new HomeController(mock(ListingService.class), mock(RatingService.class));
+        HomeController homeController = new HomeController(mock(ListingService.class), mock(ListingSearchService.class), mock(RatingService.class), browseVersion());
         assertThat(homeController.root()).isEqualTo("redirect:/browse");
     }
 
@@ -27,26 +42,49 @@ class HomeControllerTest {
     void browse_addsListingsAndOk_returnsBrowse() {
         ListingService listingService = mock(ListingService.class);
         RatingService ratingService = mock(RatingService.class);
-        HomeController homeController = new HomeController(listingService, ratingService);
+        HomeController homeController = new HomeController(listingService, mock(ListingSearchService.class), ratingService, browseVersion());
 
-        when(listingService.browsePublic()).thenReturn(List.of(
-                ListingCardDto.builder().id(1L).build(),
-                ListingCardDto.builder().id(2L).build()
-        ));
+        when(listingService.browsePublic(BrowseSort.TITLE, "abc", null)).thenReturn(ListingPageDto.builder()
+                .items(List.of(
+                        ListingCardDto.builder().id(1L).build(),
+                        ListingCardDto.builder().id(2L).build()))
+                .sort("title")
+                .build());
 
         Model model = new ExtendedModelMap();
-        String view = homeController.browse(model, "DONE");
+        String view = homeController.browse(model, "DONE", "title", "abc", null, null, 0, get(), new MockHttpServletResponse(), null);
 
         assertThat(view).isEqualTo("browse");
         assertThat(model.getAttribute("ok")).isEqualTo("DONE");
         assertThat((List<?>) model.getAttribute("listings")).hasSize(2);
+        assertThat(model.getAttribute("page")).isInstanceOf(ListingPageDto.class);
+    }
+
+    @Test
+    void browse_withQuery_usesSearch() {
+        ListingService listingService = mock(ListingService.class);
+        ListingSearchService listingSearchService = mock(ListingSearchService.class);
+        HomeController homeController = new HomeController(listingService, listingSearchService, mock(RatingService.class), browseVersion());
+
+        when(listingSearchService.search(" dune ", 1)).thenReturn(ListingPageDto.builder()
+                .items(List.of(ListingCardDto.builder().id(3L).build()))
+                .sort("relevance")
+                .build());
+
+        Model model = new ExtendedModelMap();
+        String view = homeController.browse(model, null, null, null, null, " dune ", 1, get(), new MockHttpServletResponse(), null);
+
+        assertThat(view).isEqualTo("browse");
+        assertThat(model.getAttribute("q")).isEqualTo("dune");
+        assertThat((List<?>) model.getAttribute("listings")).hasSize(1);
+        verifyNoInteractions(listingService);
     }
 
     @Test
     void detail_addsListingAndAverages_returnsListingDetail() {
         ListingService listingService = mock(ListingService.class);
         RatingService ratingService = mock(RatingService.class);
-        HomeController homeController = new HomeController(listingService, ratingService);
+        HomeController homeController = new HomeController(listingService, mock(ListingSearchService.class), ratingService, browseVersion());
 
         ListingDetailDto listingDetailDto = ListingDetailDto.builder()
                 .id(9L)
@@ -57,10 +95,107 @@ class HomeControllerTest {
                 .thenReturn(RatingAverageDto.builder().count(0).build());
 
         Model model = new ExtendedModelMap();
-        String view = homeController.detail(9L, model);
+        String view = homeController.detail(9L, model, get(), new MockHttpServletResponse(), null);
 
         assertThat(view).isEqualTo("listing-detail");
         assertThat(model.getAttribute("listing")).isEqualTo(listingDetailDto);
         assertThat(model.getAttribute("bookAvg")).isInstanceOf(RatingAverageDto.class);
     }
+
+    @Test
+    void detail_returns304_withoutLoadingListing_whenEtagMatches_inTheSameSession() {
+        ListingService listingService = mock(ListingService.class);
+        RatingService ratingService = mock(RatingService.class);
+        HomeController homeController = new HomeController(listingService, mock(ListingSearchService.class), ratingService, browseVersion());
+        when(listingService.getListingDetail(9L)).thenReturn(ListingDetailDto.builder()
+                .id(9L).book(BookDto.builder().id(5L).build()).build());
+        when(listingService.getListingVersion(9L)).thenReturn(Optional.of(new ListingVersionRow(9L,
+                Instant.parse("2024-01-01T00:00:00Z"), Instant.parse("2024-01-02T00:00:00Z"), Instant.parse("2024-01-01T00:00:00Z"),
+                null, 0L, Instant.parse("2024-01-03T00:00:00Z"), 2)));
+        Principal alice = () -> "alice";
+        MockHttpSession session = new MockHttpSession();
+
+        MockHttpServletRequest load = new MockHttpServletRequest("GET", "/listings/9");
+        load.setSession(session);
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        homeController.detail(9L, new ExtendedModelMap(), new ServletWebRequest(load, first), first, alice);
+        String etag = first.getHeader("ETag");
+
+        MockHttpServletRequest revalidate = new MockHttpServletRequest("GET", "/listings/9");
+        revalidate.setSession(session);
+        revalidate.addHeader("If-None-Match", etag);
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        String view = homeController.detail(9L, new ExtendedModelMap(), new ServletWebRequest(revalidate, second), second, alice);
+
+        assertThat(etag).startsWith("W/");
+        assertThat(first.getHeader("Last-Modified")).isNotNull();
+        assertThat(view).isNull();
+        assertThat(second.getStatus()).isEqualTo(304);
+        verify(listingService, times(1)).getListingDetail(9L);
+        verify(ratingService, times(1)).getAverages(any());
+
+        // signed in again: the cached page holds the old session's CSRF token, so it is sent afresh
+        MockHttpServletRequest relogin = new MockHttpServletRequest("GET", "/listings/9");
+        relogin.setSession(new MockHttpSession());
+        relogin.addHeader("If-None-Match", etag);
+        MockHttpServletResponse third = new MockHttpServletResponse();
+        assertThat(homeController.detail(9L, new ExtendedModelMap(), new ServletWebRequest(relogin, third), third, alice))
+                .isEqualTo("listing-detail");
+        assertThat(third.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void browse_etagChanges_afterListingChange_andPerViewer() {
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        when(bookListingRepository.currentBrowseVersion()).thenReturn(1L);
+        when(bookListingRepository.bumpBrowseVersion()).thenReturn(2L);
+        BrowseVersion browseVersion = new BrowseVersion(bookListingRepository, Duration.ofMinutes(1));
+        ListingService listingService = mock(ListingService.class);
+        when(listingService.browsePublic(any(), any(), any())).thenReturn(ListingPageDto.builder().items(List.of()).build());
+        HomeController homeController = new HomeController(listingService, mock(ListingSearchService.class), mock(RatingService.class), browseVersion);
+
+        String anon = browseEtag(homeController, null);
+        assertThat(browseEtag(homeController, () -> "bob")).isNotEqualTo(anon);
+        assertThat(browseEtag(homeController, null)).isEqualTo(anon);
+
+        browseVersion.onListingChanged(new ListingChangedEvent(1L));
+        assertThat(browseEtag(homeController, null)).isNotEqualTo(anon);
+    }
+
+    @Test
+    void browse_etagChanges_whenTheNavBadgeCountChanges() {
+        ListingService listingService = mock(ListingService.class);
+        when(listingService.browsePublic(any(), any(), any())).thenReturn(ListingPageDto.builder().items(List.of()).build());
+        HomeController homeController = new HomeController(listingService, mock(ListingSearchService.class), mock(RatingService.class), browseVersion());
+        MockHttpSession session = new MockHttpSession();
+
+        String one = browseEtag(homeController, () -> "bob", session, 1);
+        assertThat(browseEtag(homeController, () -> "bob", session, 1)).isEqualTo(one);
+        assertThat(browseEtag(homeController, () -> "bob", session, 2)).isNotEqualTo(one);
+    }
+
+    private static String browseEtag(HomeController homeController, Principal principal) {
+        return browseEtag(homeController, principal, new MockHttpSession(), null);
+    }
+
+    private static String browseEtag(HomeController homeController, Principal principal, MockHttpSession session,
+                                     Integer pendingSwaps) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/browse");
+        request.setSession(session);
+        request.addHeader("If-None-Match", "W/\"stale\"");
+        Model model = new ExtendedModelMap();
+        model.addAttribute("pendingSwaps", pendingSwaps);
+        homeController.browse(model, null, null, null, null, null, 0,
+                new ServletWebRequest(request, response), response, principal);
+        return response.getHeader("ETag");
+    }
+
+    private static BrowseVersion browseVersion() {
+        return new BrowseVersion(mock(BookListingRepository.class), Duration.ofMinutes(1));
+    }
+
+    private static ServletWebRequest get() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/"), new MockHttpServletResponse());
+    }
 }
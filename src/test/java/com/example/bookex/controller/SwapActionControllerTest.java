@@ -0,0 +1,71 @@
+package com.example.bookex.controller;
+
+import com.example.bookex.entity.User;
+import com.example.bookex.service.SwapService;
+import com.example.bookex.service.SwapStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class SwapActionControllerTest {
+
+    private User me() {
+        return User.builder().id(5L).email("s@e.com").username("sam").password("x").build();
+    }
+
+    @Test
+    void create_redirectsOk() {
+        SwapService swapService = mock(SwapService.class);
+        SwapActionController swapController = new SwapActionController(swapService, mock(SwapStream.class));
+
+        SwapActionController.CreateSwapForm swapForm = new SwapActionController.CreateSwapForm();
+        swapForm.setListingId(10L);
+        swapForm.setMessage("Hi");
+
+        String view = swapController.create(me(), swapForm);
+        assertThat(view).isEqualTo("redirect:/swaps?ok=Swap+requested");
+
+        verify(swapService).createRequest(any(User.class), eq(10L), eq("Hi"));
+    }
+
+    @Test
+    void accept_redirects() {
+        SwapService swapService = mock(SwapService.class);
+        SwapActionController swapController = new SwapActionController(swapService, mock(SwapStream.class));
+
+        String view = swapController.accept(me(), 9L);
+        assertThat(view).isEqualTo("redirect:/swaps?ok=Accepted");
+        verify(swapService).ownerRespond(any(User.class), eq(9L), eq(true));
+    }
+
+    @Test
+    void decline_redirects() {
+        SwapService swapServices = mock(SwapService.class);
+        SwapActionController swapController = new SwapActionController(swapServices, mock(SwapStream.class));
+
+        String view = swapController.decline(me(), 9L);
+        assertThat(view).isEqualTo("redirect:/swaps?ok=Declined");
+        verify(swapServices).ownerRespond(any(User.class), eq(9L), eq(false));
+    }
+
+    @Test
+    void complete_redirects() {
+        SwapService swapServices = mock(SwapService.class);
+        SwapActionController swapController = new SwapActionController(swapServices, mock(SwapStream.class));
+
+        String view = swapController.complete(me(), 9L);
+        assertThat(view).isEqualTo("redirect:/swaps?ok=Completed");
+        verify(swapServices).markCompleted(any(User.class), eq(9L));
+    }
+
+    @Test
+    void cancel_redirects() {
+        SwapService swapService = mock(SwapService.class);
+        SwapActionController swapController = new SwapActionController(swapService, mock(SwapStream.class));
+
+        String view = swapController.cancel(me(), 9L);
+        assertThat(view).isEqualTo("redirect:/swaps?ok=Cancelled");
+        verify(swapService).markCancelled(any(User.class), eq(9L));
+    }
+}
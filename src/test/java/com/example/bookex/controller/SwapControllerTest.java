@@ -1,12 +1,17 @@
 package com.example.bookex.controller;
 
+import com.example.bookex.dto.swap.SwapPageDto;
 import com.example.bookex.entity.User;
+import com.example.bookex.entity.enums.SwapStatus;
 import com.example.bookex.service.SwapService;
 import org.junit.jupiter.api.Test;
 import org.springframework.ui.ExtendedModelMap;
 import org.springframework.ui.Model;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 class SwapControllerTest {
@@ -19,71 +24,26 @@ class SwapControllerTest {
     void page_addsInboxOutboxAndOk_returnsSwaps() {
         SwapService swapService = mock(SwapService.class);
         SwapController swapController = new SwapController(swapService);
+        when(swapService.inbox(any(User.class), eq(SwapStatus.PENDING), eq("c1")))
+                .thenReturn(SwapPageDto.builder().items(List.of()).status("PENDING").build());
 
         Model model = new ExtendedModelMap();
-        String view = swapController.page(me(), model, "OK");
+        String view = swapController.page(me(), model, "OK", "pending", "c1");
 
         assertThat(view).isEqualTo("swaps");
         assertThat(model.containsAttribute("inbox")).isTrue();
         assertThat(model.containsAttribute("outbox")).isTrue();
         assertThat(model.getAttribute("ok")).isEqualTo("OK");
 
-        verify(swapService).inbox(any(User.class));
+        assertThat(model.getAttribute("inboxPage")).isInstanceOf(SwapPageDto.class);
         verify(swapService).outbox(any(User.class));
     }
 
     @Test
-    void create_redirectsOk() {
-        SwapService swapService = mock(SwapService.class);
-        SwapController swapController = new SwapController(swapService);
-
-        SwapController.CreateSwapForm swapForm = new SwapController.CreateSwapForm();
-        swapForm.setListingId(10L);
-        swapForm.setMessage("Hi");
-
-        String view = swapController.create(me(), swapForm);
-        assertThat(view).isEqualTo("redirect:/swaps?ok=Swap+requested");
-
-        verify(swapService).createRequest(any(User.class), eq(10L), eq("Hi"));
-    }
-
-    @Test
-    void accept_redirects() {
-        SwapService swapService = mock(SwapService.class);
-        SwapController swapController = new SwapController(swapService);
-
-        String view = swapController.accept(me(), 9L);
-        assertThat(view).isEqualTo("redirect:/swaps?ok=Accepted");
-        verify(swapService).ownerRespond(any(User.class), eq(9L), eq(true));
-    }
-
-    @Test
-    void decline_redirects() {
-        SwapService swapServices = mock(SwapService.class);
-        SwapController swapController = new SwapController(swapServices);
-
-        String view = swapController.decline(me(), 9L);
-        assertThat(view).isEqualTo("redirect:/swaps?ok=Declined");
-        verify(swapServices).ownerRespond(any(User.class), eq(9L), eq(false));
-    }
-
-    @Test
-    void complete_redirects() {
-        SwapService swapServices = mock(SwapService.class);
-        SwapController swapController = new SwapController(swapServices);
-
-        String view = swapController.complete(me(), 9L);
-        assertThat(view).isEqualTo("redirect:/swaps?ok=Completed");
-        verify(swapServices).markCompleted(any(User.class), eq(9L));
-    }
-
-    @Test
-    void cancel_redirects() {
-        SwapService swapService = mock(SwapService.class);
-        SwapController swapController = new SwapController(swapService);
+    void page_rejectsUnknownStatus() {
+        SwapController swapController = new SwapController(mock(SwapService.class));
 
-        String view = swapController.cancel(me(), 9L);
-        assertThat(view).isEqualTo("redirect:/swaps?ok=Cancelled");
-        verify(swapService).markCancelled(any(User.class), eq(9L));
+        assertThatThrownBy(() -> swapController.page(me(), new ExtendedModelMap(), null, "lost", null))
+                .isInstanceOf(IllegalArgumentException.class);
     }
 }
@@ -0,0 +1,134 @@
+package com.example.bookex.controller;
+
+import com.example.bookex.service.UploadLayout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadControllerTest {
+
+    private static final String SHA = "ab".repeat(32);
+
+    @TempDir
+    Path uploads;
+
+    private UploadController controller;
+    private byte[] bytes;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        controller = new UploadController(new UploadLayout(uploads.toString()), DataSize.ofBytes(100));
+        bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        Files.createDirectories(uploads.resolve("blobs"));
+        Files.write(uploads.resolve("blobs").resolve(SHA + ".jpg"), bytes);
+    }
+
+    @Test
+    void serve_wholeFile_withImmutableCachingAndContentHashEtag() throws Exception {
+        MockHttpServletResponse response = get("/uploads/blobs/" + SHA + ".jpg");
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("public, max-age=31536000, immutable");
+        assertThat(response.getHeader("ETag")).isEqualTo("\"" + SHA + "\"");
+        assertThat(response.getHeader("Accept-Ranges")).isEqualTo("bytes");
+        assertThat(response.getContentType()).isEqualTo("image/jpeg");
+        assertThat(response.getContentAsByteArray()).isEqualTo(bytes);
+    }
+
+    @Test
+    void serve_matchingIfNoneMatch_returns304WithoutBody() throws Exception {
+        MockHttpServletRequest request = request("/uploads/blobs/" + SHA + ".jpg");
+        request.addHeader("If-None-Match", "\"" + SHA + "\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.serve(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void serve_singleRange_returns206WithThoseBytes() throws Exception {
+        MockHttpServletRequest request = request("/uploads/blobs/" + SHA + ".jpg");
+        request.addHeader("Range", "bytes=10-19");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.serve(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 10-19/1000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(bytes, 10, 20));
+    }
+
+    @Test
+    void serve_rangeWithStaleIfRange_returnsWholeFile() throws Exception {
+        MockHttpServletRequest request = request("/uploads/blobs/" + SHA + ".jpg");
+        request.addHeader("Range", "bytes=10-19");
+        request.addHeader("If-Range", "\"something-else\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.serve(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).hasSize(1000);
+    }
+
+    @Test
+    void serve_rangePastTheEnd_returns416() throws Exception {
+        MockHttpServletRequest request = request("/uploads/blobs/" + SHA + ".jpg");
+        request.addHeader("Range", "bytes=5000-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.serve(request, response);
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes */1000");
+    }
+
+    @Test
+    void serve_withSendfileSupport_handsTheFileToTheConnector() throws Exception {
+        MockHttpServletRequest request = request("/uploads/blobs/" + SHA + ".jpg");
+        request.setAttribute(UploadController.SENDFILE_SUPPORT, Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.serve(request, response);
+
+        assertThat(response.getContentLengthLong()).isEqualTo(1000);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(request.getAttribute(UploadController.SENDFILE_FILENAME))
+                .isEqualTo(uploads.resolve("blobs").resolve(SHA + ".jpg").toAbsolutePath().normalize().toString());
+        assertThat(request.getAttribute(UploadController.SENDFILE_START)).isEqualTo(0L);
+        assertThat(request.getAttribute(UploadController.SENDFILE_END)).isEqualTo(1000L);
+    }
+
+    @Test
+    void serve_refusesPathsOutsideTheUploadTreeAndUnfinishedFiles() throws Exception {
+        Files.createDirectories(uploads.resolve("tmp"));
+        Files.write(uploads.resolve("tmp").resolve("upload-1.part"), bytes);
+
+        assertThat(get("/uploads/../secret.txt").getStatus()).isEqualTo(404);
+        assertThat(get("/uploads/tmp/upload-1.part").getStatus()).isEqualTo(404);
+        assertThat(get("/uploads/blobs/missing.jpg").getStatus()).isEqualTo(404);
+        assertThat(get("/uploads/blobs").getStatus()).isEqualTo(404);
+    }
+
+    private MockHttpServletResponse get(String uri) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.serve(request(uri), response);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+}
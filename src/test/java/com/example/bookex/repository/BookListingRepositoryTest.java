@@ -0,0 +1,260 @@
+package com.example.bookex.repository;
+
+import com.example.bookex.dto.listing.BookImageDto;
+import com.example.bookex.dto.listing.BrowseSort;
+import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.dto.listing.ListingDetailDto;
+import com.example.bookex.dto.listing.ListingPageDto;
+import com.example.bookex.dto.listing.ListingVersionRow;
+import com.example.bookex.dto.rating.RatingAverageDto;
+import com.example.bookex.dto.swap.SwapPageDto;
+import com.example.bookex.dto.swap.SwapViewDto;
+import com.example.bookex.entity.Book;
+import com.example.bookex.entity.BookImage;
+import com.example.bookex.entity.BookImageId;
+import com.example.bookex.entity.BookListing;
+import com.example.bookex.entity.BookRatingStats;
+import com.example.bookex.entity.SwapRequest;
+import com.example.bookex.entity.User;
+import com.example.bookex.entity.enums.Condition;
+import com.example.bookex.entity.enums.Role;
+import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.service.BookService;
+import com.example.bookex.service.ImageVariantService;
+import com.example.bookex.service.ListingService;
+import com.example.bookex.service.RatingService;
+import com.example.bookex.service.SwapCycleMatcher;
+import com.example.bookex.service.SwapService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the read paths against an in-memory H2 schema and counts JDBC statements,
+ * so card and swap views stay single-query as the mapping code evolves.
+ */
+@DataJpaTest(properties = {
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class BookListingRepositoryTest {
+
+    @Autowired EntityManager em;
+    @Autowired BookRepository bookRepository;
+    @Autowired BookListingRepository bookListingRepository;
+    @Autowired BookImageRepository bookImageRepository;
+    @Autowired SwapRequestRepository swapRequestRepository;
+    @Autowired RatingRepository ratingRepository;
+    @Autowired BookRatingStatsRepository bookRatingStatsRepository;
+
+    private User alice;
+    private User bob;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        alice = persistUser("alice");
+        bob = persistUser("bob");
+        for (int i = 0; i < 5; i++) {
+            Book book = Book.builder().title("title " + i).author("author " + i).build();
+            em.persist(book);
+            BookListing listing = BookListing.builder()
+                    .user(i % 2 == 0 ? alice : bob)
+                    .book(book)
+                    .condition(Condition.values()[i % Condition.values().length])
+                    .available(true)
+                    .build();
+            em.persist(listing);
+            em.persist(SwapRequest.builder().listing(listing).user(i % 2 == 0 ? bob : alice)
+                    .status(SwapStatus.PENDING).build());
+        }
+        em.flush();
+        em.clear();
+        statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void browsePublic_isOneStatement_perSort_orPerConditionBucketVisited() {
+        ListingService listingService = listingService(10);
+        for (BrowseSort sort : BrowseSort.values()) {
+            statistics.clear();
+            ListingPageDto page = listingService.browsePublic(sort, null, null);
+
+            assertThat(page.getItems()).hasSize(5);
+            assertThat(page.getItems()).allSatisfy(c -> assertThat(c.getOwner().getDisplayName()).isNotNull());
+            // the condition sort walks its buckets one range scan each, until the page is full
+            long expected = sort == BrowseSort.CONDITION ? Condition.values().length : 1;
+            assertThat(statistics.getPrepareStatementCount()).as(sort.name()).isEqualTo(expected);
+        }
+
+        statistics.clear();
+        ListingPageDto full = listingService(1).browsePublic(BrowseSort.CONDITION, null, null); // NEW has 2 rows
+        assertThat(full.getNextCursor()).isNotNull();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void browsePublic_keysetPagesCoverAllRows_inBothDirections() {
+        ListingService listingService = listingService(2);
+        for (BrowseSort sort : BrowseSort.values()) {
+            ListingPageDto first = listingService.browsePublic(sort, null, null);
+            ListingPageDto second = listingService.browsePublic(sort, first.getNextCursor(), null);
+            ListingPageDto third = listingService.browsePublic(sort, second.getNextCursor(), null);
+            ListingPageDto back = listingService.browsePublic(sort, null, third.getPrevCursor());
+
+            assertThat(third.getNextCursor()).isNull();
+            List<Long> all = new ArrayList<>(ids(first.getItems()));
+            all.addAll(ids(second.getItems()));
+            all.addAll(ids(third.getItems()));
+            assertThat(all).doesNotHaveDuplicates().hasSize(5);
+            assertThat(ids(back.getItems())).isEqualTo(ids(second.getItems()));
+        }
+    }
+
+    @Test
+    void browsePublic_byTitle_pagesThroughEqualTitlesOfDifferentBooks() {
+        for (int i = 0; i < 2; i++) {
+            Book twin = Book.builder().title("title 2").author("other author " + i).build();
+            em.persist(twin);
+            em.persist(BookListing.builder().user(alice).book(twin).condition(Condition.GOOD).available(true).build());
+        }
+        em.flush();
+        em.clear();
+        ListingService listingService = listingService(2);
+
+        List<Long> all = new ArrayList<>();
+        String cursor = null;
+        do {
+            ListingPageDto page = listingService.browsePublic(BrowseSort.TITLE, cursor, null);
+            all.addAll(ids(page.getItems()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(all).doesNotHaveDuplicates().hasSize(7);
+    }
+
+    @Test
+    void myLibrary_isOneStatement() {
+        List<ListingCardDto> cards = listingService(10).myLibrary(alice);
+
+        assertThat(cards).hasSize(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void outbox_fetchesListingBookAndUsers_inOneStatement() {
+        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository, event -> { },
+                mock(SwapCycleMatcher.class));
+
+        assertThat(swapService.outbox(bob)).hasSize(3)
+                .allSatisfy(s -> assertThat(s.getListing().getBook().getTitle()).isNotNull());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void inbox_joinsOnOwner_pagesByKeyset_andFiltersStatus_inOneStatementPerPage() {
+        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository, event -> { },
+                mock(SwapCycleMatcher.class));
+        ReflectionTestUtils.setField(swapService, "pageSize", 2);
+        em.persist(SwapRequest.builder().listing(em.find(BookListing.class,
+                        bookListingRepository.findCardsByOwnerId(alice.getId()).get(0).getId()))
+                .user(em.find(User.class, bob.getId())).status(SwapStatus.DECLINED).build());
+        em.flush();
+        em.clear();
+        statistics.clear();
+
+        SwapPageDto first = swapService.inbox(alice, null, null);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        SwapPageDto second = swapService.inbox(alice, null, first.getNextCursor());
+        SwapPageDto declined = swapService.inbox(alice, SwapStatus.DECLINED, null);
+
+        List<Long> all = new ArrayList<>(first.getItems().stream().map(SwapViewDto::getId).toList());
+        all.addAll(second.getItems().stream().map(SwapViewDto::getId).toList());
+        assertThat(all).doesNotHaveDuplicates().hasSize(4);
+        assertThat(second.getNextCursor()).isNull();
+        assertThat(first.getItems()).allSatisfy(v -> assertThat(v.getOwner().getDisplayName()).isEqualTo("alice"));
+        assertThat(declined.getItems()).singleElement().satisfies(v -> assertThat(v.getStatus()).isEqualTo("DECLINED"));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void findVersion_tracksImagesAndRatings_inOneStatement() {
+        Long listingId = bookListingRepository.findCardsByOwnerId(alice.getId()).get(0).getId();
+        statistics.clear();
+
+        ListingVersionRow before = bookListingRepository.findVersion(listingId).orElseThrow();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(before.getImageCount()).isZero();
+        assertThat(before.getRatingCount()).isZero();
+
+        BookListing listing = em.find(BookListing.class, listingId);
+        em.persist(BookImage.builder().id(new BookImageId(listingId, (short) 1)).listing(listing).path("/x.png").build());
+        em.persist(stats(listing.getBook().getId(), 1, 3, 3, 3));
+        em.flush();
+
+        ListingVersionRow after = bookListingRepository.findVersion(listingId).orElseThrow();
+        assertThat(after.getImageCount()).isEqualTo(1);
+        assertThat(after.getRatingCount()).isEqualTo(1);
+        assertThat(after.tag()).isNotEqualTo(before.tag());
+        assertThat(bookListingRepository.findVersion(-1L)).isEmpty();
+    }
+
+    @Test
+    void listingDetail_withImagesAndRatings_isTwoStatements() {
+        Long listingId = bookListingRepository.findCardsByOwnerId(alice.getId()).get(0).getId();
+        BookListing listing = em.find(BookListing.class, listingId);
+        for (short no = 2; no >= 1; no--) {
+            em.persist(BookImage.builder().id(new BookImageId(listingId, no)).listing(listing).path("/" + no + ".png").build());
+        }
+        em.persist(stats(listing.getBook().getId(), 2, 7, 6, 8));
+        em.flush();
+        em.clear();
+        statistics.clear();
+
+        ListingDetailDto detail = listingService(10).getListingDetail(listingId);
+        RatingAverageDto averages = new RatingService(ratingRepository, bookRepository, bookRatingStatsRepository, event -> { })
+                .getAverages(detail.getBook().getId());
+
+        assertThat(detail.getOwner().getDisplayName()).isEqualTo("alice");
+        assertThat(detail.getImages()).extracting(BookImageDto::getImageNo).containsExactly((short) 1, (short) 2);
+        assertThat(averages.getCount()).isEqualTo(2);
+        assertThat(averages.getDifficulty()).isEqualTo(3.5);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    private ListingService listingService(int pageSize) {
+        ListingService listingService = new ListingService(new BookService(bookRepository, event -> { }), bookListingRepository, bookImageRepository, mock(ImageBlobRepository.class), event -> { }, mock(ImageVariantService.class));
+        ReflectionTestUtils.setField(listingService, "pageSize", pageSize);
+        return listingService;
+    }
+
+    // book_rating_stats is maintained by a Postgres upsert in rate(); seed it directly here
+    private static BookRatingStats stats(Long bookId, int count, long difficulty, long emotion, long enjoyment) {
+        return BookRatingStats.builder().bookId(bookId).ratingCount(count)
+                .difficultySum(difficulty).emotionSum(emotion).enjoymentSum(enjoyment).updatedAt(Instant.now()).build();
+    }
+
+    private User persistUser(String name) {
+        User user = User.builder().username(name).email(name + "@example.com").password("x").role(Role.USER).build();
+        em.persist(user);
+        return user;
+    }
+
+    private static List<Long> ids(List<ListingCardDto> cards) {
+        return cards.stream().map(ListingCardDto::getId).toList();
+    }
+}
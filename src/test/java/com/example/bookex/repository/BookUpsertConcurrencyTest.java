@@ -0,0 +1,107 @@
+package com.example.bookex.repository;
+
+import com.example.bookex.entity.Book;
+import com.example.bookex.event.BookCreatedEvent;
+import com.example.bookex.service.BookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hammers BookService.findOrCreate from many threads against the real Postgres schema (ON CONFLICT is
+ * Postgres-specific, so H2 cannot stand in). Skipped when the configured database is unreachable.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIf("postgresAvailable")
+class BookUpsertConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 20;
+    private static final String AUTHOR = "upsert concurrency test";
+
+    @Autowired BookRepository bookRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired JdbcTemplate jdbc;
+
+    @AfterEach
+    void cleanUp() {
+        jdbc.update("DELETE FROM books WHERE author = ?", AUTHOR);
+    }
+
+    @Test
+    void concurrentFindOrCreate_yieldsOneRowPerTitle_andOneCreatedEvent() throws Exception {
+        List<BookCreatedEvent> created = new CopyOnWriteArrayList<>();
+        BookService bookService = new BookService(bookRepository, event -> created.add((BookCreatedEvent) event));
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                String title = "Title " + round;
+                CountDownLatch start = new CountDownLatch(1);
+                AtomicInteger failures = new AtomicInteger();
+                List<Future<Long>> ids = new CopyOnWriteArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    ids.add(pool.submit(() -> {
+                        start.await();
+                        try {
+                            Book book = tx.execute(status -> bookService.findOrCreate(title, AUTHOR, null));
+                            return book.getId();
+                        } catch (RuntimeException ex) {
+                            failures.incrementAndGet();
+                            throw ex;
+                        }
+                    }));
+                }
+                start.countDown();
+                Long first = ids.get(0).get(30, TimeUnit.SECONDS);
+                for (Future<Long> id : ids) assertThat(id.get(30, TimeUnit.SECONDS)).isEqualTo(first);
+                assertThat(failures).hasValue(0);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM books WHERE author = ?", Integer.class, AUTHOR))
+                .isEqualTo(ROUNDS);
+        assertThat(created).hasSize(ROUNDS);
+    }
+
+    static boolean postgresAvailable() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yml"));
+        Properties props = yaml.getObject();
+        if (props == null) return false;
+        try (Connection ignored = DriverManager.getConnection(props.getProperty("spring.datasource.url"),
+                props.getProperty("spring.datasource.username"), props.getProperty("spring.datasource.password"))) {
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.bookex.repository;
+
+import com.example.bookex.entity.Book;
+import com.example.bookex.entity.BookListing;
+import com.example.bookex.entity.SwapRequest;
+import com.example.bookex.entity.User;
+import com.example.bookex.entity.enums.Condition;
+import com.example.bookex.entity.enums.Role;
+import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.event.SwapChangedEvent;
+import com.example.bookex.service.SwapCycleMatcher;
+import com.example.bookex.service.SwapService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Races owner responses from many threads against H2 (the transitions are portable JPQL updates),
+ * with real commits so the conditional UPDATEs actually contend on row locks.
+ */
+@DataJpaTest(properties = {
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SwapTransitionConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 10;
+
+    @Autowired UserRepository userRepository;
+    @Autowired BookRepository bookRepository;
+    @Autowired BookListingRepository bookListingRepository;
+    @Autowired SwapRequestRepository swapRequestRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+    private SwapService swapService;
+    private final List<SwapChangedEvent> swapEvents = new CopyOnWriteArrayList<>();
+    private User owner;
+    private List<User> requesters;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        swapService = new SwapService(swapRequestRepository, bookListingRepository, event -> {
+            if (event instanceof SwapChangedEvent changed) swapEvents.add(changed);
+        }, mock(SwapCycleMatcher.class));
+        owner = userRepository.save(user("owner"));
+        requesters = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) requesters.add(userRepository.save(user("requester" + i)));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        swapRequestRepository.deleteAll();
+        bookListingRepository.deleteAll();
+        bookRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentAccepts_onOneListing_leaveOneAccepted_andDeclineTheRest() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                BookListing listing = listing("accept " + round);
+                List<Long> swapIds = requesters.stream().map(r -> pendingSwap(listing, r).getId()).toList();
+                swapEvents.clear();
+
+                List<Boolean> outcomes = race(pool, swapIds.stream()
+                        .map(id -> (Runnable) () -> swapService.ownerRespond(owner, id, true)).toList());
+
+                Map<SwapStatus, Long> statuses = swapRequestRepository.findAllById(swapIds).stream()
+                        .collect(Collectors.groupingBy(SwapRequest::getStatus, Collectors.counting()));
+                assertThat(outcomes).filteredOn(ok -> ok).hasSize(1);
+                assertThat(statuses).containsEntry(SwapStatus.ACCEPTED, 1L)
+                        .containsEntry(SwapStatus.DECLINED, (long) THREADS - 1).hasSize(2);
+                assertThat(bookListingRepository.findById(listing.getId()).orElseThrow().isAvailable()).isFalse();
+                // every auto-declined requester gets an event (losers fail before publishing anything)
+                assertThat(swapEvents).filteredOn(e -> e.status() == SwapStatus.DECLINED).hasSize(THREADS - 1)
+                        .extracting(SwapChangedEvent::swapId).doesNotHaveDuplicates();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentAcceptAndDecline_onOneSwap_haveExactlyOneWinner() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                BookListing listing = listing("respond " + round);
+                Long swapId = pendingSwap(listing, requesters.get(0)).getId();
+
+                List<Runnable> responses = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    boolean accept = t % 2 == 0;
+                    responses.add(() -> swapService.ownerRespond(owner, swapId, accept));
+                }
+                List<Boolean> outcomes = race(pool, responses);
+
+                SwapStatus status = swapRequestRepository.findById(swapId).orElseThrow().getStatus();
+                boolean available = bookListingRepository.findById(listing.getId()).orElseThrow().isAvailable();
+                assertThat(outcomes).filteredOn(ok -> ok).hasSize(1);
+                assertThat(status).isIn(SwapStatus.ACCEPTED, SwapStatus.DECLINED);
+                assertThat(available).isEqualTo(status == SwapStatus.DECLINED);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Releases all actions at once, each in its own transaction; true where the action committed. */
+    private List<Boolean> race(ExecutorService pool, List<Runnable> actions) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (Runnable action : actions) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    tx.executeWithoutResult(status -> action.run());
+                    return true;
+                } catch (RuntimeException ex) {
+                    return false; // lost the race: conflict, or a lock / optimistic failure surfaced by the database
+                }
+            }));
+        }
+        start.countDown();
+        List<Boolean> outcomes = new ArrayList<>();
+        for (Future<Boolean> future : futures) outcomes.add(future.get(30, TimeUnit.SECONDS));
+        return outcomes;
+    }
+
+    private BookListing listing(String title) {
+        Book book = bookRepository.save(Book.builder().title(title).author("swap concurrency test").build());
+        return bookListingRepository.save(BookListing.builder()
+                .user(owner).book(book).condition(Condition.GOOD).available(true).build());
+    }
+
+    private SwapRequest pendingSwap(BookListing listing, User requester) {
+        return swapRequestRepository.save(SwapRequest.builder()
+                .listing(listing).user(requester).status(SwapStatus.PENDING).build());
+    }
+
+    private static User user(String name) {
+        return User.builder().username(name).email(name + "@example.com").password("x").role(Role.USER).build();
+    }
+}
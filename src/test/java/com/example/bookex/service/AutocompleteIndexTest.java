@@ -0,0 +1,62 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.book.BookSuggestionDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AutocompleteIndexTest {
+
+    private static final byte T = AutocompleteIndex.TITLE;
+    private static final byte A = AutocompleteIndex.AUTHOR;
+
+    @Test
+    void suggest_matchesWordStarts_andRanksWholeTermPrefixesFirst() {
+        AutocompleteIndex index = AutocompleteIndex.empty()
+                .with(List.of("the hobbit", "j.r.r. tolkien", "hobbit tales", "frank herbert"), new byte[]{T, A, T, A});
+
+        assertThat(index.suggest("hob", 10)).extracting(BookSuggestionDto::getText)
+                .containsExactly("hobbit tales", "the hobbit");
+        assertThat(index.suggest("tolk", 10)).containsExactly(new BookSuggestionDto("j.r.r. tolkien", "author"));
+        assertThat(index.suggest("zzz", 10)).isEmpty();
+    }
+
+    @Test
+    void with_isIncremental_andSkipsExistingTerms() {
+        AutocompleteIndex first = AutocompleteIndex.empty().with(List.of("dune", "frank herbert"), new byte[]{T, A});
+        AutocompleteIndex same = first.with(List.of("dune"), new byte[]{T});
+        AutocompleteIndex second = first.with(List.of("dune messiah", "frank herbert"), new byte[]{T, A});
+
+        assertThat(same).isSameAs(first);
+        assertThat(second.size()).isEqualTo(3);
+        assertThat(second.suggest("dun", 5)).extracting(BookSuggestionDto::getText).containsExactly("dune", "dune messiah");
+        assertThat(first.suggest("dun", 5)).hasSize(1); // old snapshot untouched
+        assertThat(second.contains("frank herbert", A)).isTrue();
+        assertThat(second.contains("frank herbert", T)).isFalse();
+    }
+
+    @Test
+    void merge_ranksSuggestionsOfTwoIndexesTogether_andWithFoldsOneIntoTheOther() {
+        AutocompleteIndex base = AutocompleteIndex.empty().with(List.of("the dune chronicles", "dune messiah"), new byte[]{T, T});
+        AutocompleteIndex delta = AutocompleteIndex.empty().with(List.of("dune", "dunes of mars"), new byte[]{T, T});
+
+        assertThat(AutocompleteIndex.merge("dun", 3, base.suggest("dun", 3), delta.suggest("dun", 3)))
+                .extracting(BookSuggestionDto::getText).containsExactly("dune", "dune messiah", "dunes of mars");
+        AutocompleteIndex merged = base.with(delta);
+        assertThat(merged.size()).isEqualTo(4);
+        assertThat(merged.suggest("dun", 3)).extracting(BookSuggestionDto::getText)
+                .containsExactly("dune", "dune messiah", "dunes of mars");
+    }
+
+    @Test
+    void suggest_respectsLimit_overManyTerms() {
+        List<String> terms = new java.util.ArrayList<>();
+        for (int i = 0; i < 5_000; i++) terms.add("book " + i);
+        AutocompleteIndex index = AutocompleteIndex.empty().with(terms, new byte[terms.size()]);
+
+        assertThat(index.suggest("book 12", 3)).extracting(BookSuggestionDto::getText)
+                .containsExactly("book 12", "book 120", "book 121");
+    }
+}
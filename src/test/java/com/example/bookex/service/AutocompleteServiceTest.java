@@ -0,0 +1,53 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.book.BookSuggestionDto;
+import com.example.bookex.event.BookCreatedEvent;
+import com.example.bookex.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AutocompleteServiceTest {
+
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private AutocompleteService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new AutocompleteService(bookRepository);
+        ReflectionTestUtils.setField(service, "minPrefix", 2);
+        ReflectionTestUtils.setField(service, "maxResults", 10);
+        ReflectionTestUtils.setField(service, "deltaMax", 4);
+        when(bookRepository.streamTitlesAndAuthors()).thenReturn(Stream.<Object[]>of(new Object[]{"dune", "frank herbert"}));
+        service.load();
+    }
+
+    @Test
+    void onBookCreated_goesToTheDelta_andIsSuggestedAlongsideTheLoadedTerms() {
+        service.onBookCreated(new BookCreatedEvent(2L, "dune messiah", "frank herbert"));
+
+        assertThat(service.pendingTerms()).isEqualTo(1); // the author is already indexed
+        assertThat(service.suggest("dun", 10)).extracting(BookSuggestionDto::getText).containsExactly("dune", "dune messiah");
+
+        service.mergeDelta();
+
+        assertThat(service.pendingTerms()).isZero();
+        assertThat(service.suggest("dun", 10)).extracting(BookSuggestionDto::getText).containsExactly("dune", "dune messiah");
+    }
+
+    @Test
+    void onBookCreated_mergesAtOnce_whenTheDeltaIsFull() {
+        service.onBookCreated(new BookCreatedEvent(2L, "children of dune", "brian herbert"));
+        service.onBookCreated(new BookCreatedEvent(3L, "dune messiah", "kevin j. anderson"));
+
+        assertThat(service.pendingTerms()).isZero();
+        assertThat(service.suggest("herb", 10)).extracting(BookSuggestionDto::getText)
+                .containsExactly("brian herbert", "frank herbert");
+    }
+}
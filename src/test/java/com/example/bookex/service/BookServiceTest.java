@@ -1,13 +1,15 @@
 package com.example.bookex.service;
 
 import com.example.bookex.entity.Book;
+import com.example.bookex.event.BookCreatedEvent;
 import com.example.bookex.repository.BookRepository;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 class BookServiceTest {
@@ -15,49 +17,77 @@ class BookServiceTest {
     @Test
     void findOrCreate_createsNew_whenNotExists_andNormalizes() {
         BookRepository bookRepository = mock(BookRepository.class);
-        when(bookRepository.findByTitleAndAuthor("the hobbit", "j.r.r. tolkien")).thenReturn(Optional.empty());
-        when(bookRepository.save(any(Book.class))).thenAnswer(inv -> {
-            Book book = inv.getArgument(0);
-            book.setId(1L);
-            return book;
-        });
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        BookRepository.BookRow inserted = row(1L, "the hobbit", "j.r.r. tolkien", "9780261103344");
+        when(bookRepository.insertIfAbsent("the hobbit", "j.r.r. tolkien", "9780261103344")).thenReturn(Optional.of(inserted));
 
-        BookService bookService = new BookService(bookRepository);
+        BookService bookService = new BookService(bookRepository, events);
 
         Book book = bookService.findOrCreate("  The Hobbit  ", "  J.R.R. Tolkien ", " 9780261103344 ");
 
-        ArgumentCaptor<Book> captor = ArgumentCaptor.forClass(Book.class);
-        verify(bookRepository).save(captor.capture());
-        Book saved = captor.getValue();
-
         assertThat(book.getId()).isEqualTo(1L);
-        assertThat(saved.getTitle()).isEqualTo("the hobbit");
-        assertThat(saved.getAuthor()).isEqualTo("j.r.r. tolkien");
-        assertThat(saved.getIsbn()).isEqualTo("9780261103344");
+        assertThat(book.getTitle()).isEqualTo("the hobbit");
+        assertThat(book.getAuthor()).isEqualTo("j.r.r. tolkien");
+        assertThat(book.getIsbn()).isEqualTo("9780261103344");
+        verify(events).publishEvent(new BookCreatedEvent(1L, "the hobbit", "j.r.r. tolkien"));
     }
 
     @Test
     void findOrCreate_returnsExisting_whenFound() {
         BookRepository bookRepository = mock(BookRepository.class);
-        Book existingBook = Book.builder().id(42L).title("dune").author("frank herbert").isbn("9780441172719").build();
-        when(bookRepository.findByTitleAndAuthor("dune", "frank herbert")).thenReturn(Optional.of(existingBook));
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        BookRepository.BookRow existing = row(42L, "dune", "frank herbert", "9780441172719");
+        when(bookRepository.findRow("dune", "frank herbert")).thenReturn(Optional.of(existing));
 
-        BookService bookService = new BookService(bookRepository);
+        BookService bookService = new BookService(bookRepository, events);
         Book book = bookService.findOrCreate("Dune", "Frank Herbert", "9780441172719");
 
         assertThat(book.getId()).isEqualTo(42L);
-        verify(bookRepository, never()).save(any());
+        verify(bookRepository, never()).insertIfAbsent(any(), any(), any());
+        verifyNoInteractions(events);
+    }
+
+    @Test
+    void findOrCreate_readsTheWinnersRow_whenAConcurrentInsertWins() {
+        BookRepository bookRepository = mock(BookRepository.class);
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        BookRepository.BookRow winner = row(7L, "dune", "frank herbert", null);
+        when(bookRepository.findRow("dune", "frank herbert")).thenReturn(Optional.empty(), Optional.of(winner));
+        when(bookRepository.insertIfAbsent("dune", "frank herbert", null)).thenReturn(Optional.empty());
+
+        Book book = new BookService(bookRepository, events).findOrCreate("Dune", "Frank Herbert", null);
+
+        assertThat(book.getId()).isEqualTo(7L);
+        verifyNoInteractions(events);
     }
 
     @Test
     void findOrCreate_allowsNullOrBlankIsbn() {
         BookRepository bookRepository = mock(BookRepository.class);
-        when(bookRepository.findByTitleAndAuthor("1984", "george orwell")).thenReturn(Optional.empty());
-        when(bookRepository.save(any(Book.class))).thenAnswer(inv -> inv.getArgument(0));
+        BookRepository.BookRow inserted = row(3L, "1984", "george orwell", null);
+        when(bookRepository.insertIfAbsent("1984", "george orwell", null)).thenReturn(Optional.of(inserted));
 
-        BookService bookService = new BookService(bookRepository);
+        BookService bookService = new BookService(bookRepository, mock(ApplicationEventPublisher.class));
         Book book = bookService.findOrCreate("1984", "George Orwell", "  ");
 
         assertThat(book.getIsbn()).isNull();
     }
+
+    @Test
+    void findOrCreate_rejectsBlankTitle_beforeTouchingTheDatabase() {
+        BookRepository bookRepository = mock(BookRepository.class);
+        BookService bookService = new BookService(bookRepository, mock(ApplicationEventPublisher.class));
+
+        assertThatThrownBy(() -> bookService.findOrCreate("  ", "someone", null)).isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(bookRepository);
+    }
+
+    private static BookRepository.BookRow row(Long id, String title, String author, String isbn) {
+        BookRepository.BookRow row = mock(BookRepository.BookRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getTitle()).thenReturn(title);
+        when(row.getAuthor()).thenReturn(author);
+        when(row.getIsbn()).thenReturn(isbn);
+        return row;
+    }
 }
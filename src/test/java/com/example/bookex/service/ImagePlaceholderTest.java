@@ -0,0 +1,55 @@
+package com.example.bookex.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImagePlaceholderTest {
+
+    @Test
+    void of_plainImage_isAJpegDataUri_thatFitsTheColumn() throws Exception {
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, 300, 200);
+        g.dispose();
+
+        String uri = ImagePlaceholder.of(image);
+
+        assertThat(uri).startsWith(ImagePlaceholder.PREFIX).hasSizeLessThanOrEqualTo(ImagePlaceholder.MAX_LENGTH);
+        BufferedImage decoded = decode(uri);
+        assertThat(decoded.getWidth()).isEqualTo(ImagePlaceholder.SIZE);
+        assertThat(decoded.getHeight()).isEqualTo(11);
+    }
+
+    @Test
+    void of_noise_stillFitsTheColumn() throws Exception {
+        // random colours over a black and white checkerboard: 1031 characters at the first quality tried
+        Random random = new Random(3);
+        BufferedImage noise = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                int checker = (x + y) % 2 == 0 ? 0xFFFFFF : 0;
+                noise.setRGB(x, y, random.nextBoolean() ? random.nextInt(0x1000000) : checker);
+            }
+        }
+
+        String uri = ImagePlaceholder.of(noise);
+
+        assertThat(uri).startsWith(ImagePlaceholder.PREFIX).hasSizeLessThanOrEqualTo(ImagePlaceholder.MAX_LENGTH);
+        assertThat(decode(uri).getWidth()).isEqualTo(ImagePlaceholder.SIZE);
+    }
+
+    private static BufferedImage decode(String uri) throws Exception {
+        byte[] jpeg = Base64.getDecoder().decode(uri.substring(ImagePlaceholder.PREFIX.length()));
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+}
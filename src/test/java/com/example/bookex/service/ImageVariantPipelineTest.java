@@ -0,0 +1,142 @@
+package com.example.bookex.service;
+
+import com.example.bookex.entity.BookImage;
+import com.example.bookex.entity.BookImageId;
+import com.example.bookex.entity.BookImageVariant;
+import com.example.bookex.event.ImageStoredEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ImageVariantPipelineTest {
+
+    @TempDir
+    Path uploads;
+
+    private final ImageVariantService imageVariantService = mock(ImageVariantService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void storedJpeg_getsOneVariantPerNarrowerWidth_nextToTheOriginal() throws Exception {
+        write("listings/11/1-abc.jpg", new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "jpeg");
+        when(imageVariantService.recordVariants(eq(11L), eq((short) 1), anyList())).thenReturn(true);
+
+        pipeline(Runnable::run).onImageStored(new ImageStoredEvent(11L, (short) 1, "/uploads/listings/11/1-abc.jpg"));
+
+        ArgumentCaptor<List<BookImageVariant>> rows = ArgumentCaptor.forClass(List.class);
+        verify(imageVariantService).recordVariants(eq(11L), eq((short) 1), rows.capture());
+        assertThat(rows.getValue()).extracting(v -> v.getId().getWidth()).containsExactly((short) 160, (short) 320, (short) 640);
+        assertThat(rows.getValue()).extracting(BookImageVariant::getHeight).containsExactly((short) 120, (short) 240, (short) 480);
+        assertThat(rows.getValue().get(1).getPath()).isEqualTo("/uploads/listings/11/1-abc-w320.jpg");
+
+        BufferedImage medium = ImageIO.read(uploads.resolve("listings/11/1-abc-w320.jpg").toFile());
+        assertThat(medium.getWidth()).isEqualTo(320);
+        assertThat(medium.getHeight()).isEqualTo(240);
+        assertThat(meterRegistry.counter("bookex.images.variants", "result", "ok").count()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void smallPng_isReencodedOnce_atItsOwnWidth() throws Exception {
+        write("listings/12/1-abc.png", new BufferedImage(100, 80, BufferedImage.TYPE_INT_ARGB), "png");
+        when(imageVariantService.recordVariants(anyLong(), anyShort(), anyList())).thenReturn(true);
+
+        pipeline(Runnable::run).onImageStored(new ImageStoredEvent(12L, (short) 1, "/uploads/listings/12/1-abc.png"));
+
+        ArgumentCaptor<List<BookImageVariant>> rows = ArgumentCaptor.forClass(List.class);
+        verify(imageVariantService).recordVariants(eq(12L), eq((short) 1), rows.capture());
+        assertThat(rows.getValue()).singleElement().satisfies(v -> assertThat(v.getId().getWidth()).isEqualTo((short) 100));
+        assertThat(ImageIO.read(uploads.resolve("listings/12/1-abc-w100.png").toFile()).getColorModel().hasAlpha()).isTrue();
+    }
+
+    @Test
+    void unreadableImage_countsAFailure_andLeavesNoFiles() throws Exception {
+        Path original = uploads.resolve("listings/13/1-abc.jpg");
+        Files.createDirectories(original.getParent());
+        Files.write(original, new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 1, 2, 3});
+
+        pipeline(Runnable::run).onImageStored(new ImageStoredEvent(13L, (short) 1, "/uploads/listings/13/1-abc.jpg"));
+
+        verify(imageVariantService).recordFailure(13L, (short) 1);
+        verify(imageVariantService, never()).recordVariants(anyLong(), anyShort(), anyList());
+        try (var files = Files.list(original.getParent())) {
+            assertThat(files).containsExactly(original);
+        }
+        assertThat(meterRegistry.counter("bookex.images.variants", "result", "failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void imageDeletedWhileResizing_removesTheVariantFiles() throws Exception {
+        write("listings/14/1-abc.jpg", new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB), "jpeg");
+        when(imageVariantService.recordVariants(anyLong(), anyShort(), anyList())).thenReturn(false);
+
+        pipeline(Runnable::run).onImageStored(new ImageStoredEvent(14L, (short) 1, "/uploads/listings/14/1-abc.jpg"));
+
+        try (var files = Files.list(uploads.resolve("listings/14"))) {
+            assertThat(files).extracting(p -> p.getFileName().toString()).containsExactly("1-abc.jpg");
+        }
+    }
+
+    @Test
+    void sharedBlob_withVariantsFromAnotherImage_isNotResizedAgain() {
+        when(imageVariantService.reuseVariants(16L, (short) 1, "/uploads/blobs/abc.jpg")).thenReturn(true);
+
+        pipeline(Runnable::run).onImageStored(new ImageStoredEvent(16L, (short) 1, "/uploads/blobs/abc.jpg"));
+
+        verify(imageVariantService, never()).recordVariants(anyLong(), anyShort(), anyList());
+        verify(imageVariantService, never()).recordFailure(anyLong(), anyShort()); // the file was never read
+        assertThat(meterRegistry.counter("bookex.images.variants", "result", "reused").count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueue_leavesTheImageToTheRetrySweep() throws Exception {
+        write("listings/15/1-abc.jpg", new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB), "jpeg");
+        List<Runnable> queued = new ArrayList<>();
+        boolean[] full = {true};
+        ImageVariantPipeline pipeline = pipeline(task -> {
+            if (full[0]) throw new RejectedExecutionException("full");
+            queued.add(task);
+        });
+
+        pipeline.onImageStored(new ImageStoredEvent(15L, (short) 1, "/uploads/listings/15/1-abc.jpg"));
+        assertThat(pipeline.backlog()).isZero();
+
+        full[0] = false;
+        BookImage image = BookImage.builder().id(new BookImageId(15L, (short) 1)).path("/uploads/listings/15/1-abc.jpg").build();
+        when(imageVariantService.backlog(eq((short) 5), any(), anyInt())).thenReturn(List.of(image));
+        pipeline.retryBacklog();
+        pipeline.retryBacklog(); // already queued: not submitted twice
+
+        assertThat(queued).hasSize(1);
+        assertThat(meterRegistry.get("bookex.images.variants.backlog").gauge().value()).isEqualTo(1);
+        queued.get(0).run();
+        assertThat(pipeline.backlog()).isZero();
+    }
+
+    private ImageVariantPipeline pipeline(Executor executor) {
+        return new ImageVariantPipeline(imageVariantService, meterRegistry, new UploadLayout(uploads.toString()), new int[]{160, 320, 640},
+                40_000_000, 0.8f, (short) 5, Duration.ofMinutes(2), 100, executor);
+    }
+
+    private void write(String relative, BufferedImage image, String format) throws Exception {
+        Path file = uploads.resolve(relative);
+        Files.createDirectories(file.getParent());
+        ImageIO.write(image, format, file.toFile());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.listing.ListingCardDto;
+import com.example.bookex.entity.BookImage;
+import com.example.bookex.entity.BookImageId;
+import com.example.bookex.entity.BookImageVariant;
+import com.example.bookex.entity.BookImageVariantId;
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.repository.BookImageRepository;
+import com.example.bookex.repository.BookImageVariantRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ImageVariantServiceTest {
+
+    @Test
+    void attachCovers_usesSmallestVariantThatFillsTheCard_andListsAllInSrcset() {
+        BookImageVariantRepository variants = mock(BookImageVariantRepository.class);
+        when(variants.findCovers(List.of(1L, 2L, 3L))).thenReturn(List.of(
+                variant(1L, 120), variant(1L, 160), variant(1L, 320),
+                variant(2L, 100))); // narrower than the card: best there is
+        ImageVariantService service = new ImageVariantService(mock(BookImageRepository.class), variants,
+                mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(service, "cardWidth", 160);
+        List<ListingCardDto> cards = List.of(card(1L), card(2L), card(3L));
+
+        service.attachCovers(cards);
+
+        assertThat(cards.get(0).getCoverUrl()).isEqualTo("/uploads/listings/1/1-x-w160.jpg");
+        assertThat(cards.get(0).getCoverSrcset()).isEqualTo(
+                "/uploads/listings/1/1-x-w120.jpg 120w, /uploads/listings/1/1-x-w160.jpg 160w, /uploads/listings/1/1-x-w320.jpg 320w");
+        assertThat(cards.get(1).getCoverWidth()).isEqualTo(100);
+        assertThat(cards.get(2).getCoverUrl()).isNull();
+    }
+
+    @Test
+    void attachCovers_paintsThePlaceholderOfTheCoverImage_orOfTheFirstImageWhileNoneIsProcessed() {
+        BookImageRepository images = mock(BookImageRepository.class);
+        BookImageVariantRepository variants = mock(BookImageVariantRepository.class);
+        when(variants.findCovers(List.of(1L, 2L))).thenReturn(List.of(
+                BookImageVariant.builder().id(new BookImageVariantId(1L, (short) 2, (short) 160)).height((short) 200)
+                        .path("/uploads/listings/1/2-x-w160.jpg").build()));
+        when(images.findCoverPlaceholders(List.of(1L, 2L))).thenReturn(List.of(
+                image(1L, 1, "data:image/jpeg;base64,AAA"), image(1L, 2, "data:image/jpeg;base64,BBB"),
+                image(2L, 1, "data:image/jpeg;base64,CCC")));
+        ImageVariantService service = new ImageVariantService(images, variants, mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(service, "cardWidth", 160);
+        List<ListingCardDto> cards = List.of(card(1L), card(2L));
+
+        service.attachCovers(cards);
+
+        assertThat(cards.get(0).getCoverPlaceholder()).isEqualTo("data:image/jpeg;base64,BBB");
+        assertThat(cards.get(1).getCoverUrl()).isNull();
+        assertThat(cards.get(1).getCoverPlaceholder()).isEqualTo("data:image/jpeg;base64,CCC");
+    }
+
+    @Test
+    void recordVariants_skipsRows_whenTheImageIsGone() {
+        BookImageRepository images = mock(BookImageRepository.class);
+        BookImageVariantRepository variants = mock(BookImageVariantRepository.class);
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        ImageVariantService service = new ImageVariantService(images, variants, events);
+        when(images.markVariantsReady(1L, (short) 1)).thenReturn(0);
+        when(images.markVariantsReady(2L, (short) 1)).thenReturn(1);
+
+        assertThat(service.recordVariants(1L, (short) 1, List.of(variant(1L, 160)))).isFalse();
+        assertThat(service.recordVariants(2L, (short) 1, List.of(variant(2L, 160)))).isTrue();
+
+        verify(variants, times(1)).saveAll(any());
+        verify(events).publishEvent(new ListingChangedEvent(2L));
+    }
+
+    private static BookImageVariant variant(Long listingId, int width) {
+        return BookImageVariant.builder()
+                .id(new BookImageVariantId(listingId, (short) 1, (short) width))
+                .height((short) (width * 5 / 4))
+                .path("/uploads/listings/" + listingId + "/1-x-w" + width + ".jpg")
+                .build();
+    }
+
+    private static BookImage image(Long listingId, int imageNo, String placeholder) {
+        return BookImage.builder().id(new BookImageId(listingId, (short) imageNo)).placeholder(placeholder).build();
+    }
+
+    private static ListingCardDto card(Long id) {
+        return ListingCardDto.builder().id(id).build();
+    }
+}
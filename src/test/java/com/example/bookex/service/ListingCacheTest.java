@@ -0,0 +1,93 @@
+package com.example.bookex.service;
+
+import com.example.bookex.config.CacheConfig;
+import com.example.bookex.dto.listing.BrowseSort;
+import com.example.bookex.dto.rating.RatingAverageRow;
+import com.example.bookex.entity.Book;
+import com.example.bookex.entity.BookListing;
+import com.example.bookex.entity.User;
+import com.example.bookex.entity.enums.Condition;
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.event.RatingChangedEvent;
+import com.example.bookex.repository.BookImageRepository;
+import com.example.bookex.repository.BookListingRepository;
+import com.example.bookex.repository.ImageBlobRepository;
+import com.example.bookex.repository.BookRatingStatsRepository;
+import com.example.bookex.repository.BookRepository;
+import com.example.bookex.repository.RatingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/** Checks the cache wiring end to end: reads are served from cache until a change event evicts them. */
+@SpringBootTest(classes = {CacheConfig.class, ListingService.class, RatingService.class, CacheInvalidationListener.class})
+class ListingCacheTest {
+
+    @MockBean BookService bookService;
+    @MockBean BookListingRepository bookListingRepository;
+    @MockBean BookImageRepository bookImageRepository;
+    @MockBean ImageBlobRepository imageBlobRepository;
+    @MockBean RatingRepository ratingRepository;
+    @MockBean BookRepository bookRepository;
+    @MockBean BookRatingStatsRepository bookRatingStatsRepository;
+    @MockBean ImageVariantService imageVariantService;
+
+    @Autowired ListingService listingService;
+    @Autowired RatingService ratingService;
+    @Autowired ApplicationEventPublisher events;
+    @Autowired CacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        Book book = Book.builder().id(7L).title("dune").author("frank herbert").build();
+        BookListing listing = BookListing.builder().id(1L).book(book).user(User.builder().id(2L).username("u").build())
+                .condition(Condition.GOOD).available(true).images(List.of()).build();
+        when(bookListingRepository.findDetailById(1L)).thenReturn(Optional.of(listing));
+        when(bookListingRepository.findDetailById(3L)).thenReturn(Optional.of(listing));
+        when(bookListingRepository.findNewest(any())).thenReturn(List.of());
+        when(bookRatingStatsRepository.findTotals(7L)).thenReturn(Optional.of(new RatingAverageRow(0, 0L, 0L, 0L)));
+    }
+
+    @Test
+    void listingChange_evictsThatDetail_andAllBrowsePages() {
+        listingService.getListingDetail(1L);
+        listingService.getListingDetail(1L);
+        listingService.getListingDetail(3L);
+        listingService.browsePublic(BrowseSort.NEWEST, null, null);
+        listingService.browsePublic(BrowseSort.NEWEST, null, null);
+        verify(bookListingRepository, times(1)).findDetailById(1L);
+        verify(bookListingRepository, times(1)).findNewest(any());
+
+        events.publishEvent(new ListingChangedEvent(1L));
+        listingService.getListingDetail(1L);
+        listingService.getListingDetail(3L);
+        listingService.browsePublic(BrowseSort.NEWEST, null, null);
+
+        verify(bookListingRepository, times(2)).findDetailById(1L);
+        verify(bookListingRepository, times(1)).findDetailById(3L);
+        verify(bookListingRepository, times(2)).findNewest(any());
+    }
+
+    @Test
+    void ratingChange_evictsAveragesOfThatBook() {
+        ratingService.getAverages(7L);
+        ratingService.getAverages(7L);
+        verify(bookRatingStatsRepository, times(1)).findTotals(7L);
+
+        events.publishEvent(new RatingChangedEvent(7L));
+        ratingService.getAverages(7L);
+
+        verify(bookRatingStatsRepository, times(2)).findTotals(7L);
+    }
+}
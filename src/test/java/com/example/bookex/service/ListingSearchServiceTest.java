@@ -0,0 +1,53 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.listing.ListingCardRow;
+import com.example.bookex.dto.listing.ListingPageDto;
+import com.example.bookex.entity.enums.Condition;
+import com.example.bookex.repository.BookListingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ListingSearchServiceTest {
+
+    @Test
+    void search_keepsRankOrder_andPagesByNumber() {
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        ListingSearchService listingSearchService = service(bookListingRepository);
+
+        when(bookListingRepository.searchIds("dune", 3, 2)).thenReturn(List.of(9L, 4L, 7L));
+        // card query returns rows in arbitrary order
+        when(bookListingRepository.findCardsByIds(List.of(9L, 4L))).thenReturn(List.of(row(4L), row(9L)));
+
+        ListingPageDto page = listingSearchService.search("  dune ", 1);
+
+        assertThat(page.getItems()).extracting("id").containsExactly(9L, 4L);
+        assertThat(page.getNextCursor()).isEqualTo("2");
+        assertThat(page.getPrevCursor()).isEqualTo("0");
+    }
+
+    @Test
+    void search_rejectsBlankQuery_andDeepPages() {
+        ListingSearchService listingSearchService = service(mock(BookListingRepository.class));
+
+        assertThatThrownBy(() -> listingSearchService.search("  ", 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> listingSearchService.search("dune", 50)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ListingSearchService service(BookListingRepository bookListingRepository) {
+        ListingSearchService listingSearchService = new ListingSearchService(bookListingRepository, mock(ImageVariantService.class));
+        ReflectionTestUtils.setField(listingSearchService, "pageSize", 2);
+        ReflectionTestUtils.setField(listingSearchService, "maxPages", 20);
+        return listingSearchService;
+    }
+
+    private static ListingCardRow row(long id) {
+        return new ListingCardRow(id, Instant.EPOCH, id, "dune", "frank herbert", null,
+                1L, "owner", false, null, null, null, Condition.GOOD, true);
+    }
+}
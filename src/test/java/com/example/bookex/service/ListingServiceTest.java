@@ -1,17 +1,28 @@
 package com.example.bookex.service;
 
+import com.example.bookex.dto.listing.BrowseSort;
+import com.example.bookex.dto.listing.ListingCardRow;
 import com.example.bookex.dto.listing.ListingFormDto;
+import com.example.bookex.dto.listing.ListingPageDto;
 import com.example.bookex.entity.Book;
 import com.example.bookex.entity.BookListing;
 import com.example.bookex.entity.User;
 import com.example.bookex.entity.enums.Condition;
+import com.example.bookex.event.ListingChangedEvent;
 import com.example.bookex.exceptions.NotFoundException;
 import com.example.bookex.repository.BookImageRepository;
 import com.example.bookex.repository.BookListingRepository;
+import com.example.bookex.repository.ImageBlobRepository;
+import com.example.bookex.util.KeysetCursor;
 import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
@@ -22,8 +33,9 @@ class ListingServiceTest {
         BookService bookService = mock(BookService.class);
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
         BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
 
-        ListingService listingService = new ListingService(bookService, bookListingRepository, bookImageRepository);
+        ListingService listingService = new ListingService(bookService, bookListingRepository, bookImageRepository, mock(ImageBlobRepository.class), events, mock(ImageVariantService.class));
 
         User owner = User.builder().id(10L).build();
         Book book = Book.builder().id(7L).title("dune").author("frank herbert").build();
@@ -49,6 +61,7 @@ class ListingServiceTest {
         verify(bookService).findOrCreate("Dune", "Frank Herbert", "");
         verify(bookListingRepository).save(any(BookListing.class));
         verify(bookImageRepository).findByListingOrderByIdImageNoAsc(any());
+        verify(events).publishEvent(new ListingChangedEvent(100L));
     }
 
     @Test
@@ -57,7 +70,7 @@ class ListingServiceTest {
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
         BookImageRepository bookImageRepository = mock(BookImageRepository.class);
 
-        ListingService listingService = new ListingService(bookService, bookListingRepository, bookImageRepository);
+        ListingService listingService = new ListingService(bookService, bookListingRepository, bookImageRepository, mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class), mock(ImageVariantService.class));
         when(bookListingRepository.findById(999L)).thenReturn(Optional.empty());
 
         assertThatThrownBy(() -> listingService.updateListing(
@@ -72,10 +85,50 @@ class ListingServiceTest {
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
         BookImageRepository bookImageRepository = mock(BookImageRepository.class);
 
-        ListingService listingService = new ListingService(bookService, bookListingRepository, bookImageRepository);
-        when(bookListingRepository.findById(99L)).thenReturn(Optional.empty());
+        ListingService listingService = new ListingService(bookService, bookListingRepository, bookImageRepository, mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class), mock(ImageVariantService.class));
+        when(bookListingRepository.findByIdForUpdate(99L)).thenReturn(Optional.empty());
 
         assertThatThrownBy(() -> listingService.deleteListing(User.builder().id(1L).build(), 99L))
                 .isInstanceOf(NotFoundException.class);
     }
+
+    @Test
+    void browsePublic_firstPage_hasNextCursorOnly_whenMoreRowsExist() {
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        ListingService listingService = new ListingService(mock(BookService.class), bookListingRepository, mock(BookImageRepository.class), mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class), mock(ImageVariantService.class));
+        ReflectionTestUtils.setField(listingService, "pageSize", 2);
+
+        when(bookListingRepository.findNewest(any())).thenReturn(List.of(listing(3L), listing(2L), listing(1L)));
+
+        ListingPageDto page = listingService.browsePublic(BrowseSort.NEWEST, null, null);
+
+        assertThat(page.getItems()).extracting("id").containsExactly(3L, 2L);
+        assertThat(page.getPrevCursor()).isNull();
+        assertThat(KeysetCursor.decode(page.getNextCursor()).getId()).isEqualTo(2L);
+    }
+
+    @Test
+    void browsePublic_backward_reversesRows_andKeepsNextCursor() {
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        ListingService listingService = new ListingService(mock(BookService.class), bookListingRepository, mock(BookImageRepository.class), mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class), mock(ImageVariantService.class));
+        ReflectionTestUtils.setField(listingService, "pageSize", 2);
+
+        String before = new KeysetCursor(5L, Instant.parse("2024-01-05T00:00:00Z"), Condition.GOOD.name()).encode();
+        // GOOD bucket has one newer row, the rest comes from the tail of the NEW bucket
+        when(bookListingRepository.findByConditionBefore(eq(Condition.GOOD), any(), eq(5L), any()))
+                .thenReturn(List.of(listing(6L)));
+        when(bookListingRepository.findByConditionTail(eq(Condition.NEW), any()))
+                .thenReturn(List.of(listing(7L)));
+
+        ListingPageDto page = listingService.browsePublic(BrowseSort.CONDITION, null, before);
+
+        assertThat(page.getItems()).extracting("id").containsExactly(7L, 6L);
+        assertThat(page.getPrevCursor()).isNull();
+        assertThat(page.getNextCursor()).isNotNull();
+    }
+
+    private static ListingCardRow listing(long id) {
+        return new ListingCardRow(id, Instant.parse("2024-01-01T00:00:00Z").plusSeconds(id),
+                id, "t" + id, "a", null, 1L, "owner", false, null, null, null, Condition.GOOD, true);
+    }
 }
@@ -0,0 +1,47 @@
+package com.example.bookex.service;
+
+import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.event.SwapChangedEvent;
+import com.example.bookex.repository.SwapRequestRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class PendingSwapCounterTest {
+
+    @Test
+    void pendingFor_countsOnce_untilAPendingCountChanges() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        when(swapRequestRepository.countPendingForOwner(1L)).thenReturn(2L, 3L);
+        PendingSwapCounter counter = new PendingSwapCounter(swapRequestRepository, 100, Duration.ofMinutes(10));
+
+        assertThat(counter.pendingFor(1L)).isEqualTo(2);
+        counter.onSwapChanged(event(SwapStatus.ACCEPTED, SwapStatus.COMPLETED));
+        assertThat(counter.pendingFor(1L)).isEqualTo(2);
+        verify(swapRequestRepository, times(1)).countPendingForOwner(1L);
+
+        counter.onSwapChanged(event(null, SwapStatus.PENDING));
+
+        assertThat(counter.pendingFor(1L)).isEqualTo(3);
+        verify(swapRequestRepository, times(2)).countPendingForOwner(1L);
+    }
+
+    @Test
+    void onSwapChanged_neverAddsToACountThatAlreadyIncludesTheChange() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        when(swapRequestRepository.countPendingForOwner(1L)).thenReturn(3L); // taken after the commit below
+        PendingSwapCounter counter = new PendingSwapCounter(swapRequestRepository, 100, Duration.ofMinutes(10));
+
+        assertThat(counter.pendingFor(1L)).isEqualTo(3);
+        counter.onSwapChanged(event(null, SwapStatus.PENDING));
+
+        assertThat(counter.pendingFor(1L)).isEqualTo(3);
+    }
+
+    private static SwapChangedEvent event(SwapStatus previous, SwapStatus status) {
+        return new SwapChangedEvent(10L, 20L, 1L, 2L, previous, status);
+    }
+}
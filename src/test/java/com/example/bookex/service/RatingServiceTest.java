@@ -1,13 +1,16 @@
 package com.example.bookex.service;
 
 import com.example.bookex.dto.rating.RatingAverageDto;
+import com.example.bookex.dto.rating.RatingAverageRow;
 import com.example.bookex.entity.Book;
 import com.example.bookex.entity.Rating;
 import com.example.bookex.entity.User;
 import com.example.bookex.exceptions.NotFoundException;
+import com.example.bookex.repository.BookRatingStatsRepository;
 import com.example.bookex.repository.BookRepository;
 import com.example.bookex.repository.RatingRepository;
 import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.List;
 import java.util.Optional;
@@ -23,7 +26,7 @@ class RatingServiceTest {
         BookRepository bookRepository = mock(BookRepository.class);
         when(bookRepository.findById(1L)).thenReturn(Optional.of(Book.builder().id(1L).build()));
 
-        RatingService ratingService = new RatingService(ratingRepository, bookRepository);
+        RatingService ratingService = new RatingService(ratingRepository, bookRepository, mock(BookRatingStatsRepository.class), mock(ApplicationEventPublisher.class));
         User user = User.builder().id(5L).build();
 
         assertThatThrownBy(() -> ratingService.rate(user, 1L, 0, 3, 4)).isInstanceOf(IllegalArgumentException.class);
@@ -33,28 +36,82 @@ class RatingServiceTest {
 
     @Test
     void rate_throws_whenBookNotFound() {
-        RatingService ratingService = new RatingService(mock(RatingRepository.class), mock(BookRepository.class));
+        RatingService ratingService = new RatingService(mock(RatingRepository.class), mock(BookRepository.class), mock(BookRatingStatsRepository.class), mock(ApplicationEventPublisher.class));
         assertThatThrownBy(() -> ratingService.rate(User.builder().id(1L).build(), 999L, 3, 3, 3))
                 .isInstanceOf(NotFoundException.class);
     }
 
     @Test
-    void getAverages_computesRoundedAverages() {
+    void rate_newRating_addsOneToStats() {
+        BookRatingStatsRepository statsRepository = mock(BookRatingStatsRepository.class);
+        RatingService ratingService = ratingServiceFor(Optional.empty(), statsRepository);
+
+        RatingAverageDto result = ratingService.rate(User.builder().id(5L).build(), 1L, 2, 4, 5);
+
+        verify(statsRepository).applyDelta(1L, 1, 2, 4, 5);
+        assertThat(result.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rate_reRating_appliesOnlyTheDifference() {
+        BookRatingStatsRepository statsRepository = mock(BookRatingStatsRepository.class);
+        Rating previous = Rating.builder().difficulty((short) 3).emotion((short) 3).enjoyment((short) 5).build();
+        RatingService ratingService = ratingServiceFor(Optional.of(previous), statsRepository);
+
+        ratingService.rate(User.builder().id(5L).build(), 1L, 4, 1, 5);
+
+        verify(statsRepository).applyDelta(1L, 0, 1, -2, 0);
+        assertThat(previous.getEmotion()).isEqualTo((short) 1);
+    }
+
+    @Test
+    void getAverages_roundsStoredTotals() {
+        BookRatingStatsRepository statsRepository = mock(BookRatingStatsRepository.class);
         RatingRepository ratingRepository = mock(RatingRepository.class);
-        BookRepository bookRepository = mock(BookRepository.class);
-        Book book = Book.builder().id(3L).build();
-        when(bookRepository.findById(3L)).thenReturn(Optional.of(book));
-        when(ratingRepository.findByBook(book)).thenReturn(List.of(
-                Rating.builder().difficulty((short)3).emotion((short)4).enjoyment((short)5).build(),
-                Rating.builder().difficulty((short)4).emotion((short)2).enjoyment((short)4).build()
-        ));
+        when(statsRepository.findTotals(3L)).thenReturn(Optional.of(new RatingAverageRow(3, 10L, 8L, 14L)));
 
-        RatingService ratingService = new RatingService(ratingRepository, bookRepository);
+        RatingService ratingService = new RatingService(ratingRepository, mock(BookRepository.class), statsRepository, mock(ApplicationEventPublisher.class));
 
         RatingAverageDto ratingAverageDto = ratingService.getAverages(3L);
-        assertThat(ratingAverageDto.getDifficulty()).isEqualTo(3.5);
-        assertThat(ratingAverageDto.getEmotion()).isEqualTo(3.0);
-        assertThat(ratingAverageDto.getEnjoyment()).isEqualTo(4.5);
-        assertThat(ratingAverageDto.getCount()).isEqualTo(2);
+        assertThat(ratingAverageDto.getDifficulty()).isEqualTo(3.3);
+        assertThat(ratingAverageDto.getEmotion()).isEqualTo(2.7);
+        assertThat(ratingAverageDto.getEnjoyment()).isEqualTo(4.7);
+        assertThat(ratingAverageDto.getCount()).isEqualTo(3);
+        verifyNoInteractions(ratingRepository);
+    }
+
+    @Test
+    void getAverages_zeroWhenUnrated_andNotFoundForMissingBook() {
+        BookRatingStatsRepository statsRepository = mock(BookRatingStatsRepository.class);
+        when(statsRepository.findTotals(3L)).thenReturn(Optional.of(new RatingAverageRow(0, 0L, 0L, 0L)));
+        RatingService ratingService = new RatingService(mock(RatingRepository.class), mock(BookRepository.class), statsRepository, mock(ApplicationEventPublisher.class));
+
+        assertThat(ratingService.getAverages(3L).getCount()).isZero();
+        assertThatThrownBy(() -> ratingService.getAverages(4L)).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void rebuildStats_recountsOnlyDriftedBooks_eachAfterLockingItsRow() {
+        BookRatingStatsRepository statsRepository = mock(BookRatingStatsRepository.class);
+        when(statsRepository.findDrifted()).thenReturn(List.of(3L, 8L));
+        RatingService ratingService = new RatingService(mock(RatingRepository.class), mock(BookRepository.class), statsRepository, mock(ApplicationEventPublisher.class));
+
+        assertThat(ratingService.rebuildStats()).isEqualTo(2);
+
+        var order = inOrder(statsRepository);
+        for (Long bookId : List.of(3L, 8L)) {
+            order.verify(statsRepository).insertEmpty(bookId);
+            order.verify(statsRepository).lockRow(bookId);
+            order.verify(statsRepository).recount(bookId);
+        }
+    }
+
+    private static RatingService ratingServiceFor(Optional<Rating> existing, BookRatingStatsRepository statsRepository) {
+        RatingRepository ratingRepository = mock(RatingRepository.class);
+        BookRepository bookRepository = mock(BookRepository.class);
+        when(bookRepository.findById(1L)).thenReturn(Optional.of(Book.builder().id(1L).build()));
+        when(ratingRepository.findByUserAndBookForUpdate(any(), any())).thenReturn(existing);
+        when(statsRepository.findTotals(1L)).thenReturn(Optional.of(new RatingAverageRow(1, 2L, 4L, 5L)));
+        return new RatingService(ratingRepository, bookRepository, statsRepository, mock(ApplicationEventPublisher.class));
     }
 }
@@ -2,18 +2,45 @@ package com.example.bookex.service;
 
 import com.example.bookex.dto.listing.BookImageDto;
 import com.example.bookex.entity.BookImage;
+import com.example.bookex.entity.BookImageId;
 import com.example.bookex.entity.BookListing;
+import com.example.bookex.entity.ImageBlob;
 import com.example.bookex.entity.User;
+import com.example.bookex.event.ImageStoredEvent;
+import com.example.bookex.event.ListingChangedEvent;
 import com.example.bookex.repository.BookImageRepository;
+import com.example.bookex.repository.BookImageVariantRepository;
 import com.example.bookex.repository.BookListingRepository;
+import com.example.bookex.repository.ImageBlobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
 
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,10 +54,11 @@ class StorageServiceTest {
     void addImage_saves_whenValid_andWithinLimit() throws Exception {
         BookImageRepository bookImageRepository = mock(BookImageRepository.class);
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
-        StorageService service = new StorageService(bookImageRepository, bookListingRepository);
+        StorageService service = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
 
         ReflectionTestUtils.setField(service, "maxImages", 5);
-        ReflectionTestUtils.setField(service, "uploadDir", tempDir.toString());
 
         User owner = User.builder().id(1L).build();
         BookListing bookListing = BookListing.builder()
@@ -39,29 +67,196 @@ class StorageServiceTest {
                 .available(true)
                 .build();
 
-        when(bookListingRepository.findById(11L)).thenReturn(Optional.of(bookListing));
-        when(bookImageRepository.countByListing(bookListing)).thenReturn(0L);
-        when(bookImageRepository.findByListingOrderByIdImageNoAsc(bookListing)).thenReturn(List.of());
-        when(bookImageRepository.save(any(BookImage.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(bookListingRepository.findByIdForUpdate(11L)).thenReturn(Optional.of(bookListing));
+        when(bookImageRepository.findImageNos(11L)).thenReturn(List.of((short) 1, (short) 3));
 
-        MockMultipartFile file = new MockMultipartFile(
-                "file", "cover.jpg", "image/jpeg", new byte[]{1, 2, 3});
+        byte[] content = jpeg(64 * 1024);
+        MockMultipartFile file = new MockMultipartFile("file", "cover.jpeg", "image/jpeg", content);
 
         BookImageDto dto = service.addImage(owner, 11L, file);
 
-        assertThat(dto.getImageNo()).isEqualTo((short) 1);
-        assertThat(dto.getPath()).startsWith("/uploads/listings/11/");
-        verify(bookImageRepository).save(any(BookImage.class));
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        assertThat(dto.getImageNo()).isEqualTo((short) 2);
+        assertThat(dto.getPath()).isEqualTo("/uploads/blobs/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + ".jpg");
+        assertThat(Files.readAllBytes(tempDir.resolve(dto.getPath().substring("/uploads/".length())))).isEqualTo(content);
+        assertThat(tempDir.resolve("tmp")).isEmptyDirectory();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<BookImage>> saved = ArgumentCaptor.forClass(List.class);
+        verify(bookImageRepository).saveAllAndFlush(saved.capture());
+        assertThat(saved.getValue()).singleElement().extracting(BookImage::getSha256).isEqualTo(sha256);
+    }
+
+    @Test
+    void addImage_storesATinyInlinePlaceholder_whenTheImageDecodes() throws Exception {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        StorageService service = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+        ReflectionTestUtils.setField(service, "maxImages", 5);
+        User owner = User.builder().id(1L).build();
+        when(bookListingRepository.findByIdForUpdate(11L))
+                .thenReturn(Optional.of(BookListing.builder().id(11L).user(owner).build()));
+        when(bookImageRepository.findImageNos(11L)).thenReturn(List.of());
+
+        BufferedImage photo = new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = photo.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, 1200, 900, Color.BLUE));
+        g.fillRect(0, 0, 1200, 900);
+        g.dispose();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(photo, "jpeg", encoded);
+
+        BookImageDto dto = service.addImage(owner, 11L,
+                new MockMultipartFile("file", "photo.jpg", "image/jpeg", encoded.toByteArray()));
+
+        assertThat(dto.getPlaceholder()).startsWith("data:image/jpeg;base64,").hasSizeLessThan(1024);
+        BufferedImage placeholder = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder()
+                .decode(dto.getPlaceholder().substring("data:image/jpeg;base64,".length()))));
+        assertThat(placeholder.getWidth()).isEqualTo(16);
+        assertThat(placeholder.getHeight()).isEqualTo(12);
+    }
+
+    @Test
+    void addImage_ofBytesAlreadyStored_sharesTheBlob_withoutRewritingIt() throws Exception {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        ImageBlobRepository imageBlobRepository = mock(ImageBlobRepository.class);
+        StorageService service = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                imageBlobRepository, mock(ApplicationEventPublisher.class), TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+        ReflectionTestUtils.setField(service, "maxImages", 5);
+
+        User owner = User.builder().id(1L).build();
+        for (long id : new long[]{21L, 22L}) {
+            when(bookListingRepository.findByIdForUpdate(id))
+                    .thenReturn(Optional.of(BookListing.builder().id(id).user(owner).build()));
+        }
+        when(bookImageRepository.findImageNos(anyLong())).thenReturn(List.of());
+        byte[] content = jpeg(1024);
+
+        BookImageDto first = service.addImage(owner, 21L, new MockMultipartFile("file", "a.jpg", "image/jpeg", content));
+        Path blob = tempDir.resolve(first.getPath().substring("/uploads/".length()));
+        FileTime written = Files.getLastModifiedTime(blob);
+        Files.setLastModifiedTime(blob, FileTime.fromMillis(written.toMillis() - 60_000));
+        BookImageDto second = service.addImage(owner, 22L, new MockMultipartFile("file", "b.jpg", "image/jpeg", content));
+
+        assertThat(second.getPath()).isEqualTo(first.getPath());
+        assertThat(Files.getLastModifiedTime(blob).toMillis()).isEqualTo(written.toMillis() - 60_000); // not moved over again
+        verify(imageBlobRepository, times(2)).acquire(any(), eq(first.getPath()), eq((long) content.length), any());
+        try (var files = Files.list(blob.getParent())) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    @Test
+    void deleteImage_ofSharedBlob_releasesTheReference_andKeepsTheFile() throws Exception {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        ImageBlobRepository imageBlobRepository = mock(ImageBlobRepository.class);
+        StorageService service = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                imageBlobRepository, mock(ApplicationEventPublisher.class), TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+
+        User owner = User.builder().id(1L).build();
+        Path blob = Files.createDirectories(tempDir.resolve("blobs")).resolve("abc.jpg");
+        Files.write(blob, new byte[]{1});
+        when(bookListingRepository.findById(31L)).thenReturn(Optional.of(BookListing.builder().id(31L).user(owner).build()));
+        BookImage image = BookImage.builder().id(new BookImageId(31L, (short) 1)).path("/uploads/blobs/abc.jpg").sha256("abc").build();
+        when(bookImageRepository.findById(new BookImageId(31L, (short) 1))).thenReturn(Optional.of(image));
+
+        service.deleteImage(owner, 31L, (short) 1);
+
+        verify(imageBlobRepository).release(eq("abc"), any());
+        verify(bookImageRepository).delete(image);
+        assertThat(blob).exists();
+    }
+
+    @Test
+    void collectBlobs_deletesTheBlobAndItsVariants_onlyForLockedUnreferencedRows() throws Exception {
+        ImageBlobRepository imageBlobRepository = mock(ImageBlobRepository.class);
+        StorageService service = new StorageService(mock(BookImageRepository.class), mock(BookListingRepository.class),
+                mock(BookImageVariantRepository.class), imageBlobRepository, mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+
+        Path dir = Files.createDirectories(tempDir.resolve("blobs/aa/a0"));
+        for (String name : List.of("aaa0x.jpg", "aaa0x-w160.jpg", "aaa0x-w320.jpg", "aaa0y.jpg")) Files.write(dir.resolve(name), new byte[]{1});
+        when(imageBlobRepository.lockCollectable(any(), eq(10))).thenReturn(List.of(
+                ImageBlob.builder().sha256("aaa0x").path("/uploads/blobs/aa/a0/aaa0x.jpg").sizeBytes(1).build()));
+
+        assertThat(service.collectBlobs(Instant.now(), 10)).hasSize(1);
+
+        try (var files = Files.list(dir)) {
+            assertThat(files).extracting(p -> p.getFileName().toString()).containsExactly("aaa0y.jpg");
+        }
+        verify(imageBlobRepository).deleteUnreferenced(List.of("aaa0x"));
+    }
+
+    @Test
+    void reclaimOrphans_deletesUnreferencedFiles_andHandsRowlessBlobsToTheCollector() throws Exception {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        ImageBlobRepository imageBlobRepository = mock(ImageBlobRepository.class);
+        StorageService service = new StorageService(bookImageRepository, mock(BookListingRepository.class),
+                mock(BookImageVariantRepository.class), imageBlobRepository, mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+
+        Instant cutoff = Instant.now().minusSeconds(3600);
+        FileTime old = FileTime.from(cutoff.minusSeconds(60));
+        Path listing = Files.createDirectories(tempDir.resolve("listings").resolve("7"));
+        Path live = Files.write(listing.resolve("1-live.jpg"), new byte[10]);
+        Path orphan = Files.write(listing.resolve("2-gone.jpg"), new byte[20]);
+        Path touched = Files.write(listing.resolve("3-rewritten-w160.jpg"), new byte[30]); // newer than the walk saw
+        String kept = "a".repeat(64);
+        String rowless = "b".repeat(64);
+        Path keptBlob = Files.write(Files.createDirectories(tempDir.resolve("blobs/aa/aa")).resolve(kept + ".jpg"), new byte[40]);
+        Path rowlessBlob = Files.write(Files.createDirectories(tempDir.resolve("blobs/bb/bb")).resolve(rowless + ".png"), new byte[50]);
+        Path movedAway = Files.write(tempDir.resolve("blobs").resolve(kept + ".jpg"), new byte[60]); // flat name left by the migration
+        for (Path p : List.of(live, orphan, keptBlob, rowlessBlob, movedAway)) Files.setLastModifiedTime(p, old);
+
+        when(bookImageRepository.findReferencedPaths(any())).thenReturn(List.of("/uploads/listings/7/1-live.jpg"));
+        when(imageBlobRepository.findExisting(any())).thenReturn(List.of(kept));
+
+        long freed = service.reclaimOrphans(
+                List.of(live, orphan, touched, keptBlob, rowlessBlob, movedAway).stream().map(Path::toAbsolutePath).toList(), cutoff);
+
+        assertThat(freed).isEqualTo(80);
+        assertThat(orphan).doesNotExist();
+        assertThat(movedAway).doesNotExist();
+        assertThat(keptBlob).exists();
+        assertThat(live).exists();
+        assertThat(touched).exists();
+        assertThat(rowlessBlob).exists(); // deleted by collectBlobs, under the row lock
+        verify(imageBlobRepository).adopt(rowless, "/uploads/blobs/bb/bb/" + rowless + ".png", 50, old.toInstant());
+        verify(imageBlobRepository, never()).adopt(eq(kept), any(), anyLong(), any());
+    }
+
+    @Test
+    void addImage_rejectsContentThatIsNotTheDeclaredType_beforeTouchingTheDatabase() {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        StorageService service = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+        ReflectionTestUtils.setField(service, "maxImages", 5);
+
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "cover.png", "image/png", jpeg(128)); // JPEG bytes labelled as PNG
+
+        assertThatThrownBy(() -> service.addImage(User.builder().id(1L).build(), 11L, file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not a PNG");
+        assertThat(tempDir.resolve("tmp")).isEmptyDirectory();
+        verifyNoInteractions(bookListingRepository, bookImageRepository);
     }
 
     @Test
     void addImage_throws_whenLimitReached() {
         BookImageRepository bookImageRepository = mock(BookImageRepository.class);
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
-        StorageService storageService = new StorageService(bookImageRepository, bookListingRepository);
+        StorageService storageService = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
 
         ReflectionTestUtils.setField(storageService, "maxImages", 1);
-        ReflectionTestUtils.setField(storageService, "uploadDir", tempDir.toString());
 
         User owner = User.builder().id(1L).build();
         BookListing bookListing = BookListing.builder()
@@ -70,11 +265,11 @@ class StorageServiceTest {
                 .available(true)
                 .build();
 
-        when(bookListingRepository.findById(22L)).thenReturn(Optional.of(bookListing));
-        when(bookImageRepository.countByListing(bookListing)).thenReturn(1L); // уже достигли лимита
+        when(bookListingRepository.findByIdForUpdate(22L)).thenReturn(Optional.of(bookListing));
+        when(bookImageRepository.findImageNos(22L)).thenReturn(List.of((short) 1)); // уже достигли лимита
 
         MockMultipartFile file = new MockMultipartFile(
-                "file", "a.png", "image/png", new byte[]{1});
+                "file", "a.png", "image/png", png());
 
         assertThatThrownBy(() -> storageService.addImage(owner, 22L, file))
                 .isInstanceOf(IllegalStateException.class)
@@ -85,10 +280,11 @@ class StorageServiceTest {
     void addImage_throws_whenWrongContentType() {
         BookImageRepository bookImageRepository = mock(BookImageRepository.class);
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
-        StorageService storageService = new StorageService(bookImageRepository, bookListingRepository);
+        StorageService storageService = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
 
         ReflectionTestUtils.setField(storageService, "maxImages", 5);
-        ReflectionTestUtils.setField(storageService, "uploadDir", tempDir.toString());
 
         User owner = User.builder().id(1L).build();
         BookListing bookListing = BookListing.builder()
@@ -97,9 +293,6 @@ class StorageServiceTest {
                 .available(true)
                 .build();
 
-        when(bookListingRepository.findById(33L)).thenReturn(Optional.of(bookListing));
-        when(bookImageRepository.countByListing(bookListing)).thenReturn(0L);
-
         MockMultipartFile file = new MockMultipartFile(
                 "file", "x.gif", "image/gif", new byte[]{1, 2}); // не JPEG/PNG
 
@@ -107,4 +300,158 @@ class StorageServiceTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessageContaining("Only JPEG/PNG");
     }
+
+    @Test
+    void addImages_storesTheWholeBatchInFreeSlots_withOneInsertBatch() throws Exception {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        StorageService service = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                mock(ImageBlobRepository.class), events,
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+        ReflectionTestUtils.setField(service, "maxImages", 5);
+
+        User owner = User.builder().id(1L).build();
+        when(bookListingRepository.findByIdForUpdate(11L))
+                .thenReturn(Optional.of(BookListing.builder().id(11L).user(owner).build()));
+        when(bookImageRepository.findImageNos(11L)).thenReturn(List.of((short) 2));
+
+        List<BookImageDto> stored = service.addImages(owner, 11L, List.of(
+                new MockMultipartFile("files", "a.jpg", "image/jpeg", jpeg(2048)),
+                new MockMultipartFile("files", "", "application/octet-stream", new byte[0]), // no file chosen
+                new MockMultipartFile("files", "b.jpg", "image/jpeg", jpeg(4096)),
+                new MockMultipartFile("files", "c.jpg", "image/jpeg", jpeg(8192))));
+
+        assertThat(stored).extracting(BookImageDto::getImageNo).containsExactly((short) 1, (short) 3, (short) 4);
+        for (BookImageDto dto : stored) {
+            assertThat(tempDir.resolve(dto.getPath().substring("/uploads/".length()))).exists();
+        }
+        assertThat(tempDir.resolve("tmp")).isEmptyDirectory();
+        verify(bookListingRepository, times(1)).findByIdForUpdate(11L);
+        verify(bookImageRepository, times(1)).findImageNos(11L);
+        verify(bookImageRepository, times(1)).saveAllAndFlush(argThat(images -> ((List<?>) images).size() == 3));
+        verify(bookImageRepository, never()).saveAndFlush(any());
+        verify(events, times(1)).publishEvent(any(ListingChangedEvent.class));
+        verify(events, times(3)).publishEvent(any(ImageStoredEvent.class));
+    }
+
+    @Test
+    void addImages_rejectsTheWholeBatch_whenOneFileIsInvalid_orSlotsRunOut() {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        StorageService service = new StorageService(bookImageRepository, bookListingRepository, mock(BookImageVariantRepository.class),
+                mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+        ReflectionTestUtils.setField(service, "maxImages", 3);
+
+        User owner = User.builder().id(1L).build();
+        when(bookListingRepository.findByIdForUpdate(11L))
+                .thenReturn(Optional.of(BookListing.builder().id(11L).user(owner).build()));
+        when(bookImageRepository.findImageNos(11L)).thenReturn(List.of((short) 1, (short) 2));
+
+        assertThatThrownBy(() -> service.addImages(owner, 11L, List.of(
+                new MockMultipartFile("files", "a.jpg", "image/jpeg", jpeg(2048)),
+                new MockMultipartFile("files", "b.png", "image/png", jpeg(2048)))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not a PNG");
+        verifyNoInteractions(bookListingRepository);
+
+        assertThatThrownBy(() -> service.addImages(owner, 11L, List.of(
+                new MockMultipartFile("files", "a.jpg", "image/jpeg", jpeg(2048)),
+                new MockMultipartFile("files", "b.jpg", "image/jpeg", jpeg(1024)))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Image limit");
+
+        verify(bookImageRepository, never()).saveAllAndFlush(any());
+        assertThat(tempDir.resolve("tmp")).isEmptyDirectory();
+        assertThat(tempDir.resolve("blobs")).doesNotExist();
+    }
+
+    @Test
+    void relocateFlatBlobs_linksFilesIntoTheirShard_andRebasesEveryPath() throws Exception {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookImageVariantRepository bookImageVariantRepository = mock(BookImageVariantRepository.class);
+        ImageBlobRepository imageBlobRepository = mock(ImageBlobRepository.class);
+        StorageService service = new StorageService(bookImageRepository, mock(BookListingRepository.class),
+                bookImageVariantRepository, imageBlobRepository, mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+
+        String sha = "cd".repeat(32);
+        Path flat = Files.createDirectories(tempDir.resolve("blobs"));
+        Files.write(flat.resolve(sha + ".jpg"), new byte[]{1, 2});
+        Files.write(flat.resolve(sha + "-w160.jpg"), new byte[]{3});
+        Files.setLastModifiedTime(flat.resolve(sha + ".jpg"), FileTime.fromMillis(0));
+        when(imageBlobRepository.lockFlat("", 10)).thenReturn(List.of(
+                ImageBlob.builder().sha256(sha).path("/uploads/blobs/" + sha + ".jpg").sizeBytes(2).build()));
+
+        assertThat(service.relocateFlatBlobs("", 10)).containsExactly(sha);
+
+        Path shard = tempDir.resolve("blobs/cd/cd");
+        assertThat(Files.readAllBytes(shard.resolve(sha + ".jpg"))).containsExactly(1, 2);
+        assertThat(shard.resolve(sha + "-w160.jpg")).exists();
+        assertThat(flat.resolve(sha + ".jpg")).exists(); // old URL still served until the reconciler's grace passes
+        assertThat(Files.getLastModifiedTime(flat.resolve(sha + ".jpg")).toMillis()).isPositive();
+        String from = "/uploads/blobs/" + sha;
+        String to = "/uploads/blobs/cd/cd/" + sha;
+        verify(bookImageRepository).rebaseBlob(sha, from, to);
+        verify(bookImageVariantRepository).rebaseBlob(sha, from, to);
+        verify(imageBlobRepository).relocate(sha, to + ".jpg");
+    }
+
+    @Test
+    void relocateFlatListings_movesEachListingDirectoryIntoItsShard() throws Exception {
+        BookImageRepository bookImageRepository = mock(BookImageRepository.class);
+        BookImageVariantRepository bookImageVariantRepository = mock(BookImageVariantRepository.class);
+        StorageService service = new StorageService(bookImageRepository, mock(BookListingRepository.class),
+                bookImageVariantRepository, mock(ImageBlobRepository.class), mock(ApplicationEventPublisher.class),
+                TransactionOperations.withoutTransaction(), new UploadLayout(tempDir.toString()), receiver());
+
+        Path dir = Files.createDirectories(tempDir.resolve("listings/42"));
+        Files.write(dir.resolve("1-abc.jpg"), new byte[]{1});
+        Files.write(dir.resolve("1-abc-w160.jpg"), new byte[]{2});
+        when(bookImageRepository.findFlatListingIds(0L, 10)).thenReturn(List.of(42L, 43L)); // 43's files are gone
+
+        assertThat(service.relocateFlatListings(0L, 10)).containsExactly(42L, 43L);
+
+        String to = UploadLayout.listingDir(42L);
+        Path target = tempDir.resolve(to.substring("/uploads/".length()));
+        assertThat(target.resolve("1-abc.jpg")).exists();
+        assertThat(target.resolve("1-abc-w160.jpg")).exists();
+        verify(bookImageRepository).rebaseListing(42L, "/uploads/listings/42/", to);
+        verify(bookImageVariantRepository).rebaseListing(42L, "/uploads/listings/42/", to);
+        verify(bookImageRepository).rebaseListing(43L, "/uploads/listings/43/", UploadLayout.listingDir(43L));
+    }
+
+    private UploadReceiver receiver() {
+        return new UploadReceiver(new UploadLayout(tempDir.toString()), new SimpleMeterRegistry(),
+                1600, 40_000_000, 0.85f, 2, Executors.newFixedThreadPool(2));
+    }
+
+    // a real, decodable JPEG; different seeds give different bytes
+    private static byte[] jpeg(int seed) {
+        return encode(noise(seed, BufferedImage.TYPE_INT_RGB), "jpeg");
+    }
+
+    private static byte[] png() {
+        return encode(noise(1, BufferedImage.TYPE_INT_ARGB), "png");
+    }
+
+    private static BufferedImage noise(int seed, int type) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(48 + seed % 32, 36, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) image.setRGB(x, y, random.nextInt() | 0xFF000000);
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, format, out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
 }
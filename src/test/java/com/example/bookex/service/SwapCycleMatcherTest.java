@@ -0,0 +1,70 @@
+package com.example.bookex.service;
+
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.event.WishlistChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class SwapCycleMatcherTest {
+
+    private WishlistService wishlistService;
+    private SwapCycleMatcher matcher;
+
+    @BeforeEach
+    void setUp() {
+        wishlistService = mock(WishlistService.class);
+        matcher = new SwapCycleMatcher(wishlistService, 4, 10, 1000, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        matcher.shutdown();
+    }
+
+    @Test
+    void refresh_searchesFromChangedUsers_andKeepsEveryoneElsesCycles() {
+        // 1 <-> 2 and 3 <-> 4
+        when(wishlistService.loadGraph()).thenReturn(new SwapGraph.Builder()
+                .add(1, 2, 12).add(2, 1, 21).add(3, 4, 34).add(4, 3, 43).build());
+        matcher.refresh();
+        assertThat(matcher.cyclesFor(1L)).hasSize(1);
+        assertThat(matcher.cyclesFor(3L)).hasSize(1);
+
+        // user 1 drops their wish; 3 <-> 4 is untouched
+        when(wishlistService.loadGraph()).thenReturn(new SwapGraph.Builder()
+                .add(2, 1, 21).add(3, 4, 34).add(4, 3, 43).build());
+        matcher.onWishlistChanged(new WishlistChangedEvent(1L));
+        matcher.refresh();
+
+        assertThat(matcher.cyclesFor(1L)).isEmpty();
+        assertThat(matcher.cyclesFor(2L)).isEmpty();
+        assertThat(matcher.cyclesFor(4L)).singleElement().satisfies(c -> assertThat(c.involves(3L)).isTrue());
+    }
+
+    @Test
+    void refresh_afterListingRemoved_dropsCyclesOfItsOwner() {
+        when(wishlistService.loadGraph()).thenReturn(new SwapGraph.Builder()
+                .add(1, 2, 12).add(2, 1, 21).build());
+        matcher.refresh();
+
+        when(wishlistService.loadGraph()).thenReturn(new SwapGraph.Builder().add(1, 2, 12).build());
+        matcher.onListingChanged(new ListingChangedEvent(21L)); // only the old graph knows its owner
+        matcher.refresh();
+
+        assertThat(matcher.cyclesFor(1L)).isEmpty();
+        assertThat(matcher.cyclesFor(2L)).isEmpty();
+    }
+
+    @Test
+    void refresh_withNothingChanged_doesNotReloadTheGraph() {
+        when(wishlistService.loadGraph()).thenReturn(SwapGraph.empty());
+        matcher.refresh(); // first run is a full search
+        matcher.refresh();
+
+        verify(wishlistService, times(1)).loadGraph();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.bookex.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SwapExpiryJobTest {
+
+    @Test
+    void run_drainsFullBatchesUntilAShortOne_andRecordsRowsPerKind() {
+        SwapService swapService = mock(SwapService.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        when(swapService.expirePending(any(), eq(10))).thenReturn(10, 10, 3);
+        when(swapService.cancelStalledAccepted(any(), eq(10))).thenReturn(0);
+
+        new SwapExpiryJob(swapService, registry, Duration.ofDays(14), Duration.ofDays(30), 10, 100).run();
+
+        verify(swapService, times(3)).expirePending(any(), eq(10));
+        verify(swapService, times(1)).cancelStalledAccepted(any(), eq(10));
+        assertThat(registry.summary("bookex.swaps.expiry.rows", "kind", "pending").totalAmount()).isEqualTo(23);
+        assertThat(registry.summary("bookex.swaps.expiry.rows", "kind", "accepted").count()).isEqualTo(1);
+    }
+
+    @Test
+    void run_stopsAfterMaxBatches_andUsesConfiguredAges() {
+        SwapService swapService = mock(SwapService.class);
+        when(swapService.expirePending(any(), anyInt())).thenReturn(5);
+        Instant before = Instant.now();
+
+        new SwapExpiryJob(swapService, new SimpleMeterRegistry(), Duration.ofDays(14), Duration.ofDays(30), 5, 4).run();
+
+        verify(swapService, times(4)).expirePending(
+                argThat(cutoff -> !cutoff.isAfter(Instant.now().minus(Duration.ofDays(14)))
+                        && !cutoff.isBefore(before.minus(Duration.ofDays(14)))), eq(5));
+        verify(swapService).cancelStalledAccepted(
+                argThat(cutoff -> !cutoff.isBefore(before.minus(Duration.ofDays(30)))), eq(5));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.bookex.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SwapGraphTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterAll
+    static void shutdown() {
+        POOL.shutdownNow();
+    }
+
+    @Test
+    void build_dropsSelfEdges_andKeepsOneListingPerPair() {
+        SwapGraph graph = new SwapGraph.Builder()
+                .add(1, 2, 100)
+                .add(1, 2, 101) // second book 1 wants from 2
+                .add(3, 3, 102) // own listing
+                .add(2, 1, 103)
+                .build();
+
+        assertThat(graph.vertices()).isEqualTo(2);
+        assertThat(graph.edges()).isEqualTo(2);
+        assertThat(graph.listing(graph.vertexOf(1), graph.vertexOf(2))).isIn(100L, 101L);
+        assertThat(graph.ownerOfListing(103)).isEqualTo(1);
+        assertThat(graph.ownerOfListing(102)).isEqualTo(-1);
+        assertThat(graph.vertexOf(3)).isEqualTo(-1);
+    }
+
+    @Test
+    void findCycles_reportsEachCycleOnce_withTheListingsEveryoneReceives() {
+        // 1 wants from 2, 2 from 3, 3 from 1; plus a mutual pair 3 <-> 4
+        SwapGraph graph = new SwapGraph.Builder()
+                .add(1, 2, 12).add(2, 3, 23).add(3, 1, 31)
+                .add(3, 4, 34).add(4, 3, 43)
+                .build();
+
+        List<SwapCycle> cycles = graph.findCycles(all(graph), 4, 10, 100, POOL);
+
+        assertThat(cycles).hasSize(2);
+        SwapCycle triangle = cycles.stream().filter(c -> c.length() == 3).findFirst().orElseThrow();
+        int at = triangle.indexOf(1);
+        assertThat(triangle.listingIds()[at]).isEqualTo(12); // user 1 receives 2's listing
+        assertThat(triangle.userIds()[(at + 1) % 3]).isEqualTo(2);
+    }
+
+    @Test
+    void findCycles_respectsMaxLength() {
+        SwapGraph graph = new SwapGraph.Builder()
+                .add(1, 2, 12).add(2, 3, 23).add(3, 4, 34).add(4, 1, 41)
+                .build();
+
+        assertThat(graph.findCycles(all(graph), 3, 10, 100, POOL)).isEmpty();
+        assertThat(graph.findCycles(all(graph), 4, 10, 100, POOL)).hasSize(1);
+    }
+
+    @Test
+    void findCycles_fromSomeSeeds_findsExactlyTheCyclesThroughThem() {
+        SwapGraph graph = random(600, 2400, 7);
+        List<List<Long>> everything = canonical(graph.findCycles(all(graph), 4, Integer.MAX_VALUE, Integer.MAX_VALUE, POOL));
+
+        BitSet seeds = new BitSet();
+        for (int v = 0; v < graph.vertices(); v += 7) seeds.set(v);
+        List<List<Long>> throughSeeds = canonical(graph.findCycles(seeds, 4, Integer.MAX_VALUE, Integer.MAX_VALUE, POOL));
+
+        Set<Long> seedUsers = new HashSet<>();
+        seeds.stream().forEach(v -> seedUsers.add(graph.userId(v)));
+        assertThat(throughSeeds).doesNotHaveDuplicates()
+                .containsExactlyInAnyOrderElementsOf(everything.stream()
+                        .filter(c -> c.stream().anyMatch(seedUsers::contains)).toList());
+    }
+
+    @Test
+    void findCycles_inParallel_matchesBruteForce() {
+        SwapGraph graph = random(1500, 4500, 42); // enough seeds to split into several fork-join tasks
+
+        List<List<Long>> found = canonical(graph.findCycles(all(graph), 3, Integer.MAX_VALUE, Integer.MAX_VALUE, POOL));
+
+        assertThat(found).doesNotHaveDuplicates().containsExactlyInAnyOrderElementsOf(bruteForceUpTo3(graph));
+    }
+
+    @Test
+    void findCycles_stopsAtLimits() {
+        SwapGraph graph = random(300, 3000, 3);
+
+        assertThat(graph.findCycles(all(graph), 4, 10, 25, POOL)).hasSizeBetween(25, 25 + 4 * 4);
+        assertThat(graph.findCycles(all(graph), 4, 1, Integer.MAX_VALUE, POOL)).hasSizeLessThanOrEqualTo(graph.vertices());
+    }
+
+    private static BitSet all(SwapGraph graph) {
+        BitSet seeds = new BitSet();
+        seeds.set(0, graph.vertices());
+        return seeds;
+    }
+
+    private static SwapGraph random(int users, int wishes, long seed) {
+        Random random = new Random(seed);
+        SwapGraph.Builder builder = new SwapGraph.Builder();
+        for (int i = 0; i < wishes; i++) {
+            long wisher = 1 + random.nextInt(users);
+            long owner = 1 + random.nextInt(users);
+            builder.add(wisher, owner, owner * 100_000 + random.nextInt(5));
+        }
+        return builder.build();
+    }
+
+    // users of each cycle rotated to start at the smallest id, so equal cycles compare equal
+    private static List<List<Long>> canonical(List<SwapCycle> cycles) {
+        List<List<Long>> out = new ArrayList<>();
+        for (SwapCycle c : cycles) out.add(rotate(Arrays.stream(c.userIds()).boxed().toList()));
+        return out;
+    }
+
+    private static List<Long> rotate(List<Long> users) {
+        int min = users.indexOf(users.stream().min(Long::compare).orElseThrow());
+        List<Long> out = new ArrayList<>(users.subList(min, users.size()));
+        out.addAll(users.subList(0, min));
+        return out;
+    }
+
+    private static List<List<Long>> bruteForceUpTo3(SwapGraph graph) {
+        Set<List<Long>> out = new HashSet<>();
+        int n = graph.vertices();
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                if (b == a || graph.listing(a, b) < 0) continue;
+                if (graph.listing(b, a) >= 0) out.add(rotate(List.of(graph.userId(a), graph.userId(b))));
+                for (int c = 0; c < n; c++) {
+                    if (c == a || c == b || graph.listing(b, c) < 0 || graph.listing(c, a) < 0) continue;
+                    out.add(rotate(List.of(graph.userId(a), graph.userId(b), graph.userId(c))));
+                }
+            }
+        }
+        return new ArrayList<>(out);
+    }
+}
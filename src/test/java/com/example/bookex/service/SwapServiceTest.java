@@ -1,16 +1,23 @@
 package com.example.bookex.service;
 
+import com.example.bookex.dto.swap.SwapViewDto;
 import com.example.bookex.entity.Book;
 import com.example.bookex.entity.BookListing;
 import com.example.bookex.entity.SwapRequest;
 import com.example.bookex.entity.User;
 import com.example.bookex.entity.enums.Condition;
 import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.event.ListingChangedEvent;
+import com.example.bookex.event.SwapChangedEvent;
+import com.example.bookex.exceptions.ConflictException;
 import com.example.bookex.exceptions.NotFoundException;
 import com.example.bookex.repository.BookListingRepository;
 import com.example.bookex.repository.SwapRequestRepository;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.*;
@@ -22,7 +29,6 @@ class SwapServiceTest {
     void createRequest_succeeds_forAvailableListing_andDifferentUser() {
         SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
-        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository);
 
         User owner = User.builder().id(10L).build();
         Book book = Book.builder().id(200L).title("dune").author("frank herbert").build();
@@ -36,24 +42,53 @@ class SwapServiceTest {
                 .build();
 
         when(bookListingRepository.findById(100L)).thenReturn(Optional.of(bookListing));
-        when(swapRequestRepository.save(any(SwapRequest.class))).thenAnswer(inv -> {
-            SwapRequest swapRequest = inv.getArgument(0);
-            swapRequest.setId(555L);
-            return swapRequest;
-        });
+        when(swapRequestRepository.insertPending(eq(100L), eq(20L), eq("hi!"), any())).thenReturn(Optional.of(555L));
 
         User requester = User.builder().id(20L).build();
-        swapService.createRequest(requester, 100L, "hi!");
+        List<Object> published = new ArrayList<>();
+        SwapViewDto view = new SwapService(swapRequestRepository, bookListingRepository, published::add,
+                        mock(SwapCycleMatcher.class))
+                .createRequest(requester, 100L, "  hi! ");
+
+        assertThat(view.getId()).isEqualTo(555L);
+        assertThat(view.getStatus()).isEqualTo("PENDING");
+        assertThat(published).singleElement().isInstanceOf(SwapChangedEvent.class);
+        verify(swapRequestRepository, never()).findPendingId(any(), any());
+    }
 
-        verify(swapRequestRepository).save(argThat(swapRequest ->
-                swapRequest.getListing().getId().equals(100L) &&
-                        swapRequest.getUser().getId().equals(20L) &&
-                        swapRequest.getStatus() == SwapStatus.PENDING));
+    @Test
+    void createRequest_returnsExistingPendingRequest_onDuplicate_withoutEvent() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        List<Object> published = new ArrayList<>();
+        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository, published::add,
+                mock(SwapCycleMatcher.class));
+        BookListing bookListing = BookListing.builder()
+                .id(100L)
+                .user(User.builder().id(10L).build())
+                .book(Book.builder().id(200L).title("dune").author("frank herbert").build())
+                .condition(Condition.GOOD)
+                .available(true)
+                .build();
+        when(bookListingRepository.findById(100L)).thenReturn(Optional.of(bookListing));
+        when(swapRequestRepository.insertPending(eq(100L), eq(20L), any(), any())).thenReturn(Optional.empty());
+        when(swapRequestRepository.findPendingId(100L, 20L)).thenReturn(Optional.of(444L));
+        when(swapRequestRepository.findWithPartiesById(444L)).thenReturn(Optional.of(SwapRequest.builder()
+                .id(444L).listing(bookListing).user(User.builder().id(20L).build())
+                .message("first").status(SwapStatus.PENDING).build()));
+
+        SwapViewDto view = swapService.createRequest(User.builder().id(20L).build(), 100L, "again");
+
+        assertThat(view.getId()).isEqualTo(444L);
+        assertThat(view.getStatus()).isEqualTo("PENDING");
+        verify(swapRequestRepository).findWithPartiesById(444L);
+        assertThat(published).isEmpty();
     }
 
     @Test
     void createRequest_throws_whenListingNotFound() {
-        SwapService swapService = new SwapService(mock(SwapRequestRepository.class), mock(BookListingRepository.class));
+        SwapService swapService = new SwapService(mock(SwapRequestRepository.class), mock(BookListingRepository.class),
+                event -> { }, mock(SwapCycleMatcher.class));
         assertThatThrownBy(() -> swapService.createRequest(User.builder().id(1L).build(), 999L, "x"))
                 .isInstanceOf(NotFoundException.class);
     }
@@ -62,7 +97,7 @@ class SwapServiceTest {
     void createRequest_throws_whenOwnListing() {
         SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
-        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository);
+        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository, event -> { }, mock(SwapCycleMatcher.class));
 
         User owner = User.builder().id(7L).build();
         BookListing bookListing = BookListing.builder()
@@ -83,7 +118,7 @@ class SwapServiceTest {
     void createRequest_throws_whenListingNotAvailable() {
         SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
         BookListingRepository bookListingRepository = mock(BookListingRepository.class);
-        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository);
+        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository, event -> { }, mock(SwapCycleMatcher.class));
 
         User owner = User.builder().id(7L).build();
         BookListing bookListing = BookListing.builder()
@@ -99,4 +134,104 @@ class SwapServiceTest {
         assertThatThrownBy(() -> swapService.createRequest(User.builder().id(8L).build(), 1L, "hey"))
                 .isInstanceOf(IllegalStateException.class);
     }
+
+    @Test
+    void ownerRespond_accept_flipsListing_thenSwap_thenDeclinesOthers() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository, event -> { }, mock(SwapCycleMatcher.class));
+        User owner = User.builder().id(7L).build();
+        when(swapRequestRepository.findWithPartiesById(5L)).thenReturn(Optional.of(pendingSwap(owner)));
+        when(bookListingRepository.setAvailable(eq(1L), eq(false), any())).thenReturn(1);
+        when(swapRequestRepository.transition(eq(5L), eq(SwapStatus.PENDING), eq(SwapStatus.ACCEPTED), any())).thenReturn(1);
+        when(swapRequestRepository.lockOtherPending(1L, 5L)).thenReturn(List.of(
+                new SwapChangedEvent(6L, 1L, 7L, 9L, SwapStatus.PENDING, SwapStatus.DECLINED)));
+
+        assertThat(swapService.ownerRespond(owner, 5L, true).getStatus()).isEqualTo("ACCEPTED");
+
+        var order = inOrder(bookListingRepository, swapRequestRepository);
+        order.verify(bookListingRepository).setAvailable(eq(1L), eq(false), any());
+        order.verify(swapRequestRepository).transition(eq(5L), eq(SwapStatus.PENDING), eq(SwapStatus.ACCEPTED), any());
+        order.verify(swapRequestRepository).lockOtherPending(1L, 5L);
+        order.verify(swapRequestRepository).declineAll(eq(List.of(6L)), any());
+    }
+
+    @Test
+    void ownerRespond_accept_conflicts_whenListingAlreadyTaken() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        BookListingRepository bookListingRepository = mock(BookListingRepository.class);
+        SwapService swapService = new SwapService(swapRequestRepository, bookListingRepository, event -> { }, mock(SwapCycleMatcher.class));
+        User owner = User.builder().id(7L).build();
+        when(swapRequestRepository.findWithPartiesById(5L)).thenReturn(Optional.of(pendingSwap(owner)));
+
+        assertThatThrownBy(() -> swapService.ownerRespond(owner, 5L, true))
+                .isInstanceOf(ConflictException.class);
+        verify(swapRequestRepository, never()).transition(any(), any(), any(), any());
+        verify(swapRequestRepository, never()).declineAll(any(), any());
+    }
+
+    @Test
+    void ownerRespond_decline_conflicts_whenSwapAnsweredConcurrently() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        SwapService swapService = new SwapService(swapRequestRepository, mock(BookListingRepository.class), event -> { },
+                mock(SwapCycleMatcher.class));
+        User owner = User.builder().id(7L).build();
+        when(swapRequestRepository.findWithPartiesById(5L)).thenReturn(Optional.of(pendingSwap(owner)));
+
+        assertThatThrownBy(() -> swapService.ownerRespond(owner, 5L, false))
+                .isInstanceOf(ConflictException.class);
+    }
+
+    @Test
+    void cancelStalledAccepted_notifiesParties_andInvalidatesRelistedListings() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        List<Object> published = new ArrayList<>();
+        SwapService swapService = new SwapService(swapRequestRepository, mock(BookListingRepository.class), published::add,
+                mock(SwapCycleMatcher.class));
+        List<SwapRequestRepository.ExpiredRow> rows = List.of(expiredRow(5L, true), expiredRow(6L, false));
+        when(swapRequestRepository.cancelStalledAccepted(any(), any(), eq(50))).thenReturn(rows);
+
+        assertThat(swapService.cancelStalledAccepted(Instant.EPOCH, 50)).isEqualTo(2);
+
+        assertThat(published).filteredOn(SwapChangedEvent.class::isInstance).hasSize(2)
+                .allSatisfy(e -> assertThat(((SwapChangedEvent) e).status()).isEqualTo(SwapStatus.CANCELLED));
+        assertThat(published).filteredOn(ListingChangedEvent.class::isInstance).containsExactly(new ListingChangedEvent(1L));
+    }
+
+    private static SwapRequestRepository.ExpiredRow expiredRow(Long swapId, boolean relisted) {
+        SwapRequestRepository.ExpiredRow row = mock(SwapRequestRepository.ExpiredRow.class);
+        when(row.getSwapId()).thenReturn(swapId);
+        when(row.getListingId()).thenReturn(1L);
+        when(row.getOwnerId()).thenReturn(7L);
+        when(row.getRequesterId()).thenReturn(8L);
+        when(row.isRelisted()).thenReturn(relisted);
+        return row;
+    }
+
+    @Test
+    void inbox_usesTheStatusQuery_onlyWhenFiltering() {
+        SwapRequestRepository swapRequestRepository = mock(SwapRequestRepository.class);
+        SwapService swapService = new SwapService(swapRequestRepository, mock(BookListingRepository.class), event -> { },
+                mock(SwapCycleMatcher.class));
+        User owner = User.builder().id(7L).build();
+
+        swapService.inbox(owner, null, null);
+        swapService.inbox(owner, SwapStatus.PENDING, null);
+
+        verify(swapRequestRepository).findInbox(eq(7L), any());
+        verify(swapRequestRepository).findInboxByStatus(eq(7L), eq(SwapStatus.PENDING), any());
+        verifyNoMoreInteractions(swapRequestRepository);
+    }
+
+    private static SwapRequest pendingSwap(User owner) {
+        BookListing bookListing = BookListing.builder()
+                .id(1L)
+                .user(owner)
+                .book(Book.builder().id(500L).title("t").author("a").build())
+                .condition(Condition.GOOD)
+                .available(true)
+                .build();
+        return SwapRequest.builder().id(5L).listing(bookListing).user(User.builder().id(8L).build())
+                .status(SwapStatus.PENDING).build();
+    }
 }
@@ -0,0 +1,178 @@
+package com.example.bookex.service;
+
+import com.example.bookex.dto.swap.SwapDeltaDto;
+import com.example.bookex.entity.enums.SwapStatus;
+import com.example.bookex.event.SwapChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SwapStreamTest {
+
+    private final ThreadPoolExecutor writer = SwapStream.writerPool(4);
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Test
+    void onSwapChanged_pushesInboxDeltaToOwner_andOutboxDeltaToRequester_only() {
+        SwapStream stream = new SwapStream(8, 4, Duration.ofMinutes(1), Duration.ofSeconds(5), Runnable::run, writer);
+        RecordingEmitter owner = new RecordingEmitter();
+        RecordingEmitter requester = new RecordingEmitter();
+        RecordingEmitter bystander = new RecordingEmitter();
+        stream.register(1L, owner);
+        stream.register(2L, requester);
+        stream.register(3L, bystander);
+
+        stream.onSwapChanged(new SwapChangedEvent(10L, 20L, 1L, 2L, SwapStatus.PENDING, SwapStatus.ACCEPTED));
+
+        assertThat(owner.deltas()).containsExactly(new SwapDeltaDto(10L, 20L, "ACCEPTED", "inbox"));
+        assertThat(requester.deltas()).containsExactly(new SwapDeltaDto(10L, 20L, "ACCEPTED", "outbox"));
+        assertThat(bystander.sent).isEmpty();
+    }
+
+    @Test
+    void slowReader_losesBacklog_andGetsOneResync() {
+        List<Runnable> pending = new ArrayList<>();
+        SwapStream stream = new SwapStream(2, 4, Duration.ofMinutes(1), Duration.ofSeconds(5), pending::add, writer); // sender never runs on its own
+        RecordingEmitter owner = new RecordingEmitter();
+        stream.register(1L, owner);
+
+        for (long id = 1; id <= 4; id++) { // the third overflows the buffer of two
+            stream.onSwapChanged(new SwapChangedEvent(id, 20L, 1L, 2L, null, SwapStatus.PENDING));
+        }
+        assertThat(pending).hasSize(1); // one drain per connection at a time
+        pending.get(0).run();
+
+        assertThat(owner.sent.get(0)).contains("event:" + SwapStream.RESYNC_EVENT);
+        assertThat(owner.deltas()).extracting(SwapDeltaDto::getId).containsExactly(4L);
+    }
+
+    @Test
+    void failedSend_dropsTheConnection() {
+        SwapStream stream = new SwapStream(8, 4, Duration.ofMinutes(1), Duration.ofSeconds(5), Runnable::run, writer);
+        RecordingEmitter broken = new RecordingEmitter();
+        broken.fail = true;
+        stream.register(1L, broken);
+
+        stream.onSwapChanged(new SwapChangedEvent(10L, 20L, 1L, 2L, null, SwapStatus.PENDING));
+
+        assertThat(stream.connections()).isZero();
+    }
+
+    @Test
+    void stalledReader_isDropped_afterSendTimeout_withoutHoldingUpOthers() throws Exception {
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+        SwapStream stream = new SwapStream(8, 4, Duration.ofMinutes(1), Duration.ofMillis(100), sender, writer);
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingEmitter stalled = new RecordingEmitter();
+        stalled.blockUntil = unblock;
+        RecordingEmitter requester = new RecordingEmitter();
+        stream.register(1L, stalled);
+        stream.register(2L, requester);
+
+        stream.onSwapChanged(new SwapChangedEvent(10L, 20L, 1L, 2L, null, SwapStatus.PENDING)); // owner drains first
+        sender.shutdown();
+
+        assertThat(sender.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(requester.deltas()).containsExactly(new SwapDeltaDto(10L, 20L, "PENDING", "outbox"));
+        assertThat(stream.connections()).isEqualTo(1);
+        unblock.countDown();
+    }
+
+    @Test
+    void stalledReaders_holdNoMoreThanTheWriterThreads_andAreAllDropped() throws Exception {
+        ExecutorService sender = Executors.newFixedThreadPool(4);
+        SwapStream stream = new SwapStream(8, 4, Duration.ofMinutes(1), Duration.ofMillis(100), sender, writer);
+        CountDownLatch unblock = new CountDownLatch(1);
+        List<RecordingEmitter> stalled = new ArrayList<>();
+        for (long user = 1; user <= 20; user++) {
+            RecordingEmitter emitter = new RecordingEmitter();
+            emitter.blockUntil = unblock;
+            stalled.add(emitter);
+            stream.register(user, emitter);
+        }
+
+        for (long user = 1; user <= 20; user++) {
+            stream.onSwapChanged(new SwapChangedEvent(user, 20L, user, 100L, null, SwapStatus.PENDING));
+        }
+        sender.shutdown();
+
+        assertThat(sender.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(stream.connections()).isZero();
+        assertThat(writer.getLargestPoolSize()).isLessThanOrEqualTo(4);
+        unblock.countDown();
+        for (RecordingEmitter emitter : stalled) { // the stuck writes close their streams once they return
+            assertThat(emitter.closed.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void register_closesOldestStream_beyondPerUserLimit() {
+        SwapStream stream = new SwapStream(8, 2, Duration.ofMinutes(1), Duration.ofSeconds(5), Runnable::run, writer);
+        RecordingEmitter first = new RecordingEmitter();
+        stream.register(1L, first);
+        stream.register(1L, new RecordingEmitter());
+        stream.register(1L, new RecordingEmitter());
+
+        stream.onSwapChanged(new SwapChangedEvent(10L, 20L, 1L, 2L, null, SwapStatus.PENDING));
+
+        assertThat(stream.connections()).isEqualTo(2);
+        assertThat(first.sent).isEmpty();
+    }
+
+    /** Captures what would be written to the wire instead of needing a servlet response. */
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<String> sent = new ArrayList<>();
+        final List<SwapDeltaDto> payloads = new ArrayList<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        boolean fail;
+        CountDownLatch blockUntil;
+
+        @Override
+        public void complete() {
+            closed.countDown();
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            closed.countDown();
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (fail) throw new IOException("broken pipe");
+            if (blockUntil != null) { // a client that stopped reading: the write waits on a full socket
+                try {
+                    blockUntil.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException("interrupted", ex);
+                }
+            }
+            StringBuilder frame = new StringBuilder();
+            for (DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof SwapDeltaDto delta) payloads.add(delta);
+                else frame.append(part.getData());
+            }
+            sent.add(frame.toString());
+        }
+
+        List<SwapDeltaDto> deltas() {
+            return payloads;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.bookex.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadLayoutTest {
+
+    private final UploadLayout layout = new UploadLayout("/srv/uploads");
+
+    @Test
+    void blobPath_fansOutByTheFirstBytesOfTheHash() {
+        String sha = "0123456789abcdef".repeat(4);
+
+        assertThat(UploadLayout.blobPath(sha, "jpg")).isEqualTo("/uploads/blobs/01/23/" + sha + ".jpg");
+        assertThat(layout.blobDir(sha)).isEqualTo(Path.of("/srv/uploads/blobs/01/23"));
+        assertThat(layout.resolve(UploadLayout.blobPath(sha, "jpg")).getParent()).isEqualTo(layout.blobDir(sha));
+    }
+
+    @Test
+    void listingDir_spreadsConsecutiveIdsOverManyDirectories() {
+        assertThat(UploadLayout.listingDir(42L)).matches("/uploads/by-listing/[0-9a-f]{2}/[0-9a-f]{2}/42/");
+        assertThat(UploadLayout.listingDir(42L)).isEqualTo(UploadLayout.listingDir(42L));
+
+        Set<String> shards = new HashSet<>();
+        for (long id = 1; id <= 10_000; id++) {
+            String dir = UploadLayout.listingDir(id);
+            shards.add(dir.substring(0, dir.length() - (id + "/").length()));
+        }
+        assertThat(shards).hasSizeGreaterThan(9_000);
+    }
+
+    @Test
+    void resolve_mapsPublicPathsIntoTheTree_andRejectsEverythingElse() {
+        assertThat(layout.resolve("/uploads/listings/7/1-a.jpg")).isEqualTo(Path.of("/srv/uploads/listings/7/1-a.jpg"));
+        assertThat(layout.publicPath(Path.of("/srv/uploads/by-listing/aa/bb/7/1-a.jpg")))
+                .isEqualTo("/uploads/by-listing/aa/bb/7/1-a.jpg");
+
+        assertThat(layout.resolve("/uploads/../etc/passwd")).isNull();
+        assertThat(layout.resolve("/uploads/")).isNull();
+        assertThat(layout.resolve("/static/x.css")).isNull();
+        assertThat(layout.resolve(null)).isNull();
+    }
+}
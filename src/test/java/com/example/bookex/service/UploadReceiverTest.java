@@ -0,0 +1,197 @@
+package com.example.bookex.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UploadReceiverTest {
+
+    @TempDir
+    Path uploads;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UploadReceiver receiver;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        receiver = new UploadReceiver(new UploadLayout(uploads.toString()), meterRegistry,
+                1600, 40_000_000, 0.85f, 1, Executors.newSingleThreadExecutor());
+    }
+
+    @AfterEach
+    void tearDown() {
+        receiver.shutdown();
+    }
+
+    @Test
+    void receive_phoneJpeg_dropsExifAndTrailingData_andTurnsItUpright() throws Exception {
+        // stored sideways, red on the left: upright (orientation 6, turn clockwise) red is on top
+        BufferedImage sideways = new BufferedImage(80, 40, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = sideways.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 40, 40);
+        g.setColor(Color.BLUE);
+        g.fillRect(40, 0, 40, 40);
+        g.dispose();
+        byte[] encoded = jpeg(sideways, 0.9f);
+        byte[] upload = concat(Arrays.copyOfRange(encoded, 0, 2), exif(6, "GPS 51.50722N 0.12750W"),
+                comment("taken with a phone"), Arrays.copyOfRange(encoded, 2, encoded.length), "MOTION-CLIP".getBytes());
+
+        UploadReceiver.Received received = receiver.receive(new MockMultipartFile("file", "p.jpg", "image/jpeg", upload));
+
+        byte[] stored = Files.readAllBytes(received.file());
+        String text = new String(stored, StandardCharsets.ISO_8859_1);
+        assertThat(text).doesNotContain("Exif", "GPS", "taken with", "MOTION");
+        assertThat(Arrays.copyOfRange(stored, stored.length - 2, stored.length)).containsExactly(0xFF, 0xD9);
+        BufferedImage upright = ImageIO.read(received.file().toFile());
+        assertThat(upright.getWidth()).isEqualTo(40);
+        assertThat(upright.getHeight()).isEqualTo(80);
+        assertThat(new Color(upright.getRGB(20, 10)).getRed()).isGreaterThan(200);
+        assertThat(new Color(upright.getRGB(20, 70)).getBlue()).isGreaterThan(200);
+        assertThat(received.originalSize()).isEqualTo(upload.length);
+        assertThat(received.size()).isEqualTo(stored.length);
+        assertThat(received.sha256()).hasSize(64);
+    }
+
+    @Test
+    void receive_largeImage_isCappedAndReencoded_andBothSizesAreRecorded() throws Exception {
+        BufferedImage wide = new BufferedImage(3300, 800, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = wide.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, 3300, 800, Color.BLUE));
+        g.fillRect(0, 0, 3300, 800);
+        g.dispose();
+        byte[] upload = jpeg(wide, 1.0f);
+
+        UploadReceiver.Received received = receiver.receive(new MockMultipartFile("file", "w.jpg", "image/jpeg", upload));
+
+        BufferedImage stored = ImageIO.read(received.file().toFile());
+        assertThat(stored.getWidth()).isEqualTo(1600);
+        assertThat(stored.getHeight()).isEqualTo(388);
+        assertThat(received.size()).isLessThan(upload.length);
+        assertThat(meterRegistry.get("bookex.uploads.bytes").tag("stage", "original").summary().totalAmount())
+                .isEqualTo(upload.length);
+        assertThat(meterRegistry.get("bookex.uploads.bytes").tag("stage", "stored").summary().totalAmount())
+                .isEqualTo(received.size());
+    }
+
+    @Test
+    void receive_keepsTheStrippedOriginal_whenReencodingWouldNotShrinkIt() throws Exception {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 48; y++) {
+            for (int x = 0; x < 64; x++) image.setRGB(x, y, (x * 31 + y * 17) * 0x010307);
+        }
+        byte[] encoded = jpeg(image, 0.5f); // already compressed harder than ingest would
+        byte[] upload = concat(Arrays.copyOfRange(encoded, 0, 2), comment("hello"),
+                Arrays.copyOfRange(encoded, 2, encoded.length));
+
+        UploadReceiver.Received received = receiver.receive(new MockMultipartFile("file", "s.jpg", "image/jpeg", upload));
+
+        assertThat(Files.readAllBytes(received.file())).isEqualTo(encoded);
+    }
+
+    @Test
+    void receive_png_dropsTextChunks_andKeepsTransparency() throws Exception {
+        BufferedImage image = new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(5, 5, 0x80FF0000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        byte[] encoded = out.toByteArray();
+        byte[] upload = concat(Arrays.copyOfRange(encoded, 0, 33), // signature and IHDR
+                chunk("tEXt", "Author\0someone@example.com"), Arrays.copyOfRange(encoded, 33, encoded.length));
+
+        UploadReceiver.Received received = receiver.receive(new MockMultipartFile("file", "t.png", "image/png", upload));
+
+        assertThat(new String(Files.readAllBytes(received.file()), StandardCharsets.ISO_8859_1)).doesNotContain("tEXt", "someone");
+        BufferedImage stored = ImageIO.read(received.file().toFile());
+        assertThat(stored.getColorModel().hasAlpha()).isTrue();
+        assertThat(stored.getRGB(5, 5) >>> 24).isEqualTo(0x80);
+        assertThat(received.ext()).isEqualTo("png");
+    }
+
+    @Test
+    void receive_rejectsAJpegThatDoesNotDecode_andLeavesNothingBehind() {
+        byte[] upload = new byte[512];
+        upload[0] = (byte) 0xFF;
+        upload[1] = (byte) 0xD8;
+        upload[2] = (byte) 0xFF;
+        upload[3] = (byte) 0xE0;
+
+        assertThatThrownBy(() -> receiver.receive(new MockMultipartFile("file", "x.jpg", "image/jpeg", upload)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(uploads.resolve("tmp")).isEmptyDirectory();
+    }
+
+    private static byte[] jpeg(BufferedImage image, float quality) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    // APP1 with a big-endian TIFF IFD0 holding the orientation, followed by some GPS-looking text
+    private static byte[] exif(int orientation, String gps) {
+        byte[] tail = gps.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 12 + 4 + tail.length);
+        tiff.put("MM".getBytes()).putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+        tiff.put(tail);
+        byte[] payload = concat("Exif\0\0".getBytes(StandardCharsets.ISO_8859_1), tiff.array());
+        return segment(0xE1, payload);
+    }
+
+    private static byte[] comment(String text) {
+        return segment(0xFE, text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        int length = payload.length + 2;
+        return concat(new byte[]{(byte) 0xFF, (byte) marker, (byte) (length >> 8), (byte) length}, payload);
+    }
+
+    // the CRC is not checked by the receiver, which drops the chunk anyway
+    private static byte[] chunk(String type, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        return ByteBuffer.allocate(12 + bytes.length).putInt(bytes.length).put(type.getBytes())
+                .put(bytes).putInt(0).array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.writeBytes(part);
+        return out.toByteArray();
+    }
+}
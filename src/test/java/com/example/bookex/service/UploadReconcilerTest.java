@@ -0,0 +1,78 @@
+package com.example.bookex.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UploadReconcilerTest {
+
+    @TempDir
+    Path uploads;
+
+    @Test
+    void run_checksOldFilesInBatches_andReportsReclaimedBytes() throws Exception {
+        StorageService storageService = mock(StorageService.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UploadReconciler reconciler = new UploadReconciler(storageService, registry, Duration.ofHours(1), 2);
+
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofDays(2)));
+        List<Path> oldFiles = new ArrayList<>();
+        for (int listing = 1; listing <= 2; listing++) {
+            Path dir = Files.createDirectories(uploads.resolve("listings").resolve(String.valueOf(listing)));
+            for (int i = 1; i <= 2; i++) oldFiles.add(Files.write(dir.resolve(i + ".jpg"), new byte[]{1}));
+        }
+        oldFiles.add(Files.write(Files.createDirectories(uploads.resolve("tmp")).resolve("upload-1.part"), new byte[]{1}));
+        for (Path file : oldFiles) Files.setLastModifiedTime(file, old);
+        Path fresh = Files.write(uploads.resolve("listings").resolve("1").resolve("3.jpg"), new byte[]{1});
+
+        List<Path> seen = new ArrayList<>();
+        when(storageService.uploadRoot()).thenReturn(uploads.toAbsolutePath());
+        when(storageService.reclaimOrphans(any(), any())).thenAnswer(inv -> {
+            List<Path> batch = inv.getArgument(0);
+            assertThat(batch).hasSizeLessThanOrEqualTo(2);
+            seen.addAll(batch);
+            return 100L * batch.size();
+        });
+
+        reconciler.run();
+
+        verify(storageService, times(3)).reclaimOrphans(any(), any());
+        assertThat(seen).containsExactlyInAnyOrderElementsOf(oldFiles.stream().map(Path::toAbsolutePath).toList())
+                .doesNotContain(fresh.toAbsolutePath());
+        assertThat(registry.counter("bookex.uploads.orphans.reclaimed.bytes").count()).isEqualTo(500);
+    }
+
+    @Test
+    void run_removesListingDirectoriesEmptiedEarlier_butKeepsTheTopLevelLayout() throws Exception {
+        StorageService storageService = mock(StorageService.class);
+        UploadReconciler reconciler = new UploadReconciler(storageService, new SimpleMeterRegistry(), Duration.ofHours(1), 10);
+        when(storageService.uploadRoot()).thenReturn(uploads.toAbsolutePath());
+
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofDays(2)));
+        Path emptied = Files.createDirectories(uploads.resolve("listings").resolve("9"));
+        Path justCreated = Files.createDirectories(uploads.resolve("listings").resolve("10"));
+        Path blobs = Files.createDirectories(uploads.resolve("blobs"));
+        Files.setLastModifiedTime(emptied, old);
+        Files.setLastModifiedTime(blobs, old);
+
+        reconciler.run();
+
+        assertThat(emptied).doesNotExist();
+        assertThat(justCreated).exists();
+        assertThat(blobs).exists();
+        assertThat(uploads.resolve("listings")).exists();
+        verify(storageService, never()).reclaimOrphans(any(), any());
+    }
+}
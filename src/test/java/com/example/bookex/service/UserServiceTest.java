@@ -7,6 +7,7 @@ import com.example.bookex.entity.enums.Role;
 import com.example.bookex.exceptions.NotFoundException;
 import com.example.bookex.repository.UserRepository;
 import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.Optional;
@@ -20,7 +21,7 @@ class UserServiceTest {
     void register_createsUser_whenEmailAndUsernameAreFree() {
         UserRepository userRepository = mock(UserRepository.class);
         PasswordEncoder encoder = mock(PasswordEncoder.class);
-        UserService userService = new UserService(userRepository, encoder);
+        UserService userService = new UserService(userRepository, encoder, mock(ApplicationEventPublisher.class));
 
         String email = "newuser@example.com";
         String username = "newuser";
@@ -49,7 +50,7 @@ class UserServiceTest {
     void register_throws_whenEmailAlreadyUsed() {
         UserRepository userRepository = mock(UserRepository.class);
         PasswordEncoder encoder = mock(PasswordEncoder.class);
-        UserService userService = new UserService(userRepository, encoder);
+        UserService userService = new UserService(userRepository, encoder, mock(ApplicationEventPublisher.class));
 
         when(userRepository.findByEmail("dup@example.com"))
                 .thenReturn(Optional.of(User.builder().id(10L).build()));
@@ -62,7 +63,7 @@ class UserServiceTest {
     void register_throws_whenUsernameAlreadyUsed() {
         UserRepository userRepository = mock(UserRepository.class);
         PasswordEncoder encoder = mock(PasswordEncoder.class);
-        UserService userService = new UserService(userRepository, encoder);
+        UserService userService = new UserService(userRepository, encoder, mock(ApplicationEventPublisher.class));
 
         when(userRepository.findByEmail("free@example.com")).thenReturn(Optional.empty());
         when(userRepository.existsByUsername("taken")).thenReturn(true);
@@ -75,7 +76,7 @@ class UserServiceTest {
     void getProfile_returnsDto_whenUserExists() {
         UserRepository userRepository = mock(UserRepository.class);
         PasswordEncoder encoder = mock(PasswordEncoder.class);
-        UserService userService = new UserService(userRepository, encoder);
+        UserService userService = new UserService(userRepository, encoder, mock(ApplicationEventPublisher.class));
 
         User user = User.builder()
                 .id(7L)
@@ -104,7 +105,7 @@ class UserServiceTest {
     void getProfile_throws_whenUserMissing() {
         UserRepository userRepository = mock(UserRepository.class);
         PasswordEncoder encoder = mock(PasswordEncoder.class);
-        UserService userService = new UserService(userRepository, encoder);
+        UserService userService = new UserService(userRepository, encoder, mock(ApplicationEventPublisher.class));
 
         when(userRepository.findById(99L)).thenReturn(Optional.empty());
 
@@ -116,7 +117,7 @@ class UserServiceTest {
     void updateProfile_updatesEntity_andSaves() {
         UserRepository userRepository = mock(UserRepository.class);
         PasswordEncoder encoder = mock(PasswordEncoder.class);
-        UserService userService = new UserService(userRepository, encoder);
+        UserService userService = new UserService(userRepository, encoder, mock(ApplicationEventPublisher.class));
 
         User user = User.builder()
                 .id(5L)
@@ -150,7 +151,7 @@ class UserServiceTest {
     void updateProfile_throws_whenUserMissing() {
         UserRepository userRepository = mock(UserRepository.class);
         PasswordEncoder encoder = mock(PasswordEncoder.class);
-        UserService userService = new UserService(userRepository, encoder);
+        UserService userService = new UserService(userRepository, encoder, mock(ApplicationEventPublisher.class));
 
         when(userRepository.findById(404L)).thenReturn(Optional.empty());
 
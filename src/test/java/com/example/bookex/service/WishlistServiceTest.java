@@ -0,0 +1,46 @@
+package com.example.bookex.service;
+
+import com.example.bookex.entity.Book;
+import com.example.bookex.entity.User;
+import com.example.bookex.event.WishlistChangedEvent;
+import com.example.bookex.repository.WishlistRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class WishlistServiceTest {
+
+    @Test
+    void add_wishesForTheCatalogueBook_andPublishesOnce() {
+        WishlistRepository wishlistRepository = mock(WishlistRepository.class);
+        BookService bookService = mock(BookService.class);
+        ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+        when(bookService.find("Dune", "Frank Herbert"))
+                .thenReturn(Optional.of(Book.builder().id(4L).title("dune").author("frank herbert").build()));
+        when(wishlistRepository.insert(1L, 4L)).thenReturn(1, 0);
+        WishlistService wishlistService = new WishlistService(wishlistRepository, bookService, events);
+
+        assertThat(wishlistService.add(User.builder().id(1L).build(), "Dune", "Frank Herbert").getId()).isEqualTo(4L);
+        wishlistService.add(User.builder().id(1L).build(), "Dune", "Frank Herbert"); // already wished
+
+        verify(events, times(1)).publishEvent(new WishlistChangedEvent(1L));
+    }
+
+    @Test
+    void add_refusesBooksNotInTheCatalogue_withoutCreatingThem() {
+        WishlistRepository wishlistRepository = mock(WishlistRepository.class);
+        BookService bookService = mock(BookService.class);
+        when(bookService.find(any(), any())).thenReturn(Optional.empty());
+        WishlistService wishlistService = new WishlistService(wishlistRepository, bookService, mock(ApplicationEventPublisher.class));
+
+        assertThatThrownBy(() -> wishlistService.add(User.builder().id(1L).build(), "Dnue", "Frank Herbert"))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(bookService, never()).findOrCreate(any(), any(), any());
+        verifyNoInteractions(wishlistRepository);
+    }
+}